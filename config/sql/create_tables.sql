@@ -62,7 +62,8 @@ CREATE TABLE appointment_appointments (
   created            DATETIME  NULL,
   priority    		   BIGINT    NULL,
   lastUpdated        DATETIME  NULL,
-  PRIMARY KEY (id)
+  PRIMARY KEY (id),
+  KEY patientId_startDateTime (patientId, startDateTime)
 );
 
 ALTER TABLE appointment_booking_orgz
@@ -218,7 +219,9 @@ CREATE TABLE medication_statements (
   prescribingAgency   VARCHAR(250) NULL,
   guid                VARCHAR(250) NULL,
   warningCode         VARCHAR(250) NULL,
-  PRIMARY KEY (id)
+  effectiveDate       DATETIME     AS (COALESCE(lastIssueDate, startDate, dateAsserted)) STORED,
+  PRIMARY KEY (id),
+  KEY patientId_effectiveDate (patientId, effectiveDate)
 );
 
 CREATE TABLE medication_requests (
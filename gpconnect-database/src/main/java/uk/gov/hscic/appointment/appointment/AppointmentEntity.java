@@ -5,6 +5,8 @@ import uk.gov.hscic.appointment.bookingOrganization.BookingOrgEntity;
 import uk.gov.hscic.appointment.slot.SlotEntity;
 
 import javax.persistence.*;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 import java.util.Date;
 import java.util.List;
 
@@ -47,7 +49,8 @@ public class AppointmentEntity {
     @Column(name = "priority")
     private Integer priority;
 
-    @OneToMany(fetch = FetchType.EAGER)
+    @OneToMany(fetch = FetchType.LAZY)
+    @Fetch(value = FetchMode.SUBSELECT)
     @JoinTable(name = "appointment_appointments_slots", joinColumns = {
         @JoinColumn(name = "appointmentId", referencedColumnName = "id")}, inverseJoinColumns = {
         @JoinColumn(name = "slotId", referencedColumnName = "id")})
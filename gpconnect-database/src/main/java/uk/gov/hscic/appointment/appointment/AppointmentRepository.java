@@ -3,15 +3,31 @@ package uk.gov.hscic.appointment.appointment;
 import java.util.Date;
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
 @Transactional
 public interface AppointmentRepository extends JpaRepository<AppointmentEntity, Long> {
-    List<AppointmentEntity> findByPatientId(Long patientId);
-    AppointmentEntity findOneByIdAndLastUpdated(Long id, Date lastUpdated);
+    /**
+     * Uses the (patientId, startDateTime) index, the slots are then read with
+     * one further select.
+     *
+     * @param pageable limits the appointments returned, may be null
+     */
+    @Query("SELECT a FROM AppointmentEntity a WHERE a.patientId = :patientId AND a.startDateTime > :startedAfter"
+            + " AND a.startDateTime >= :startLowerDate AND a.startDateTime <= :startUpperDate ORDER BY a.id")
+    List<AppointmentEntity> findByPatientIdAndStartDateTime(@Param("patientId") Long patientId, @Param("startedAfter") Date startedAfter,
+            @Param("startLowerDate") Date startLowerDate, @Param("startUpperDate") Date startUpperDate, Pageable pageable);
+
+    @Query("SELECT DISTINCT a FROM AppointmentEntity a LEFT JOIN FETCH a.slots WHERE a.id = :id")
+    AppointmentEntity findOneWithSlots(@Param("id") Long id);
+
+    @Query("SELECT DISTINCT a FROM AppointmentEntity a LEFT JOIN FETCH a.slots WHERE a.id = :id AND a.lastUpdated = :lastUpdated")
+    AppointmentEntity findOneByIdAndLastUpdated(@Param("id") Long id, @Param("lastUpdated") Date lastUpdated);
     
     /**
      * DO NOT USE.
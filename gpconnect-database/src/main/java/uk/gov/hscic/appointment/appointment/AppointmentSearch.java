@@ -1,15 +1,19 @@
 package uk.gov.hscic.appointment.appointment;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import uk.gov.hscic.model.appointment.AppointmentDetail;
 import uk.gov.hscic.appointment.appointment.AppointmentEntity;
 import uk.gov.hscic.appointment.appointment.AppointmentRepository;
 
 @Service
+@Transactional(readOnly = true)
 public class AppointmentSearch {
     private final AppointmentEntityToAppointmentDetailTransformer transformer = new AppointmentEntityToAppointmentDetailTransformer();
 
@@ -17,7 +21,7 @@ public class AppointmentSearch {
     private AppointmentRepository appointmentRepository;
 
     public AppointmentDetail findAppointmentByID(Long id) {
-        final AppointmentEntity item = appointmentRepository.findOne(id);
+        final AppointmentEntity item = appointmentRepository.findOneWithSlots(id);
 
         return item == null
                 ? null
@@ -32,11 +36,23 @@ public class AppointmentSearch {
                 : transformer.transform(item);
     }  
 
-    public List<AppointmentDetail> searchAppointments(Long patientId, Date startLowerDate, Date startUpperDate) {
-        return appointmentRepository.findByPatientId(patientId)
+    /**
+     *
+     * @param patientId
+     * @param startedAfter appointments starting at or before this are left out
+     * @param startLowerDate
+     * @param startUpperDate
+     * @param count the most appointments to return, or null for all of them
+     * @return AppointmentDetails in the order they were booked
+     */
+    public List<AppointmentDetail> searchAppointments(Long patientId, Date startedAfter, Date startLowerDate, Date startUpperDate, Integer count) {
+        if (count != null && count < 1) {
+            return Collections.emptyList();
+        }
+
+        return appointmentRepository.findByPatientIdAndStartDateTime(patientId, startedAfter, startLowerDate, startUpperDate,
+                count == null ? null : new PageRequest(0, count))
                 .stream()
-                .filter(appointmentEntity -> startLowerDate == null || !appointmentEntity.getStartDateTime().before(startLowerDate))
-                .filter(appointmentEntity -> startUpperDate == null || !appointmentEntity.getStartDateTime().after(startUpperDate))
                 .map(transformer::transform)
                 .collect(Collectors.toList());
     }
@@ -3,6 +3,9 @@ package uk.gov.hscic.appointment.appointment;
 import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import uk.gov.hscic.appointment.slot.SlotStore;
 import uk.gov.hscic.model.appointment.AppointmentDetail;
 import uk.gov.hscic.model.appointment.SlotDetail;
 
@@ -14,12 +17,35 @@ public class AppointmentStore {
     @Autowired
     private AppointmentRepository appointmentRepository;
 
+    @Autowired
+    private SlotStore slotStore;
+
+    @Transactional
     public AppointmentDetail saveAppointment(AppointmentDetail appointment, List<SlotDetail> slots){
         AppointmentEntity appointmentEntity = detailToEntityTransformer.transform(appointment, slots);
         appointmentEntity = appointmentRepository.saveAndFlush(appointmentEntity);
         return entityToDetailTransformer.transform(appointmentEntity);
     }
 
+    /**
+     * Claims the slots and saves the appointment in a single transaction so
+     * that concurrent bookings of the same slot cannot both succeed.
+     *
+     * @param appointment
+     * @param slots
+     * @return the saved appointment or null if any of the slots was no longer
+     * free, in which case nothing is changed
+     */
+    @Transactional
+    public AppointmentDetail bookAppointment(AppointmentDetail appointment, List<SlotDetail> slots) {
+        if (!slotStore.claimSlots(slots)) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return null;
+        }
+
+        return saveAppointment(appointment, slots);
+    }
+
     public void clearAppointments(){
         appointmentRepository.deleteAll();
     	appointmentRepository.resetAutoIncrementAppointmentTable();
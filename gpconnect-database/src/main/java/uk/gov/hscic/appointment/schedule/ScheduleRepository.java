@@ -1,10 +1,12 @@
 package uk.gov.hscic.appointment.schedule;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 public interface ScheduleRepository extends JpaRepository<ScheduleEntity, Long> {
     List<ScheduleEntity> findByLocationIdAndEndDateTimeAfterAndStartDateTimeBefore(Long locationId, Date startDate, Date endDate);
+    List<ScheduleEntity> findByLocationIdInAndEndDateTimeAfterAndStartDateTimeBefore(Collection<Long> locationIds, Date startDate, Date endDate);
     ScheduleEntity getById(Long scheduleId);
 }
@@ -1,5 +1,7 @@
 package uk.gov.hscic.appointment.schedule;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -28,4 +30,23 @@ public class ScheduleSearch {
                 .map(transformer::transform)
                 .collect(Collectors.toList());
     }
+
+    /**
+     * The schedules for a number of locations in a single query
+     *
+     * @param locationIds
+     * @param startDate
+     * @param endDate
+     * @return ScheduleDetails in the order the locations' schedules are returned
+     */
+    public List<ScheduleDetail> findSchedulesForLocationIds(Collection<Long> locationIds, Date startDate, Date endDate) {
+        if (locationIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return scheduleRepository.findByLocationIdInAndEndDateTimeAfterAndStartDateTimeBefore(locationIds, startDate, endDate)
+                .stream()
+                .map(transformer::transform)
+                .collect(Collectors.toList());
+    }
 }
@@ -15,8 +15,8 @@ import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
 import javax.persistence.Table;
-import org.hibernate.annotations.LazyCollection;
-import org.hibernate.annotations.LazyCollectionOption;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 
 import uk.gov.hscic.organization.OrganizationEntity;
 
@@ -56,17 +56,15 @@ public class SlotEntity {
     @Column(name = "deliveryChannelCode")
     private String deliveryChannelCode;
 
-    @ManyToMany(fetch = FetchType.EAGER)
+    @ManyToMany(fetch = FetchType.LAZY)
+    @Fetch(value = FetchMode.SUBSELECT)
     @JoinTable(name = "appointment_slots_organizations", joinColumns = {
             @JoinColumn(name = "slotId", referencedColumnName = "id") }, inverseJoinColumns = {
                     @JoinColumn(name = "organizationId", referencedColumnName = "id") })
     private List<OrganizationEntity> bookableOrganizations;
     
-    // This is a workaround for the fact that you can't have > 1 fetch = FetchType.EAGER
-    // This is a way of achieving the same thing that the persistence manager does not object to
-    // see https://stackoverflow.com/questions/36263384/why-i-cant-use-2-lists-on-the-same-entity-class-using-fetchtype-eager
-    @LazyCollection(LazyCollectionOption.FALSE)
-    @ElementCollection
+    @ElementCollection(fetch = FetchType.LAZY)
+    @Fetch(value = FetchMode.SUBSELECT)
     @JoinTable(name = "appointment_slots_orgType", joinColumns = {
             @JoinColumn(name = "slotId", referencedColumnName = "id") } )
     private List<String> bookableOrgTypes;
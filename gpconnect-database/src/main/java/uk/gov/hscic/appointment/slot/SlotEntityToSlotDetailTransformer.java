@@ -29,7 +29,8 @@ public class SlotEntityToSlotDetailTransformer implements Transformer<SlotEntity
             al.add(organizationEntity.getId());
         }
         slotDetail.setOrganizationIds(al);
-        slotDetail.setOrganizationTypes(item.getBookableOrgTypes());
+        // a copy, the lazy collection cannot be read once the session is closed
+        slotDetail.setOrganizationTypes(item.getBookableOrgTypes() == null ? null : new ArrayList<>(item.getBookableOrgTypes()));
         return slotDetail;
     }
 }
\ No newline at end of file
@@ -0,0 +1,196 @@
+package uk.gov.hscic.appointment.slot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import uk.gov.hscic.model.appointment.SlotDetail;
+
+/**
+ * Optional in memory copy of the appointment_slots table, held per schedule and
+ * ordered by slot start time so that a free slot search is a range scan rather
+ * than a database round trip. Enabled by datasource.slots.index, populated
+ * lazily from the SlotRepository and kept in step by SlotStore.
+ */
+@Service
+public class SlotIndex {
+    private static final Logger LOG = Logger.getLogger(SlotIndex.class);
+
+    private final SlotEntityToSlotDetailTransformer transformer = new SlotEntityToSlotDetailTransformer();
+
+    private final Map<Long, SlotDetail> slotsById = new ConcurrentHashMap<>();
+    private final Map<Long, NavigableMap<SlotKey, SlotDetail>> slotsBySchedule = new ConcurrentHashMap<>();
+
+    private volatile boolean loaded;
+
+    @Value("${datasource.slots.index:false}")
+    private boolean enabled;
+
+    @Autowired
+    private SlotRepository slotRepository;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     *
+     * @param id Slot Id
+     * @return a copy of the indexed SlotDetail or null
+     */
+    public SlotDetail findSlotByID(Long id) {
+        ensureLoaded();
+        SlotDetail slotDetail = slotsById.get(id);
+
+        return slotDetail == null ? null : copy(slotDetail);
+    }
+
+    /**
+     * Mirrors the SlotRepository derived queries followed by the SlotSearch
+     * filters ie bookable slots for the schedule with
+     * startDate &lt;= slot start &lt; endDate and slot end &gt; startDate
+     *
+     * @param scheduleId
+     * @param startDate
+     * @param endDate
+     * @param filter additional per slot predicate
+     * @return copies of the matching SlotDetails in start time order
+     */
+    public List<SlotDetail> findSlotsForScheduleId(Long scheduleId, Date startDate, Date endDate, Predicate<SlotDetail> filter) {
+        ensureLoaded();
+
+        NavigableMap<SlotKey, SlotDetail> schedule = slotsBySchedule.get(scheduleId);
+
+        // a null bound never matches in the derived query
+        if (schedule == null || startDate == null || endDate == null || !startDate.before(endDate)) {
+            return Collections.emptyList();
+        }
+
+        List<SlotDetail> slots = new ArrayList<>();
+        for (SlotDetail slotDetail : schedule.subMap(new SlotKey(startDate.getTime(), Long.MIN_VALUE), true,
+                new SlotKey(endDate.getTime(), Long.MIN_VALUE), false).values()) {
+            if (slotDetail.isGpConnectBookable()
+                    && slotDetail.getEndDateTime().after(startDate)
+                    && filter.test(slotDetail)) {
+                slots.add(copy(slotDetail));
+            }
+        }
+
+        return slots;
+    }
+
+    public synchronized void put(SlotDetail slotDetail) {
+        if (enabled && loaded) {
+            putInternal(copy(slotDetail));
+        }
+    }
+
+    public synchronized void clear() {
+        if (enabled) {
+            slotsById.clear();
+            slotsBySchedule.clear();
+            // the table has just been emptied so there is nothing left to load
+            loaded = true;
+        }
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    long start = System.currentTimeMillis();
+
+                    slotRepository.findAll()
+                            .stream()
+                            .map(transformer::transform)
+                            .forEach(this::putInternal);
+
+                    loaded = true;
+                    LOG.info("Indexed " + slotsById.size() + " slots for " + slotsBySchedule.size()
+                            + " schedules in " + (System.currentTimeMillis() - start) + "ms");
+                }
+            }
+        }
+    }
+
+    private void putInternal(SlotDetail slotDetail) {
+        SlotDetail previous = slotsById.put(slotDetail.getId(), slotDetail);
+
+        if (previous != null) {
+            NavigableMap<SlotKey, SlotDetail> previousSchedule = slotsBySchedule.get(previous.getScheduleReference());
+
+            if (previousSchedule != null) {
+                previousSchedule.remove(SlotKey.of(previous));
+            }
+        }
+
+        slotsBySchedule
+                .computeIfAbsent(slotDetail.getScheduleReference(), scheduleId -> new ConcurrentSkipListMap<>())
+                .put(SlotKey.of(slotDetail), slotDetail);
+    }
+
+    /**
+     * The indexed objects are never handed out since callers update and save
+     * the SlotDetails they are given.
+     */
+    private static SlotDetail copy(SlotDetail item) {
+        SlotDetail slotDetail = new SlotDetail();
+        slotDetail.setId(item.getId());
+        slotDetail.setAppointmentId(item.getAppointmentId());
+        slotDetail.setTypeCode(item.getTypeCode());
+        slotDetail.setTypeDisply(item.getTypeDisply());
+        slotDetail.setScheduleReference(item.getScheduleReference());
+        slotDetail.setFreeBusyType(item.getFreeBusyType());
+        slotDetail.setStartDateTime(item.getStartDateTime());
+        slotDetail.setEndDateTime(item.getEndDateTime());
+        slotDetail.setLastUpdated(item.getLastUpdated());
+        slotDetail.setGpConnectBookable(item.isGpConnectBookable());
+        slotDetail.setDeliveryChannelCode(item.getDeliveryChannelCode());
+        slotDetail.setOrganizationIds(item.getOrganizationIds() == null ? new ArrayList<>() : new ArrayList<>(item.getOrganizationIds()));
+        slotDetail.setOrganizationTypes(item.getOrganizationTypes() == null ? new ArrayList<>() : new ArrayList<>(item.getOrganizationTypes()));
+        return slotDetail;
+    }
+
+    /**
+     * Orders slots within a schedule by start time, the slot id separates
+     * slots sharing a start time
+     */
+    private static final class SlotKey implements Comparable<SlotKey> {
+        private final long start;
+        private final long id;
+
+        private SlotKey(long start, long id) {
+            this.start = start;
+            this.id = id;
+        }
+
+        private static SlotKey of(SlotDetail slotDetail) {
+            return new SlotKey(slotDetail.getStartDateTime().getTime(), slotDetail.getId());
+        }
+
+        @Override
+        public int compareTo(SlotKey other) {
+            int result = Long.compare(start, other.start);
+            return result != 0 ? result : Long.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof SlotKey && compareTo((SlotKey) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(start) * 31 + Long.hashCode(id);
+        }
+    }
+}
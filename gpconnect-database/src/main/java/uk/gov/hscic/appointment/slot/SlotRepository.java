@@ -1,8 +1,12 @@
 package uk.gov.hscic.appointment.slot;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
 @Transactional
@@ -10,4 +14,9 @@ public interface SlotRepository extends JpaRepository<SlotEntity, Long> {
     List<SlotEntity> findByScheduleReferenceAndEndDateTimeAfterAndStartDateTimeBeforeAndGpConnectBookableTrueAndBookableOrganizationsId(Long scheduleId, Date startDate, Date endDate, Long orgId);
     List<SlotEntity> findByScheduleReferenceAndEndDateTimeAfterAndStartDateTimeBeforeAndGpConnectBookableTrueAndBookableOrgTypes(Long scheduleId, Date startDate, Date endDate, String orgType);
     List<SlotEntity> findByScheduleReferenceAndEndDateTimeAfterAndStartDateTimeBeforeAndGpConnectBookableTrue(Long scheduleId, Date startDate, Date endDate);
+    List<SlotEntity> findByScheduleReferenceInAndEndDateTimeAfterAndStartDateTimeBeforeAndGpConnectBookableTrue(Collection<Long> scheduleIds, Date startDate, Date endDate);
+
+    @Modifying(clearAutomatically = true)
+    @Query(value = "UPDATE SlotEntity s SET s.freeBusyType = 'BUSY', s.lastUpdated = :lastUpdated WHERE s.id IN :ids AND s.freeBusyType = 'FREE'")
+    int claimFreeSlots(@Param("ids") Collection<Long> slotIds, @Param("lastUpdated") Date lastUpdated);
 }
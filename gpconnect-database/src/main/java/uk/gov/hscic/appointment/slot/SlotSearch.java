@@ -1,13 +1,21 @@
 package uk.gov.hscic.appointment.slot;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import uk.gov.hscic.model.appointment.SlotDetail;
 
+// bookable organizations and org types are each read with one further select
+// for all the slots a query returns, so the transaction must cover the transform
 @Service
+@Transactional(readOnly = true)
 public class SlotSearch {
 
     private final SlotEntityToSlotDetailTransformer transformer = new SlotEntityToSlotDetailTransformer();
@@ -15,12 +23,19 @@ public class SlotSearch {
     @Autowired
     private SlotRepository slotRepository;
 
+    @Autowired
+    private SlotIndex slotIndex;
+
     /**
      *
      * @param id Slot Id
      * @return SlotDetail
      */
     public SlotDetail findSlotByID(Long id) {
+        if (slotIndex.isEnabled()) {
+            return slotIndex.findSlotByID(id);
+        }
+
         final SlotEntity item = slotRepository.findOne(id);
 
         return item == null
@@ -37,6 +52,11 @@ public class SlotSearch {
      * @return SlotDetail
      */
     public List<SlotDetail> findSlotsForScheduleIdAndOrganizationId(Long scheduleId, Date startDate, Date endDate, Long orgId) {
+        if (slotIndex.isEnabled()) {
+            return slotIndex.findSlotsForScheduleId(scheduleId, startDate, endDate,
+                    slotDetail -> slotDetail.getOrganizationIds().contains(orgId));
+        }
+
         return slotRepository.findByScheduleReferenceAndEndDateTimeAfterAndStartDateTimeBeforeAndGpConnectBookableTrueAndBookableOrganizationsId(scheduleId, startDate, endDate, orgId)
                 .stream()
                 .filter(slotEntity -> startDate == null || !slotEntity.getStartDateTime().before(startDate))
@@ -54,6 +74,11 @@ public class SlotSearch {
      * @return SlotDetail
      */
     public List<SlotDetail> findSlotsForScheduleIdAndOrganizationType(Long scheduleId, Date startDate, Date endDate, String orgType) {
+        if (slotIndex.isEnabled()) {
+            return slotIndex.findSlotsForScheduleId(scheduleId, startDate, endDate,
+                    slotDetail -> slotDetail.getOrganizationTypes().contains(orgType));
+        }
+
         return slotRepository.findByScheduleReferenceAndEndDateTimeAfterAndStartDateTimeBeforeAndGpConnectBookableTrueAndBookableOrgTypes(scheduleId, startDate, endDate, orgType)
                 .stream()
                 .filter(slotEntity -> startDate == null || !slotEntity.getStartDateTime().before(startDate))
@@ -70,6 +95,11 @@ public class SlotSearch {
      * @return SlotDetail
      */
     public List<SlotDetail> findSlotsForScheduleIdNoOrganizationTypeOrODS(Long scheduleId, Date startDate, Date endDate) {
+        if (slotIndex.isEnabled()) {
+            return slotIndex.findSlotsForScheduleId(scheduleId, startDate, endDate,
+                    slotDetail -> slotDetail.getOrganizationIds().isEmpty() && slotDetail.getOrganizationTypes().isEmpty());
+        }
+
         return slotRepository.findByScheduleReferenceAndEndDateTimeAfterAndStartDateTimeBeforeAndGpConnectBookableTrue(scheduleId, startDate, endDate)
                 .stream()
                 .filter(slotEntity -> startDate == null || !slotEntity.getStartDateTime().before(startDate))
@@ -88,6 +118,10 @@ public class SlotSearch {
      * @return SlotDetail
      */
     public List<SlotDetail> findSlotsForScheduleId(Long scheduleId, Date startDate, Date endDate) {
+        if (slotIndex.isEnabled()) {
+            return slotIndex.findSlotsForScheduleId(scheduleId, startDate, endDate, slotDetail -> true);
+        }
+
         return slotRepository.findByScheduleReferenceAndEndDateTimeAfterAndStartDateTimeBeforeAndGpConnectBookableTrue(scheduleId, startDate, endDate)
                 .stream()
                 .filter(slotEntity -> startDate == null || !slotEntity.getStartDateTime().before(startDate))
@@ -95,4 +129,37 @@ public class SlotSearch {
                 .map(transformer::transform)
                 .collect(Collectors.toList());
     }
+
+    /**
+     * All the bookable slots for a number of schedules in a single query
+     *
+     * @param scheduleIds
+     * @param startDate
+     * @param endDate
+     * @return SlotDetails keyed by schedule id, schedules without slots are absent
+     */
+    public Map<Long, List<SlotDetail>> findSlotsForScheduleIds(Collection<Long> scheduleIds, Date startDate, Date endDate) {
+        Map<Long, List<SlotDetail>> slotsForSchedules = new LinkedHashMap<>();
+
+        if (slotIndex.isEnabled()) {
+            for (Long scheduleId : scheduleIds) {
+                List<SlotDetail> slots = slotIndex.findSlotsForScheduleId(scheduleId, startDate, endDate, slotDetail -> true);
+
+                if (!slots.isEmpty()) {
+                    slotsForSchedules.put(scheduleId, slots);
+                }
+            }
+        } else if (!scheduleIds.isEmpty()) {
+            slotRepository.findByScheduleReferenceInAndEndDateTimeAfterAndStartDateTimeBeforeAndGpConnectBookableTrue(scheduleIds, startDate, endDate)
+                    .stream()
+                    .filter(slotEntity -> startDate == null || !slotEntity.getStartDateTime().before(startDate))
+                    .filter(slotEntity -> endDate == null || !slotEntity.getStartDateTime().after(endDate))
+                    .map(transformer::transform)
+                    .forEach(slotDetail -> slotsForSchedules
+                            .computeIfAbsent(slotDetail.getScheduleReference(), scheduleId -> new ArrayList<>())
+                            .add(slotDetail));
+        }
+
+        return slotsForSchedules;
+    }
 }
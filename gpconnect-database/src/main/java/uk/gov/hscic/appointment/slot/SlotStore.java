@@ -1,10 +1,26 @@
 package uk.gov.hscic.appointment.slot;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.apache.commons.collections4.ListUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import uk.gov.hscic.model.appointment.SlotDetail;
 
 @Service
@@ -12,23 +28,167 @@ public class SlotStore {
     private final SlotEntityToSlotDetailTransformer entityToDetailTransformer = new SlotEntityToSlotDetailTransformer();
     private final SlotDetailToSlotEntityTransformer detailToEntityTransformer = new SlotDetailToSlotEntityTransformer();
 
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String INSERT_SLOT = "INSERT INTO appointment_slots (typeCode, typeDisplay, scheduleReference, freeBusyType, "
+            + "startDateTime, endDateTime, lastUpdated, gpConnectBookable, deliveryChannelCode) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_SLOT_ORGANIZATION = "INSERT INTO appointment_slots_organizations (slotId, organizationId) VALUES (?, ?)";
+    private static final String INSERT_SLOT_ORG_TYPE = "INSERT INTO appointment_slots_orgType (slotId, bookableOrgTypes) VALUES (?, ?)";
+
     @Autowired
     private SlotRepository slotRepository;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SlotIndex slotIndex;
+
     public SlotDetail saveSlot(SlotDetail slotDetail) {
         SlotEntity slotEntity = detailToEntityTransformer.transform(slotDetail);
         slotEntity = slotRepository.saveAndFlush(slotEntity);
-        return entityToDetailTransformer.transform(slotEntity);
+        SlotDetail savedSlotDetail = entityToDetailTransformer.transform(slotEntity);
+        putInIndexAfterCommit(Collections.singletonList(savedSlotDetail));
+        return savedSlotDetail;
+    }
+
+    /**
+     * Atomically marks the slots BUSY provided every one of them is still FREE.
+     * Must be called within a transaction which is rolled back when this
+     * returns false since some of the slots may have been updated.
+     *
+     * @param slots
+     * @return true if all the slots were claimed, the SlotDetails are then
+     * updated to match the database
+     */
+    public boolean claimSlots(List<SlotDetail> slots) {
+        Set<Long> slotIds = slots.stream()
+                .map(SlotDetail::getId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        Date lastUpdated = new Date();
+
+        if (slotRepository.claimFreeSlots(slotIds, lastUpdated) != slotIds.size()) {
+            return false;
+        }
+
+        for (SlotDetail slotDetail : slots) {
+            slotDetail.setFreeBusyType("BUSY");
+            slotDetail.setLastUpdated(lastUpdated);
+        }
+
+        putInIndexAfterCommit(slots);
+
+        return true;
+    }
+
+    /**
+     * Bulk inserts new slots and their bookable organizations and organization
+     * types using JDBC batches in a single transaction rather than a
+     * saveAndFlush per slot.
+     *
+     * @param slots slots without ids
+     * @return the same SlotDetails with their generated ids set
+     */
+    @Transactional
+    public List<SlotDetail> saveSlots(List<SlotDetail> slots) {
+        for (List<SlotDetail> batch : ListUtils.partition(slots, BATCH_SIZE)) {
+            insertSlots(batch);
+
+            List<Object[]> organizations = new ArrayList<>();
+            List<Object[]> orgTypes = new ArrayList<>();
+            for (SlotDetail slotDetail : batch) {
+                if (slotDetail.getOrganizationIds() != null) {
+                    slotDetail.getOrganizationIds().forEach(organizationId -> organizations.add(new Object[]{slotDetail.getId(), organizationId}));
+                }
+                if (slotDetail.getOrganizationTypes() != null) {
+                    slotDetail.getOrganizationTypes().forEach(orgType -> orgTypes.add(new Object[]{slotDetail.getId(), orgType}));
+                }
+            }
+
+            if (!organizations.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_SLOT_ORGANIZATION, organizations);
+            }
+            if (!orgTypes.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_SLOT_ORG_TYPE, orgTypes);
+            }
+        }
+
+        putInIndexAfterCommit(slots);
+
+        return slots;
     }
 
+    /**
+     * Bulk deletes every slot, appointments referencing them must have been
+     * removed first.
+     */
+    @Transactional
     public void clearSlots(){
-        slotRepository.deleteAll();
+        jdbcTemplate.update("DELETE FROM appointment_slots_orgType");
+        jdbcTemplate.update("DELETE FROM appointment_slots_organizations");
+        jdbcTemplate.update("DELETE FROM appointment_slots");
+        afterCommit(slotIndex::clear);
     }
     
+    @Transactional(readOnly = true)
     public List<SlotDetail> findAllSlots() {
     	return slotRepository.findAll()
     	.stream()
     	.map(entityToDetailTransformer::transform)
         .collect(Collectors.toList());
     }
+
+    private void insertSlots(List<SlotDetail> batch) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_SLOT, Statement.RETURN_GENERATED_KEYS)) {
+                for (SlotDetail slotDetail : batch) {
+                    if (slotDetail.getTypeCode() == null) {
+                        statement.setNull(1, Types.BIGINT);
+                    } else {
+                        statement.setLong(1, slotDetail.getTypeCode());
+                    }
+                    statement.setString(2, slotDetail.getTypeDisply());
+                    statement.setLong(3, slotDetail.getScheduleReference());
+                    statement.setString(4, slotDetail.getFreeBusyType());
+                    statement.setTimestamp(5, new Timestamp(slotDetail.getStartDateTime().getTime()));
+                    statement.setTimestamp(6, new Timestamp(slotDetail.getEndDateTime().getTime()));
+                    statement.setTimestamp(7, new Timestamp(slotDetail.getLastUpdated().getTime()));
+                    statement.setBoolean(8, slotDetail.isGpConnectBookable());
+                    statement.setString(9, slotDetail.getDeliveryChannelCode());
+                    statement.addBatch();
+                }
+
+                statement.executeBatch();
+
+                // keys come back in insert order
+                try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                    for (SlotDetail slotDetail : batch) {
+                        generatedKeys.next();
+                        slotDetail.setId(generatedKeys.getLong(1));
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * The index must not see slots from a transaction that is rolled back
+     */
+    private void putInIndexAfterCommit(List<SlotDetail> slots) {
+        afterCommit(() -> slots.forEach(slotIndex::put));
+    }
+
+    private static void afterCommit(Runnable indexUpdate) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    indexUpdate.run();
+                }
+            });
+        } else {
+            indexUpdate.run();
+        }
+    }
 }
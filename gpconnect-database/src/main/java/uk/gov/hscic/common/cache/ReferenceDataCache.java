@@ -0,0 +1,242 @@
+package uk.gov.hscic.common.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Read-through cache for reference data which only changes when the database
+ * is reseeded: organizations, practitioners, locations and medications. Each
+ * kind of lookup has its own region, lookups which find nothing are cached
+ * too. Everything is evicted when the data is refreshed.
+ */
+@Component
+@ManagedResource(objectName = "uk.gov.hscic:type=ReferenceDataCache")
+public class ReferenceDataCache {
+    private static final Logger LOG = Logger.getLogger(ReferenceDataCache.class);
+
+    @Value("${reference.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${reference.cache.size:1000}")
+    private int cacheSize;
+
+    private final Map<String, Cache<Object, Optional<Object>>> regions = new ConcurrentHashMap<>();
+    private final List<Runnable> evictionListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param loader looks the value up in the database, may return null
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V get(String region, Object key, Supplier<V> loader) {
+        if (!enabled || key == null) {
+            return loader.get();
+        }
+
+        try {
+            return (V) region(region).get(key, () -> Optional.ofNullable(loader.get())).orElse(null);
+        } catch (ExecutionException | UncheckedExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new UncheckedExecutionException(ex.getCause());
+        }
+    }
+
+    /**
+     * As get, for a list which is shared between callers and so is returned
+     * unmodifiable.
+     */
+    public <V> List<V> getList(String region, Object key, Supplier<List<V>> loader) {
+        return get(region, key, () -> Collections.unmodifiableList(new ArrayList<>(loader.get())));
+    }
+
+    /**
+     * Looks up a number of values, loading those not already cached with a
+     * single call.
+     *
+     * @param loader looks up the values for the given keys, keys which are not
+     * found are left out
+     * @return the values found, in key order
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> List<V> getAll(String region, Collection<K> keys, Function<Collection<K>, Map<K, V>> loader) {
+        Set<K> uniqueKeys = new LinkedHashSet<>(keys);
+
+        if (!enabled) {
+            Map<K, V> loaded = loader.apply(uniqueKeys);
+            List<V> values = new ArrayList<>();
+
+            for (K key : uniqueKeys) {
+                V value = loaded.get(key);
+
+                if (value != null) {
+                    values.add(value);
+                }
+            }
+
+            return values;
+        }
+
+        Cache<Object, Optional<Object>> cache = region(region);
+        Map<Object, Optional<Object>> cached = cache.getAllPresent(uniqueKeys);
+        List<K> missingKeys = new ArrayList<>();
+
+        for (K key : uniqueKeys) {
+            if (!cached.containsKey(key)) {
+                missingKeys.add(key);
+            }
+        }
+
+        Map<K, V> loaded = missingKeys.isEmpty() ? Collections.emptyMap() : loader.apply(missingKeys);
+        List<V> values = new ArrayList<>();
+
+        for (K key : uniqueKeys) {
+            Optional<Object> value = cached.get(key);
+
+            if (value == null) {
+                value = Optional.ofNullable(loaded.get(key));
+                cache.put(key, value);
+            }
+
+            value.ifPresent(found -> values.add((V) found));
+        }
+
+        return values;
+    }
+
+    /**
+     * @param listener called whenever the reference data is evicted, for
+     * anything derived from it
+     */
+    public void addEvictionListener(Runnable listener) {
+        evictionListeners.add(listener);
+    }
+
+    @ManagedOperation
+    public void evictAll() {
+        regions.values().forEach(Cache::invalidateAll);
+        evictionListeners.forEach(Runnable::run);
+        LOG.info("Evicted reference data");
+    }
+
+    public CacheStats getCacheStats() {
+        CacheStats stats = new CacheStats(0, 0, 0, 0, 0, 0);
+
+        for (Cache<Object, Optional<Object>> cache : regions.values()) {
+            stats = stats.plus(cache.stats());
+        }
+
+        return stats;
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return getCacheStats().hitCount();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return getCacheStats().missCount();
+    }
+
+    @ManagedAttribute
+    public double getHitRate() {
+        return getCacheStats().hitRate();
+    }
+
+    @ManagedAttribute
+    public long getSize() {
+        return regions.values().stream().mapToLong(Cache::size).sum();
+    }
+
+    /**
+     * @return a rough estimate of the heap held by the cached values, worked
+     * out when asked for rather than as entries are added
+     */
+    @ManagedAttribute
+    public long getEstimatedMemoryBytes() {
+        long bytes = 0;
+
+        for (Cache<Object, Optional<Object>> cache : regions.values()) {
+            for (Map.Entry<Object, Optional<Object>> entry : cache.asMap().entrySet()) {
+                bytes += estimateBytes(entry.getKey(), 0) + estimateBytes(entry.getValue().orElse(null), 0);
+            }
+        }
+
+        return bytes;
+    }
+
+    private Cache<Object, Optional<Object>> region(String region) {
+        return regions.computeIfAbsent(region, name -> CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .recordStats()
+                .build());
+    }
+
+    private static long estimateBytes(Object value, int depth) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        } else if (value instanceof Number || value instanceof Boolean || value instanceof Date) {
+            return 24;
+        } else if (value instanceof Collection) {
+            long bytes = 32;
+
+            for (Object element : (Collection<?>) value) {
+                bytes += 8 + estimateBytes(element, depth + 1);
+            }
+
+            return bytes;
+        } else if (depth > 3) {
+            return 16;
+        }
+
+        long bytes = 16;
+
+        for (Class<?> type = value.getClass(); type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+
+                bytes += 8;
+
+                if (!field.getType().isPrimitive()) {
+                    try {
+                        field.setAccessible(true);
+                        bytes += estimateBytes(field.get(value), depth + 1);
+                    } catch (IllegalAccessException | RuntimeException ex) {
+                        // leave it out of the estimate
+                    }
+                }
+            }
+        }
+
+        return bytes;
+    }
+}
@@ -7,6 +7,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.orm.hibernate5.HibernateExceptionTranslator;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
@@ -45,12 +46,16 @@ public class DataSourceConfig {
     @Value("${datasource.showSql:false}")
     private boolean showSql;
 
+    @Value("${datasource.statistics:false}")
+    private boolean statistics;
+
     @Bean(destroyMethod = "close")
     public DataSource dataSource() {
         final DataSource dataSource = new DataSource();
 
         dataSource.setDriverClassName(Driver.class.getName());
-        dataSource.setUrl("jdbc:" + vendor + "://" + host + ":" + port + "/" + schema);
+        // lets the driver send a JDBC batch as multi row inserts
+        dataSource.setUrl("jdbc:" + vendor + "://" + host + ":" + port + "/" + schema + "?rewriteBatchedStatements=true");
         dataSource.setUsername(username);
         dataSource.setPassword(password);
 
@@ -60,6 +65,11 @@ public class DataSourceConfig {
         return dataSource;
     }
 
+    @Bean
+    public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+        return new JdbcTemplate(dataSource);
+    }
+
     @Bean
     public HibernateExceptionTranslator hibernateExceptionTranslator() {
         return new HibernateExceptionTranslator();
@@ -78,6 +88,8 @@ public class DataSourceConfig {
         factory.setJpaVendorAdapter(vendorAdapter);
         factory.setPackagesToScan("uk.gov.hscic");
         factory.setDataSource(dataSource);
+        // logs the number of statements each session issues
+        factory.getJpaPropertyMap().put("hibernate.generate_statistics", String.valueOf(statistics));
         factory.afterPropertiesSet();
 
         return factory.getObject();
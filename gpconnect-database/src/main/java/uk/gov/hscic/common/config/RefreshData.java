@@ -10,6 +10,7 @@ import org.springframework.stereotype.Service;
 import uk.gov.hscic.appointment.appointment.AppointmentStore;
 import uk.gov.hscic.appointment.schedule.ScheduleStore;
 import uk.gov.hscic.appointment.slot.SlotStore;
+import uk.gov.hscic.common.cache.ReferenceDataCache;
 import uk.gov.hscic.model.appointment.AppointmentDetail;
 import uk.gov.hscic.model.appointment.ScheduleDetail;
 import uk.gov.hscic.model.appointment.SlotDetail;
@@ -19,7 +20,9 @@ import uk.gov.hscic.patient.details.PatientStore;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.Calendar;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -68,10 +71,14 @@ public class RefreshData {
     @Autowired
     private ScheduleStore scheduleStore;
 
+    @Autowired
+    private ReferenceDataCache referenceDataCache;
+
     // Overnight cleardown of test data
     @Scheduled(cron = "${datasource.cleardown.cron}")
     public void scheduledResetOfData() {
         resetAppointments();
+        referenceDataCache.evictAll();
     }
 
     private void resetAppointments() {
@@ -79,29 +86,29 @@ public class RefreshData {
         appointmentStore.clearAppointments();
         slotStore.clearSlots();
 
+        List<SlotDetail> slots = new ArrayList<>();
+
         try {
+            long start = System.currentTimeMillis();
             List<String> lines = Files.readLines(new File(configPath + slotsFilename), StandardCharsets.UTF_8);
 
+            Date currentDate = new Date();
+            LocalDate today = LocalDate.now();
+            ZoneId zone = ZoneId.systemDefault();
+
             for (String line : lines) {
                 String[] element = line.split(",");
-                Date currentDate = new Date();
-                Calendar calendar = Calendar.getInstance();
-
-                calendar.setTime(currentDate);
-                calendar.add(Calendar.DAY_OF_YEAR, Integer.parseInt(element[SLOT_INDEX_DAY_OFFSET]));
-                calendar.set(Calendar.HOUR_OF_DAY, Integer.parseInt(element[SLOT_INDEX_START_H]));
-                calendar.set(Calendar.MINUTE, Integer.parseInt(element[SLOT_INDEX_START_M]));
-                calendar.set(Calendar.SECOND, Integer.parseInt(element[SLOT_INDEX_START_S]));
-                calendar.set(Calendar.MILLISECOND, 0);
-                Date startDate = calendar.getTime();
-
-                calendar.setTime(currentDate);
-                calendar.add(Calendar.DAY_OF_YEAR, Integer.parseInt(element[SLOT_INDEX_DAY_OFFSET]));
-                calendar.set(Calendar.HOUR_OF_DAY, Integer.parseInt(element[SLOT_INDEX_END_H]));
-                calendar.set(Calendar.MINUTE, Integer.parseInt(element[SLOT_INDEX_END_M]));
-                calendar.set(Calendar.SECOND, Integer.parseInt(element[SLOT_INDEX_END_S]));
-                calendar.set(Calendar.MILLISECOND, 0);
-                Date endDate = calendar.getTime();
+                LocalDate day = today.plusDays(Integer.parseInt(element[SLOT_INDEX_DAY_OFFSET]));
+
+                Date startDate = Date.from(day.atTime(
+                        Integer.parseInt(element[SLOT_INDEX_START_H]),
+                        Integer.parseInt(element[SLOT_INDEX_START_M]),
+                        Integer.parseInt(element[SLOT_INDEX_START_S])).atZone(zone).toInstant());
+
+                Date endDate = Date.from(day.atTime(
+                        Integer.parseInt(element[SLOT_INDEX_END_H]),
+                        Integer.parseInt(element[SLOT_INDEX_END_M]),
+                        Integer.parseInt(element[SLOT_INDEX_END_S])).atZone(zone).toInstant());
 
                 // handle trailing comma on last entry
                 String deliveryChannelCode = element.length >= SLOT_FIELDS ? element[SLOT_FIELDS - 1] : "";
@@ -128,7 +135,7 @@ public class RefreshData {
                     slotType = Long.parseLong(element[SLOT_INDEX_SLOT_TYPE_CODE]);
                 } catch (NumberFormatException ex) {
                 }
-                slotStore.saveSlot(createSlot(slotType,
+                slots.add(createSlot(slotType,
                         element[SLOT_INDEX_DESCRIPTION],
                         Long.parseLong(element[SLOT_INDEX_PRACTITIONER_ID]),
                         element[SLOT_INDEX_FREE_BUSY],
@@ -141,12 +148,15 @@ public class RefreshData {
                         deliveryChannelCode));
 
             }
+
+            // ids are generated in file order
+            slots = slotStore.saveSlots(slots);
+            LOG.info("Loaded " + slots.size() + " slots in " + (System.currentTimeMillis() - start) + "ms");
         } catch (IOException e) {
             LOG.error("Error reading slots file", e);
         }
 
         try {
-            List<SlotDetail> slots = slotStore.findAllSlots();
             if (slots.size() > 2) {
                 AppointmentDetail appointment = createAppointment(slots.get(0), "A appointment to discuss test data");
                 appointmentStore.saveAppointment(appointment, Collections.singletonList(slots.get(0)));
@@ -4,29 +4,41 @@ import java.util.List;
 import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import uk.gov.hscic.common.cache.ReferenceDataCache;
 import uk.gov.hscic.model.location.LocationDetails;
 
 @Service
 public class LocationSearch {
+    private static final String LOCATIONS = "locations";
+    private static final String ALL_LOCATIONS = "allLocations";
+
     private final LocationEntityToLocationDetailsTransformer transformer = new LocationEntityToLocationDetailsTransformer();
 
     @Autowired
     private LocationRepository locationRepository;
+
+    @Autowired
+    private ReferenceDataCache referenceDataCache;
     
     public List<LocationDetails> findAllLocations()
     {
-        return locationRepository.findAll().stream().map(transformer::transform).collect(Collectors.toList());
+        return referenceDataCache.getList(ALL_LOCATIONS, ALL_LOCATIONS,
+                () -> locationRepository.findAll().stream().map(transformer::transform).collect(Collectors.toList()));
     }
 
     public LocationDetails findLocationById(final String locationId) {
 
-        final LocationEntity item;
+        final Long id;
         try {
-            item = locationRepository.findOne(Long.parseLong(locationId));
+            id = Long.parseLong(locationId);
         } catch (NumberFormatException e) {
             return null;
         }
 
-        return item == null ? null : transformer.transform(item);
+        return referenceDataCache.get(LOCATIONS, id, () -> {
+            final LocationEntity item = locationRepository.findOne(id);
+
+            return item == null ? null : transformer.transform(item);
+        });
     }
 }
@@ -18,7 +18,7 @@ public class MedicationRequestEntity {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 	
-	@OneToMany(fetch = FetchType.EAGER)
+	@OneToMany(fetch = FetchType.LAZY)
 	@Fetch(value = FetchMode.SUBSELECT)
     @JoinTable(name = "medication_request_based_on_references", joinColumns = {
             @JoinColumn(name = "medicationRequestId", referencedColumnName = "id") }, inverseJoinColumns = {
@@ -58,21 +58,21 @@ public class MedicationRequestEntity {
 	@Column(name = "authorisingPractitionerId")
 	private Long authorisingPractitionerId;
 	
-	@ManyToMany(fetch = FetchType.EAGER)
+	@ManyToMany(fetch = FetchType.LAZY)
 	@Fetch(value = FetchMode.SUBSELECT)
     @JoinTable(name = "medication_request_reason_codes", joinColumns = {
             @JoinColumn(name = "medicationRequestId", referencedColumnName = "id") }, inverseJoinColumns = {
                     @JoinColumn(name = "reasonCodeId", referencedColumnName = "id") })
     private List<MedicationReasonCodeEntity> reasonCodes;
 	
-	@ManyToMany(fetch = FetchType.EAGER)
+	@ManyToMany(fetch = FetchType.LAZY)
 	@Fetch(value = FetchMode.SUBSELECT)
 	   @JoinTable(name = "medication_request_reason_references", joinColumns = {
 	           @JoinColumn(name = "medicationRequestId", referencedColumnName = "id") }, inverseJoinColumns = {
 	                   @JoinColumn(name = "reasonReferenceId", referencedColumnName = "id") })
     private List<MedicationReasonReferenceEntity> reasonReferences;
 	
-	@ManyToMany(fetch = FetchType.EAGER)
+	@ManyToMany(fetch = FetchType.LAZY)
 	@Fetch(value = FetchMode.SUBSELECT)
     @JoinTable(name = "medication_request_notes", joinColumns = {
             @JoinColumn(name = "medicationRequestId", referencedColumnName = "id") }, inverseJoinColumns = {
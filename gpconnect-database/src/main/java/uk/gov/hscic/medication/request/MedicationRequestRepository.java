@@ -5,6 +5,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -12,6 +13,8 @@ public interface MedicationRequestRepository extends JpaRepository<MedicationReq
 	
 	public List<MedicationRequestEntity> findByIntentCodeAndGroupIdentifier(String intentCode, String groupIdentifier);
 
+	public List<MedicationRequestEntity> findByIntentCodeAndGroupIdentifierIn(String intentCode, Collection<String> groupIdentifiers);
+
     @Query(value = "SELECT mr FROM MedicationRequestEntity mr where mr.guid = :guid")
     public MedicationRequestEntity findByGUID(@Param("guid") String requestGUID);
 //
@@ -51,21 +51,21 @@ public class MedicationStatementEntity {
     @Column(name = "takenDisplay")
     private String takenDisplay;
     
-    @ManyToMany(fetch = FetchType.EAGER)
+    @ManyToMany(fetch = FetchType.LAZY)
     @Fetch(value = FetchMode.SUBSELECT)
     @JoinTable(name = "medication_statement_reason_codes", joinColumns = {
             @JoinColumn(name = "medicationStatementId", referencedColumnName = "id") }, inverseJoinColumns = {
                     @JoinColumn(name = "reasonCodeId", referencedColumnName = "id") })
     private List<MedicationReasonCodeEntity> reasonCodes;
     
-    @OneToMany(fetch = FetchType.EAGER)
+    @OneToMany(fetch = FetchType.LAZY)
     @Fetch(value = FetchMode.SUBSELECT)
     @JoinTable(name = "medication_statement_reason_references", joinColumns = {
             @JoinColumn(name = "medicationStatementId", referencedColumnName = "id") }, inverseJoinColumns = {
                     @JoinColumn(name = "reasonReferenceId", referencedColumnName = "id") })
     private List<MedicationReasonReferenceEntity> reasonReferences;
     
-    @OneToMany(fetch = FetchType.EAGER)
+    @OneToMany(fetch = FetchType.LAZY)
     @Fetch(value = FetchMode.SUBSELECT)
     @JoinTable(name = "medication_statement_notes", joinColumns = {
             @JoinColumn(name = "medicationStatementId", referencedColumnName = "id") }, inverseJoinColumns = {
@@ -91,6 +91,11 @@ public class MedicationStatementEntity {
     @Column(name = "warningCode")
     private String warningCode;
 
+    // generated by the database from lastIssueDate, startDate and dateAsserted,
+    // only read by queries
+    @Column(name = "effectiveDate", insertable = false, updatable = false)
+    private Date effectiveDate;
+
     public String getGuid() {
         return guid;
     }
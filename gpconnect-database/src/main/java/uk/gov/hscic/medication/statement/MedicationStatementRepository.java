@@ -1,12 +1,30 @@
 package uk.gov.hscic.medication.statement;
 
+import java.util.Date;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface MedicationStatementRepository extends JpaRepository<MedicationStatementEntity, Long>{
 
-	public List<MedicationStatementEntity> findByPatientId(Long patientId);
+	public List<MedicationStatementEntity> findByPatientIdOrderByDateAssertedAscIdAsc(Long patientId);
+
+	/**
+	 * The effective date of a statement is its last issue date, else its start
+	 * date, else the date it was asserted. Statements with none of those are
+	 * left out. It is a stored generated column so the range is a scan of the
+	 * (patientId, effectiveDate) index.
+	 */
+	@Query("SELECT ms FROM MedicationStatementEntity ms WHERE ms.patientId = :patientId"
+			+ " AND ms.effectiveDate BETWEEN :start AND :end"
+			+ " ORDER BY ms.dateAsserted, ms.id")
+	public List<MedicationStatementEntity> findByPatientIdAndEffectiveDateBetween(@Param("patientId") Long patientId,
+			@Param("start") Date start, @Param("end") Date end);
+
+	@Query("SELECT DISTINCT ms.warningCode FROM MedicationStatementEntity ms WHERE ms.patientId = :patientId AND ms.warningCode IS NOT NULL")
+	public List<String> findWarningCodesByPatientId(@Param("patientId") Long patientId);
 }
@@ -43,7 +43,7 @@ public class MedicationEntity {
     @Column(name = "lastUpdated")
     private Date lastUpdated;
 
-	@ManyToMany(fetch = FetchType.EAGER)
+	@ManyToMany(fetch = FetchType.LAZY)
 	@Fetch(value = FetchMode.SUBSELECT)
 	@JoinTable(name = "medication_allergies", joinColumns = {
 			@JoinColumn(name = "medicationId", referencedColumnName = "id") }, inverseJoinColumns = {
@@ -4,9 +4,14 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface MedicationRepository extends JpaRepository<MedicationEntity, Long> {
 
+    @Query("SELECT DISTINCT m FROM MedicationEntity m LEFT JOIN FETCH m.medicationAllergies")
+    List<MedicationEntity> findAllWithAllergies();
+
     // TODO there's a harcoded schema name here not sure it can be easily removed though
     @Query(value="SELECT m.id FROM gpconnect1.medications m WHERE m.display=?1", nativeQuery = true)
     Long getMedicationIdByName(String name);
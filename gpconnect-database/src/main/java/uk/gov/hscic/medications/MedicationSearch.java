@@ -0,0 +1,35 @@
+package uk.gov.hscic.medications;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import uk.gov.hscic.common.cache.ReferenceDataCache;
+import uk.gov.hscic.model.medication.MedicationDetail;
+
+@Service
+public class MedicationSearch {
+    private static final String MEDICATIONS = "medications";
+
+    @Autowired
+    private MedicationRepository medicationRepository;
+
+    @Autowired
+    private MedicationEntityToDetailTransformer medicationEntityToDetailTransformer;
+
+    @Autowired
+    private ReferenceDataCache referenceDataCache;
+
+    /**
+     * @param medicationIds ids of medications
+     * @return MedicationDetails for the ids that were found
+     */
+    public List<MedicationDetail> findMedicationDetails(final Collection<Long> medicationIds) {
+        return referenceDataCache.getAll(MEDICATIONS, medicationIds, missingIds -> medicationRepository.findAll(missingIds)
+                .stream()
+                .map(medicationEntityToDetailTransformer::transform)
+                .collect(Collectors.toMap(MedicationDetail::getId, Function.identity())));
+    }
+}
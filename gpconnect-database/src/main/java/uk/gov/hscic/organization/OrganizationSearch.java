@@ -1,30 +1,54 @@
 package uk.gov.hscic.organization;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import uk.gov.hscic.common.cache.ReferenceDataCache;
 import uk.gov.hscic.model.organization.OrganizationDetails;
 
 @Service
 public class OrganizationSearch {
+    private static final String ORGANIZATIONS = "organizations";
+    private static final String ORGANIZATIONS_BY_ODS_CODE = "organizationsByOdsCode";
+
     private final OrganizationEntityToObjectTransformer transformer = new OrganizationEntityToObjectTransformer();
 
     @Autowired
     private OrganizationRepository organizationRepository;
 
+    @Autowired
+    private ReferenceDataCache referenceDataCache;
+
     public OrganizationDetails findOrganizationDetails(final Long organizationId) {
-        final OrganizationEntity item = organizationRepository.findOne(organizationId);
+        return referenceDataCache.get(ORGANIZATIONS, organizationId, () -> {
+            final OrganizationEntity item = organizationRepository.findOne(organizationId);
 
-        return item == null
-                ? null
-                : transformer.transform(item);
+            return item == null
+                    ? null
+                    : transformer.transform(item);
+        });
+    }
+
+    /**
+     * Looks up a number of organizations with a single IN list query
+     *
+     * @param organizationIds
+     * @return OrganizationDetails for the ids that were found
+     */
+    public List<OrganizationDetails> findOrganizationDetails(final Collection<Long> organizationIds) {
+        return referenceDataCache.getAll(ORGANIZATIONS, organizationIds, missingIds -> organizationRepository.findAll(missingIds)
+                .stream()
+                .map(transformer::transform)
+                .collect(Collectors.toMap(OrganizationDetails::getId, Function.identity())));
     }
 
     public List<OrganizationDetails> findOrganizationDetailsByOrgODSCode(String organizationODSCode) {
-        return organizationRepository.findByOrgCode(organizationODSCode)
+        return referenceDataCache.getList(ORGANIZATIONS_BY_ODS_CODE, organizationODSCode, () -> organizationRepository.findByOrgCode(organizationODSCode)
                 .stream()
                 .map(transformer::transform)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
     }
 }
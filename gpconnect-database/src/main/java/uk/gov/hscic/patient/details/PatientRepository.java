@@ -15,6 +15,8 @@
  */
 package uk.gov.hscic.patient.details;
 
+import java.util.Collection;
+import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.querydsl.QueryDslPredicateExecutor;
@@ -23,6 +25,9 @@ public interface PatientRepository extends JpaRepository<PatientEntity, Long>, Q
     PatientEntity findByNhsNumber(String nhsNumber);
     PatientEntity findById(Long id);
 
+    @Query("SELECT p.nhsNumber FROM PatientEntity p WHERE p.nhsNumber IN ?1")
+    List<String> findNhsNumbersIn(Collection<String> nhsNumbers);
+
     // TODO there's a harcoded schema name here not sure it can be easily removed though
     @Query(value="SELECT p.id FROM gpconnect1.patients p WHERE p.nhs_number = ?1", nativeQuery = true)
     Long getPatientIdByNhsNumbwer(String NhsNumber);
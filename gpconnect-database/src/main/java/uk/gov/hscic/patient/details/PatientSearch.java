@@ -15,6 +15,9 @@
  */
 package uk.gov.hscic.patient.details;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -64,6 +67,18 @@ public class PatientSearch {
         return patientDetails;
     }
 
+    /**
+     * Looks up a number of NHS numbers with a single IN list query
+     *
+     * @param nhsNumbers
+     * @return the NHS numbers which belong to a patient
+     */
+    public Set<String> findPatientNhsNumbers(final Collection<String> nhsNumbers) {
+        return nhsNumbers.isEmpty()
+                ? new HashSet<>()
+                : new HashSet<>(patientRepository.findNhsNumbersIn(nhsNumbers));
+    }
+
     public void updatePatient(final PatientDetails patientDetails) {
         PatientEntity patientEntity = patientDetailsToEntityTransformer.transform(patientDetails);
         patientRepository.save(patientEntity);
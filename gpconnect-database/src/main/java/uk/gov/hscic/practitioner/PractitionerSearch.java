@@ -1,34 +1,61 @@
 package uk.gov.hscic.practitioner;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import uk.gov.hscic.common.cache.ReferenceDataCache;
 import uk.gov.hscic.model.practitioner.PractitionerDetails;
 
 @Service
 public class PractitionerSearch {
+    private static final String PRACTITIONERS = "practitioners";
+    private static final String PRACTITIONERS_BY_USER_ID = "practitionersByUserId";
+
     private final PractitionerEntityToObjectTransformer transformer = new PractitionerEntityToObjectTransformer();
 
     @Autowired
     private PractitionerRepository practitionerRepository;
 
+    @Autowired
+    private ReferenceDataCache referenceDataCache;
+
     public PractitionerDetails findPractitionerDetails(final String practitionerId) {
+        final Long id;
         try {
-            PractitionerEntity item = practitionerRepository.findOne(Long.parseLong(practitionerId));
+            id = Long.parseLong(practitionerId);
+        } catch (NumberFormatException numberFormatException) {
+            return null;
+        }
+
+        return referenceDataCache.get(PRACTITIONERS, id, () -> {
+            PractitionerEntity item = practitionerRepository.findOne(id);
 
             return item == null
                 ? null
                 : transformer.transform(item);
-        } catch (NumberFormatException numberFormatException) {
-            return null;
-        }
+        });
     }
 
     public List<PractitionerDetails> findPractitionerByUserId(final String practitionerUserId) {
-        return practitionerRepository.findByUserId(practitionerUserId)
+        return referenceDataCache.getList(PRACTITIONERS_BY_USER_ID, practitionerUserId, () -> practitionerRepository.findByUserId(practitionerUserId)
+                .stream()
+                .map(transformer::transform)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Looks up a number of practitioners with a single IN list query
+     *
+     * @param practitionerIds
+     * @return PractitionerDetails for the ids that were found
+     */
+    public List<PractitionerDetails> findPractitionerDetails(final Collection<Long> practitionerIds) {
+        return referenceDataCache.getAll(PRACTITIONERS, practitionerIds, missingIds -> practitionerRepository.findAll(missingIds)
                 .stream()
                 .map(transformer::transform)
-                .collect(Collectors.toList());
+                .collect(Collectors.toMap(PractitionerDetails::getId, Function.identity())));
     }
 }
@@ -0,0 +1,223 @@
+package uk.gov.hscic.appointment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManagerFactory;
+import com.mysql.jdbc.Driver;
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import uk.gov.hscic.appointment.appointment.AppointmentRepository;
+import uk.gov.hscic.appointment.appointment.AppointmentSearch;
+import uk.gov.hscic.appointment.slot.SlotIndex;
+import uk.gov.hscic.appointment.slot.SlotRepository;
+import uk.gov.hscic.appointment.slot.SlotSearch;
+import uk.gov.hscic.appointment.slot.SlotStore;
+import uk.gov.hscic.model.appointment.AppointmentDetail;
+import uk.gov.hscic.model.appointment.SlotDetail;
+
+/**
+ * Counts the JDBC statements a slot search and an appointment read prepare
+ * against MySQL, which must not grow with the number of rows returned, so a
+ * collection going back to a select per entity fails here. Needs a schema
+ * created from config/sql/create_tables.sql, run with -Ddatasource.host,
+ * -Ddatasource.port, -Ddatasource.username and -Ddatasource.password (and
+ * -Ddatasource.schema if not gpconnect), skipped otherwise. Only the rows it
+ * inserts are touched.
+ */
+public class AppointmentStatementCountDatabaseTest {
+    private static final Long FEW_SLOTS_SCHEDULE = -1L;
+    private static final Long MANY_SLOTS_SCHEDULE = -2L;
+    private static final int MANY = 20;
+
+    private AnnotationConfigApplicationContext context;
+    private SlotSearch slotSearch;
+    private AppointmentSearch appointmentSearch;
+    private JdbcTemplate jdbcTemplate;
+    private Statistics statistics;
+    private List<Long> slotIds = new ArrayList<>();
+    private List<Long> appointmentIds = new ArrayList<>();
+    private Date start;
+
+    @Before
+    public void setUp() {
+        Assume.assumeNotNull(System.getProperty("datasource.host"));
+
+        context = new AnnotationConfigApplicationContext(DatabaseConfig.class);
+        slotSearch = context.getBean(SlotSearch.class);
+        appointmentSearch = context.getBean(AppointmentSearch.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+
+        // whole seconds, as DATETIME keeps them
+        start = new Date((System.currentTimeMillis() / 1000 + 24 * 3600) * 1000);
+        List<SlotDetail> slots = new ArrayList<>();
+        for (int i = 0; i < 1 + MANY; i++) {
+            SlotDetail slotDetail = new SlotDetail();
+            slotDetail.setTypeDisply("AppointmentStatementCountDatabaseTest");
+            slotDetail.setScheduleReference(i == 0 ? FEW_SLOTS_SCHEDULE : MANY_SLOTS_SCHEDULE);
+            slotDetail.setFreeBusyType("FREE");
+            slotDetail.setStartDateTime(new Date(start.getTime() + i * 600000L));
+            slotDetail.setEndDateTime(new Date(start.getTime() + (i + 1) * 600000L));
+            slotDetail.setLastUpdated(start);
+            slotDetail.setGpConnectBookable(true);
+            slotDetail.setDeliveryChannelCode("In-person");
+            slotDetail.setOrganizationTypes(Collections.singletonList("urgent-care"));
+            slots.add(slotDetail);
+        }
+
+        slotIds = context.getBean(SlotStore.class).saveSlots(slots).stream().map(SlotDetail::getId).collect(Collectors.toList());
+    }
+
+    @After
+    public void tearDown() {
+        if (context != null) {
+            for (Long appointmentId : appointmentIds) {
+                jdbcTemplate.update("DELETE FROM appointment_appointments_slots WHERE appointmentId = ?", appointmentId);
+                jdbcTemplate.update("DELETE FROM appointment_booking_orgz WHERE id = ?", appointmentId);
+                jdbcTemplate.update("DELETE FROM appointment_appointments WHERE id = ?", appointmentId);
+            }
+            for (Long slotId : slotIds) {
+                jdbcTemplate.update("DELETE FROM appointment_slots_orgType WHERE slotId = ?", slotId);
+                jdbcTemplate.update("DELETE FROM appointment_slots WHERE id = ?", slotId);
+            }
+            context.close();
+        }
+    }
+
+    @Test
+    public void shouldSearchSlotsInTheSameStatementsWhateverTheirNumber() {
+        Date end = new Date(start.getTime() + (MANY + 2) * 600000L);
+
+        statistics.clear();
+        Map<Long, List<SlotDetail>> fewSlots = slotSearch.findSlotsForScheduleIds(Arrays.asList(FEW_SLOTS_SCHEDULE), start, end);
+        long fewSlotsStatements = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        Map<Long, List<SlotDetail>> manySlots = slotSearch.findSlotsForScheduleIds(Arrays.asList(MANY_SLOTS_SCHEDULE), start, end);
+        long manySlotsStatements = statistics.getPrepareStatementCount();
+
+        assertEquals(1, fewSlots.get(FEW_SLOTS_SCHEDULE).size());
+        assertEquals(MANY, manySlots.get(MANY_SLOTS_SCHEDULE).size());
+
+        // the slots, then their organizations and their organization types
+        assertEquals(3, fewSlotsStatements);
+        assertEquals(fewSlotsStatements, manySlotsStatements);
+
+        // read after the search's transaction has ended
+        for (SlotDetail slotDetail : manySlots.get(MANY_SLOTS_SCHEDULE)) {
+            assertEquals(Collections.singletonList("urgent-care"), slotDetail.getOrganizationTypes());
+        }
+    }
+
+    @Test
+    public void shouldReadAnAppointmentInTheSameStatementsWhateverItsSlots() {
+        Long oneSlotAppointment = insertAppointment(slotIds.subList(0, 1));
+        Long manySlotsAppointment = insertAppointment(slotIds.subList(1, 1 + MANY));
+
+        statistics.clear();
+        AppointmentDetail oneSlot = appointmentSearch.findAppointmentByID(oneSlotAppointment);
+        long oneSlotStatements = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        AppointmentDetail manySlots = appointmentSearch.findAppointmentByID(manySlotsAppointment);
+        long manySlotsStatements = statistics.getPrepareStatementCount();
+
+        assertEquals(1, oneSlot.getSlotIds().size());
+        assertEquals(MANY, manySlots.getSlotIds().size());
+        assertEquals("AppointmentStatementCountDatabaseTest", manySlots.getBookingOrganization().getName());
+
+        // the appointment with its slots, then its booking organization
+        assertEquals(2, oneSlotStatements);
+        assertEquals(oneSlotStatements, manySlotsStatements);
+    }
+
+    private Long insertAppointment(List<Long> slots) {
+        Map<String, Object> appointment = new HashMap<>();
+        appointment.put("status", "booked");
+        appointment.put("startDateTime", start);
+        appointment.put("endDateTime", new Date(start.getTime() + slots.size() * 600000L));
+        appointment.put("patientId", -1L);
+        appointment.put("locationId", -1L);
+        appointment.put("created", start);
+        appointment.put("lastUpdated", start);
+
+        Long appointmentId = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("appointment_appointments")
+                .usingColumns(appointment.keySet().toArray(new String[0]))
+                .usingGeneratedKeyColumns("id")
+                .executeAndReturnKey(appointment)
+                .longValue();
+        appointmentIds.add(appointmentId);
+
+        jdbcTemplate.update("INSERT INTO appointment_booking_orgz (id, org_code, name) VALUES (?, ?, ?)",
+                appointmentId, "A00001", "AppointmentStatementCountDatabaseTest");
+        for (Long slotId : slots) {
+            jdbcTemplate.update("INSERT INTO appointment_appointments_slots (appointmentId, slotId) VALUES (?, ?)", appointmentId, slotId);
+        }
+
+        return appointmentId;
+    }
+
+    @Configuration
+    @EnableTransactionManagement
+    @EnableJpaRepositories(basePackageClasses = {SlotRepository.class, AppointmentRepository.class})
+    @Import({SlotStore.class, SlotIndex.class, SlotSearch.class, AppointmentSearch.class})
+    static class DatabaseConfig {
+
+        @Bean(destroyMethod = "close")
+        public DataSource dataSource() {
+            DataSource dataSource = new DataSource();
+            dataSource.setDriverClassName(Driver.class.getName());
+            dataSource.setUrl("jdbc:mysql://" + System.getProperty("datasource.host") + ":" + System.getProperty("datasource.port", "3306")
+                    + "/" + System.getProperty("datasource.schema", "gpconnect") + "?rewriteBatchedStatements=true");
+            dataSource.setUsername(System.getProperty("datasource.username"));
+            dataSource.setPassword(System.getProperty("datasource.password"));
+            return dataSource;
+        }
+
+        @Bean
+        public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+            return new JdbcTemplate(dataSource);
+        }
+
+        @Bean
+        public EntityManagerFactory entityManagerFactory(DataSource dataSource) {
+            LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+            factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            factory.setPackagesToScan("uk.gov.hscic");
+            factory.setDataSource(dataSource);
+            factory.getJpaPropertyMap().put("hibernate.generate_statistics", "true");
+            factory.afterPropertiesSet();
+            return factory.getObject();
+        }
+
+        @Bean
+        public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+            return new JpaTransactionManager(entityManagerFactory);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package uk.gov.hscic.appointment.slot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.gov.hscic.model.appointment.SlotDetail;
+import uk.gov.hscic.organization.OrganizationEntity;
+
+public class SlotIndexTest {
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long BASE = 1_500_000_000_000L;
+
+    private SlotRepository slotRepository;
+    private SlotIndex slotIndex;
+
+    @Before
+    public void setUp() {
+        slotRepository = mock(SlotRepository.class);
+        when(slotRepository.findAll()).thenReturn(Arrays.asList(
+                slotEntity(1L, 1L, 0, true, null, null),
+                slotEntity(2L, 1L, 1, true, 7L, null),
+                slotEntity(3L, 1L, 2, true, null, "urgent-care"),
+                slotEntity(4L, 1L, 3, false, null, null),
+                slotEntity(5L, 2L, 1, true, null, null),
+                slotEntity(6L, 1L, 5, true, null, null)));
+
+        slotIndex = new SlotIndex();
+        ReflectionTestUtils.setField(slotIndex, "enabled", true);
+        ReflectionTestUtils.setField(slotIndex, "slotRepository", slotRepository);
+    }
+
+    @Test
+    public void shouldMatchRepositoryRangeSemantics() {
+        // start inclusive, end exclusive, unbookable slots and other schedules excluded
+        assertEquals(Arrays.asList(1L, 2L, 3L), ids(slotIndex.findSlotsForScheduleId(1L, at(0), at(5), slotDetail -> true)));
+        assertEquals(Arrays.asList(2L, 3L), ids(slotIndex.findSlotsForScheduleId(1L, at(1), at(3), slotDetail -> true)));
+        assertEquals(Collections.emptyList(), ids(slotIndex.findSlotsForScheduleId(3L, at(0), at(5), slotDetail -> true)));
+        assertEquals(Collections.emptyList(), ids(slotIndex.findSlotsForScheduleId(1L, null, at(5), slotDetail -> true)));
+    }
+
+    @Test
+    public void shouldApplyOrganizationFilters() {
+        assertEquals(Collections.singletonList(2L), ids(slotIndex.findSlotsForScheduleId(1L, at(0), at(6),
+                slotDetail -> slotDetail.getOrganizationIds().contains(7L))));
+        assertEquals(Collections.singletonList(3L), ids(slotIndex.findSlotsForScheduleId(1L, at(0), at(6),
+                slotDetail -> slotDetail.getOrganizationTypes().contains("urgent-care"))));
+    }
+
+    @Test
+    public void shouldTrackSavedAndClearedSlots() {
+        SlotDetail slotDetail = slotIndex.findSlotByID(1L);
+        slotDetail.setFreeBusyType("BUSY");
+
+        // callers modify their own copy until it is saved
+        assertEquals("FREE", slotIndex.findSlotByID(1L).getFreeBusyType());
+
+        slotDetail.setStartDateTime(at(4));
+        slotDetail.setEndDateTime(at(5));
+        slotIndex.put(slotDetail);
+
+        assertEquals("BUSY", slotIndex.findSlotByID(1L).getFreeBusyType());
+        assertEquals(Arrays.asList(2L, 3L, 1L), ids(slotIndex.findSlotsForScheduleId(1L, at(0), at(5), s -> true)));
+
+        slotIndex.clear();
+
+        assertNull(slotIndex.findSlotByID(1L));
+        assertEquals(Collections.emptyList(), ids(slotIndex.findSlotsForScheduleId(1L, at(0), at(5), s -> true)));
+    }
+
+    private static List<Long> ids(List<SlotDetail> slotDetails) {
+        return slotDetails.stream().map(SlotDetail::getId).collect(Collectors.toList());
+    }
+
+    private static Date at(int hour) {
+        return new Date(BASE + hour * HOUR);
+    }
+
+    private static SlotEntity slotEntity(Long id, Long scheduleId, int hour, boolean bookable, Long orgId, String orgType) {
+        SlotEntity slotEntity = new SlotEntity();
+        slotEntity.setId(id);
+        slotEntity.setScheduleReference(scheduleId);
+        slotEntity.setFreeBusyType("FREE");
+        slotEntity.setStartDateTime(at(hour));
+        slotEntity.setEndDateTime(new Date(at(hour).getTime() + HOUR / 6));
+        slotEntity.setGpConnectBookable(bookable);
+
+        List<OrganizationEntity> organizations = new ArrayList<>();
+        if (orgId != null) {
+            OrganizationEntity organizationEntity = new OrganizationEntity();
+            organizationEntity.setId(orgId);
+            organizations.add(organizationEntity);
+        }
+        slotEntity.setBookableOrganizations(organizations);
+        slotEntity.setBookableOrgTypes(orgType == null ? new ArrayList<>() : Collections.singletonList(orgType));
+        return slotEntity;
+    }
+}
@@ -0,0 +1,217 @@
+package uk.gov.hscic.appointment.slot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManagerFactory;
+import com.mysql.jdbc.Driver;
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.gov.hscic.model.appointment.SlotDetail;
+
+/**
+ * Runs the conditional UPDATE in SlotRepository.claimFreeSlots against MySQL
+ * from concurrent transactions, each rolled back when its claim fails as in
+ * AppointmentStore.bookAppointment. Needs a schema created from
+ * config/sql/create_tables.sql, run with -Ddatasource.host, -Ddatasource.port,
+ * -Ddatasource.username and -Ddatasource.password (and -Ddatasource.schema if
+ * not gpconnect), skipped otherwise. Only the slots it inserts are touched.
+ */
+public class SlotStoreDatabaseTest {
+    private static final int SLOTS = 50;
+    private static final int THREADS = 32;
+    private static final int BOOKINGS = 2000;
+
+    private AnnotationConfigApplicationContext context;
+    private SlotStore slotStore;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private List<Long> slotIds;
+
+    @Before
+    public void setUp() {
+        Assume.assumeNotNull(System.getProperty("datasource.host"));
+
+        context = new AnnotationConfigApplicationContext(DatabaseConfig.class);
+        slotStore = context.getBean(SlotStore.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        List<SlotDetail> slots = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < SLOTS; i++) {
+            SlotDetail slotDetail = new SlotDetail();
+            slotDetail.setTypeDisply("SlotStoreDatabaseTest");
+            slotDetail.setScheduleReference(-1L);
+            slotDetail.setFreeBusyType("FREE");
+            slotDetail.setStartDateTime(new Date(start + i * 600000L));
+            slotDetail.setEndDateTime(new Date(start + (i + 1) * 600000L));
+            slotDetail.setLastUpdated(new Date(start));
+            slotDetail.setDeliveryChannelCode("In-person");
+            slots.add(slotDetail);
+        }
+
+        slotIds = slotStore.saveSlots(slots).stream().map(SlotDetail::getId).collect(Collectors.toList());
+    }
+
+    @After
+    public void tearDown() {
+        if (context != null) {
+            for (Long slotId : slotIds) {
+                jdbcTemplate.update("DELETE FROM appointment_slots WHERE id = ?", slotId);
+            }
+            context.close();
+        }
+    }
+
+    @Test
+    public void shouldRollBackAPartialClaim() {
+        assertTrue(claim(Arrays.asList(slotIds.get(0))));
+        assertFalse(claim(Arrays.asList(slotIds.get(1), slotIds.get(0))));
+
+        assertEquals("FREE", freeBusyType(slotIds.get(1)));
+    }
+
+    @Test
+    public void shouldNeverDoubleBookUnderConcurrentClaims() throws Exception {
+        Map<Long, Integer> owners = new ConcurrentHashMap<>();
+        AtomicInteger doubleBookings = new AtomicInteger();
+        AtomicInteger claimedSlots = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int booking = 0; booking < BOOKINGS; booking++) {
+            final int bookingId = booking;
+            // appointments of one or two consecutive slots, all contending for the same few slots
+            final int first = booking % SLOTS;
+            final boolean pair = booking % 3 == 0 && first < SLOTS - 1;
+            futures.add(executor.submit(() -> {
+                start.await();
+                List<Long> ids = pair ? slotIds.subList(first, first + 2) : slotIds.subList(first, first + 1);
+
+                boolean claimed;
+                try {
+                    claimed = claim(ids);
+                } catch (ConcurrencyFailureException ex) {
+                    // an InnoDB deadlock victim is rolled back, which is a failed booking
+                    claimed = false;
+                }
+
+                if (claimed) {
+                    claimedSlots.addAndGet(ids.size());
+                    for (Long id : ids) {
+                        if (owners.putIfAbsent(id, bookingId) != null) {
+                            doubleBookings.incrementAndGet();
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        try {
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, doubleBookings.get());
+        assertEquals(SLOTS, claimedSlots.get());
+        for (Long slotId : slotIds) {
+            assertEquals("BUSY", freeBusyType(slotId));
+        }
+    }
+
+    private boolean claim(List<Long> ids) {
+        return transactionTemplate.execute(status -> {
+            List<SlotDetail> slots = ids.stream().map(id -> {
+                SlotDetail slotDetail = new SlotDetail();
+                slotDetail.setId(id);
+                slotDetail.setFreeBusyType("FREE");
+                return slotDetail;
+            }).collect(Collectors.toList());
+
+            if (!slotStore.claimSlots(slots)) {
+                status.setRollbackOnly();
+                return false;
+            }
+            return true;
+        });
+    }
+
+    private String freeBusyType(Long slotId) {
+        return jdbcTemplate.queryForObject("SELECT freeBusyType FROM appointment_slots WHERE id = ?", String.class, slotId);
+    }
+
+    @Configuration
+    @EnableTransactionManagement
+    @EnableJpaRepositories(basePackageClasses = SlotRepository.class)
+    @Import({SlotStore.class, SlotIndex.class})
+    static class DatabaseConfig {
+
+        @Bean(destroyMethod = "close")
+        public DataSource dataSource() {
+            DataSource dataSource = new DataSource();
+            dataSource.setDriverClassName(Driver.class.getName());
+            dataSource.setUrl("jdbc:mysql://" + System.getProperty("datasource.host") + ":" + System.getProperty("datasource.port", "3306")
+                    + "/" + System.getProperty("datasource.schema", "gpconnect") + "?rewriteBatchedStatements=true");
+            dataSource.setUsername(System.getProperty("datasource.username"));
+            dataSource.setPassword(System.getProperty("datasource.password"));
+            dataSource.setMaxActive(THREADS);
+            return dataSource;
+        }
+
+        @Bean
+        public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+            return new JdbcTemplate(dataSource);
+        }
+
+        @Bean
+        public EntityManagerFactory entityManagerFactory(DataSource dataSource) {
+            LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+            factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            factory.setPackagesToScan("uk.gov.hscic");
+            factory.setDataSource(dataSource);
+            factory.afterPropertiesSet();
+            return factory.getObject();
+        }
+
+        @Bean
+        public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+            return new JpaTransactionManager(entityManagerFactory);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package uk.gov.hscic.appointment.slot;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import org.mockito.InOrder;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import uk.gov.hscic.model.appointment.SlotDetail;
+
+public class SlotStoreTest {
+    private static final int SLOTS = 50;
+
+    private final Map<Long, String> freeBusyTypes = new HashMap<>();
+    private SlotRepository slotRepository;
+    private SlotIndex slotIndex;
+    private SlotStore slotStore;
+
+    @Before
+    public void setUp() {
+        for (long id = 1; id <= SLOTS; id++) {
+            freeBusyTypes.put(id, "FREE");
+        }
+
+        // stands in for the conditional UPDATE, a partial claim leaves the rows
+        // as they were since the caller's transaction is rolled back. The real
+        // query under concurrent transactions is in SlotStoreDatabaseTest
+        slotRepository = mock(SlotRepository.class);
+        when(slotRepository.claimFreeSlots(anyCollection(), any())).thenAnswer(invocation -> {
+            Collection<Long> slotIds = invocation.getArgument(0);
+            int free = (int) slotIds.stream().filter(id -> "FREE".equals(freeBusyTypes.get(id))).count();
+            if (free == slotIds.size()) {
+                slotIds.forEach(id -> freeBusyTypes.put(id, "BUSY"));
+            }
+            return free;
+        });
+
+        slotStore = new SlotStore();
+        ReflectionTestUtils.setField(slotStore, "slotRepository", slotRepository);
+        ReflectionTestUtils.setField(slotStore, "jdbcTemplate", mock(JdbcTemplate.class));
+        slotIndex = mock(SlotIndex.class);
+        ReflectionTestUtils.setField(slotStore, "slotIndex", slotIndex);
+    }
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void shouldClaimFreeSlotsOnly() {
+        List<SlotDetail> slots = Arrays.asList(slot(1L), slot(2L));
+
+        assertTrue(slotStore.claimSlots(slots));
+        assertEquals("BUSY", slots.get(0).getFreeBusyType());
+        assertEquals("BUSY", slots.get(1).getFreeBusyType());
+
+        List<SlotDetail> overlapping = Arrays.asList(slot(2L), slot(3L));
+
+        assertFalse(slotStore.claimSlots(overlapping));
+        assertEquals("FREE", overlapping.get(1).getFreeBusyType());
+        assertEquals("FREE", freeBusyTypes.get(3L));
+    }
+
+    @Test
+    public void shouldUpdateTheIndexOnlyOnceCommitted() {
+        when(slotRepository.saveAndFlush(any(SlotEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        TransactionSynchronizationManager.initSynchronization();
+
+        SlotDetail slotDetail = slot(1L);
+        slotDetail.setOrganizationIds(Collections.emptyList());
+
+        slotStore.saveSlot(slotDetail);
+        slotStore.clearSlots();
+        verifyZeroInteractions(slotIndex);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        InOrder inOrder = inOrder(slotIndex);
+        inOrder.verify(slotIndex).put(any(SlotDetail.class));
+        inOrder.verify(slotIndex).clear();
+    }
+
+    private static SlotDetail slot(Long id) {
+        SlotDetail slotDetail = new SlotDetail();
+        slotDetail.setId(id);
+        slotDetail.setFreeBusyType("FREE");
+        return slotDetail;
+    }
+}
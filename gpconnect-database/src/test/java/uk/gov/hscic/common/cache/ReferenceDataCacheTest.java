@@ -0,0 +1,82 @@
+package uk.gov.hscic.common.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ReferenceDataCacheTest {
+    private ReferenceDataCache referenceDataCache;
+
+    @Before
+    public void setUp() {
+        referenceDataCache = new ReferenceDataCache();
+        ReflectionTestUtils.setField(referenceDataCache, "enabled", true);
+        ReflectionTestUtils.setField(referenceDataCache, "cacheSize", 10);
+    }
+
+    @Test
+    public void shouldLoadEachValueOnceUntilEvicted() {
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("one", referenceDataCache.get("region", 1L, () -> {
+                loads.incrementAndGet();
+                return "one";
+            }));
+            assertNull(referenceDataCache.get("region", 2L, () -> {
+                loads.incrementAndGet();
+                return null;
+            }));
+        }
+
+        assertEquals(2, loads.get());
+        assertEquals(4, referenceDataCache.getHitCount());
+
+        referenceDataCache.evictAll();
+        referenceDataCache.get("region", 1L, () -> {
+            loads.incrementAndGet();
+            return "one";
+        });
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void shouldOnlyLoadTheMissingValuesOfABatch() {
+        referenceDataCache.get("region", 1L, () -> "one");
+        Map<Long, Collection<Long>> requested = new HashMap<>();
+
+        assertEquals(Arrays.asList("one", "two"), referenceDataCache.getAll("region", Arrays.asList(1L, 2L, 3L, 2L), missing -> {
+            requested.put(0L, missing);
+            return Collections.singletonMap(2L, "two");
+        }));
+        assertEquals(Arrays.asList(2L, 3L), requested.get(0L));
+
+        assertEquals(Arrays.asList("two", "one"), referenceDataCache.getAll("region", Arrays.asList(2L, 3L, 1L), missing -> {
+            throw new AssertionError("Loaded " + missing);
+        }));
+    }
+
+    @Test
+    public void shouldKeepTheKeyOrderWhenDisabled() {
+        ReflectionTestUtils.setField(referenceDataCache, "enabled", false);
+        Map<Long, String> loaded = new HashMap<>();
+        loaded.put(1L, "one");
+        loaded.put(2L, "two");
+        loaded.put(3L, "three");
+
+        assertEquals(Arrays.asList("three", "one"), referenceDataCache.getAll("region", Arrays.asList(3L, 4L, 1L, 3L), missing -> {
+            assertEquals(Arrays.asList(3L, 4L, 1L), new ArrayList<>(missing));
+            return loaded;
+        }));
+    }
+}
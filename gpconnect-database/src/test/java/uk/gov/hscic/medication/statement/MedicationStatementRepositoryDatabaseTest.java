@@ -0,0 +1,162 @@
+package uk.gov.hscic.medication.statement;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManagerFactory;
+import com.mysql.jdbc.Driver;
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+/**
+ * Runs findByPatientIdAndEffectiveDateBetween against the effectiveDate
+ * column MySQL generates. Needs a schema created from
+ * config/sql/create_tables.sql, run with -Ddatasource.host,
+ * -Ddatasource.port, -Ddatasource.username and -Ddatasource.password (and
+ * -Ddatasource.schema if not gpconnect), skipped otherwise. Only the
+ * statements it inserts are touched.
+ */
+public class MedicationStatementRepositoryDatabaseTest {
+    private static final Long PATIENT_ID = -1L;
+    // as ClinicalDataContextLoader, for a period open at either end
+    private static final Date EARLIEST = date(1000, 1, 1);
+    private static final Date LATEST = date(9999, 12, 31);
+
+    private AnnotationConfigApplicationContext context;
+    private MedicationStatementRepository medicationStatementRepository;
+    private JdbcTemplate jdbcTemplate;
+    private Long startDateStatement;
+    private Long lastIssueDateStatement;
+    private Long dateAssertedStatement;
+
+    @Before
+    public void setUp() {
+        Assume.assumeNotNull(System.getProperty("datasource.host"));
+
+        context = new AnnotationConfigApplicationContext(DatabaseConfig.class);
+        medicationStatementRepository = context.getBean(MedicationStatementRepository.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        // effective dates 1 February, 1 March and 1 January 2018, asserted in
+        // the opposite order to the first two's ids
+        startDateStatement = insert(null, date(2018, 2, 1), date(2016, 1, 1));
+        lastIssueDateStatement = insert(date(2018, 3, 1), date(2017, 1, 1), date(2016, 1, 1));
+        dateAssertedStatement = insert(null, null, date(2018, 1, 1));
+        insert(null, null, null);
+    }
+
+    @After
+    public void tearDown() {
+        if (context != null) {
+            jdbcTemplate.update("DELETE FROM medication_statements WHERE patientId = ?", PATIENT_ID);
+            context.close();
+        }
+    }
+
+    @Test
+    public void shouldTakeTheLastIssueDateThenTheStartDateThenTheDateAsserted() {
+        assertEquals(Arrays.asList(lastIssueDateStatement), find(date(2018, 3, 1), date(2018, 3, 1)));
+        assertEquals(Arrays.asList(startDateStatement), find(date(2018, 2, 1), date(2018, 2, 1)));
+        assertEquals(Arrays.asList(dateAssertedStatement), find(date(2018, 1, 1), date(2018, 1, 1)));
+
+        // dates passed over for an earlier one in the order are not matched
+        assertEquals(Collections.emptyList(), find(date(2016, 1, 1), date(2017, 12, 31)));
+    }
+
+    @Test
+    public void shouldIncludeBothEndsOfThePeriod() {
+        assertEquals(Arrays.asList(startDateStatement, lastIssueDateStatement, dateAssertedStatement),
+                find(date(2018, 1, 1), date(2018, 3, 1)));
+        assertEquals(Collections.emptyList(), find(date(2018, 1, 2), date(2018, 1, 31)));
+    }
+
+    @Test
+    public void shouldLeaveOutStatementsWithoutAnyDateFromAnOpenPeriod() {
+        assertEquals(Arrays.asList(startDateStatement, lastIssueDateStatement, dateAssertedStatement), find(EARLIEST, LATEST));
+        assertEquals(Arrays.asList(startDateStatement, dateAssertedStatement), find(EARLIEST, date(2018, 2, 1)));
+        assertEquals(Arrays.asList(startDateStatement, lastIssueDateStatement), find(date(2018, 2, 1), LATEST));
+    }
+
+    private List<Long> find(Date start, Date end) {
+        return medicationStatementRepository.findByPatientIdAndEffectiveDateBetween(PATIENT_ID, start, end).stream()
+                .map(MedicationStatementEntity::getId)
+                .collect(Collectors.toList());
+    }
+
+    private Long insert(Date lastIssueDate, Date startDate, Date dateAsserted) {
+        Map<String, Object> statement = new HashMap<>();
+        statement.put("patientId", PATIENT_ID);
+        statement.put("statusCode", "active");
+        statement.put("lastIssueDate", lastIssueDate);
+        statement.put("startDate", startDate);
+        statement.put("dateAsserted", dateAsserted);
+
+        return new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("medication_statements")
+                .usingColumns(statement.keySet().toArray(new String[0]))
+                .usingGeneratedKeyColumns("id")
+                .executeAndReturnKey(statement)
+                .longValue();
+    }
+
+    private static Date date(int year, int month, int day) {
+        return new GregorianCalendar(year, month - 1, day).getTime();
+    }
+
+    @Configuration
+    @EnableTransactionManagement
+    @EnableJpaRepositories(basePackageClasses = MedicationStatementRepository.class)
+    static class DatabaseConfig {
+
+        @Bean(destroyMethod = "close")
+        public DataSource dataSource() {
+            DataSource dataSource = new DataSource();
+            dataSource.setDriverClassName(Driver.class.getName());
+            dataSource.setUrl("jdbc:mysql://" + System.getProperty("datasource.host") + ":" + System.getProperty("datasource.port", "3306")
+                    + "/" + System.getProperty("datasource.schema", "gpconnect"));
+            dataSource.setUsername(System.getProperty("datasource.username"));
+            dataSource.setPassword(System.getProperty("datasource.password"));
+            return dataSource;
+        }
+
+        @Bean
+        public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+            return new JdbcTemplate(dataSource);
+        }
+
+        @Bean
+        public EntityManagerFactory entityManagerFactory(DataSource dataSource) {
+            LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+            factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            factory.setPackagesToScan("uk.gov.hscic");
+            factory.setDataSource(dataSource);
+            factory.afterPropertiesSet();
+            return factory.getObject();
+        }
+
+        @Bean
+        public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+            return new JpaTransactionManager(entityManagerFactory);
+        }
+    }
+}
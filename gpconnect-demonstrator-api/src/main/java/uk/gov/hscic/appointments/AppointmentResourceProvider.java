@@ -37,6 +37,8 @@ import uk.gov.hscic.model.appointment.BookingOrgDetail;
 import uk.gov.hscic.model.appointment.SlotDetail;
 
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.regex.Pattern;
@@ -211,17 +213,20 @@ public class AppointmentResourceProvider implements IResourceProvider {
             throwUnprocessableEntityInvalid422_ParameterException("Upper search date must be after the lower search date.");
         }
 
-        List<Appointment> appointment = appointmentSearch
-                .searchAppointments(patientLocalId.getIdPartAsLong(), startLowerDate, startUpperDate).stream()
+        // only future appointments are returned, the dates and count are applied by the query
+        List<Appointment> futureAppointments = appointmentSearch
+                .searchAppointments(patientLocalId.getIdPartAsLong(), getStartOfToday(), startLowerDate, startUpperDate, count).stream()
                 .map(this::appointmentDetailToAppointmentResourceConverter).collect(Collectors.toList());
 
-        List<Appointment> futureAppointments = appointmentValidation.filterToReturnFutureAppointments(appointment);
-
         if (futureAppointments.isEmpty()) {
             return null;
         }
-        // Update startIndex if we do paging
-        return count != null ? futureAppointments.subList(0, count) : futureAppointments;
+
+        return futureAppointments;
+    }
+
+    private Date getStartOfToday() {
+        return Date.from(LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant());
     }
 
     private Date getYesterday() {
@@ -445,13 +450,14 @@ public class AppointmentResourceProvider implements IResourceProvider {
 
         // add deliveryChannel #157 removed
         //appointmentDetail.setDeliveryChannel(deliveryChannel);
-        appointmentDetail = appointmentStore.saveAppointment(appointmentDetail, slots);
+        // the slots are marked BUSY only if they are all still FREE, the check
+        // above can pass for two concurrent requests for the same slot
+        appointmentDetail = appointmentStore.bookAppointment(appointmentDetail, slots);
 
-        for (SlotDetail slot : slots) {
-            // slot.setAppointmentId(appointmentDetail.getId());
-            slot.setFreeBusyType("BUSY");
-            slot.setLastUpdated(new Date());
-            slotStore.saveSlot(slot);
+        if (appointmentDetail == null) {
+            throw OperationOutcomeFactory.buildOperationOutcomeException(
+                    new ResourceVersionConflictException("Slot is already in use."),
+                    SystemCode.DUPLICATE_REJECTED, IssueType.CONFLICT);
         }
 
         // Build response containing the new resource id
@@ -1,10 +1,7 @@
 package uk.gov.hscic.appointments;
 
 import java.text.MessageFormat;
-import java.time.LocalDate;
-import java.time.ZoneId;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -55,23 +52,6 @@ public class AppointmentValidation {
         return appointment.getComment() != null ? appointment.getComment().length() > APPOINTMENT_COMMENT_LENGTH : false;
     }
 
-    public List<Appointment> filterToReturnFutureAppointments(List<Appointment> appointment) {
-        LocalDate localDate = LocalDate.now();
-        List<Appointment> appointmentsFiltered = new ArrayList<>();
-
-        //convert it to Date
-        Date date = Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
-
-        for (int i = 0; i < appointment.size(); i++) {
-            if (appointment.get(i).getStart().after(date)) {
-                appointmentsFiltered.add(appointment.get(i));
-            }
-
-        }
-        return appointmentsFiltered;
-
-    }
-
     /**
      * 
      * @param undeclaredExtensions 
@@ -1,8 +1,11 @@
 package uk.gov.hscic.appointments;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.hl7.fhir.dstu3.model.CodeableConcept;
@@ -68,6 +71,26 @@ public class ScheduleResourceProvider implements IResourceProvider {
         return schedules;
     }
 
+    /**
+     * Loads the schedules for all the given locations with a single query
+     *
+     * @param locationIds logical location ids
+     * @param startDateTime
+     * @param endDateTime
+     * @return Schedules keyed by location id, locations without schedules are absent
+     */
+    public Map<String, List<Schedule>> getSchedulesForLocationIds(Collection<String> locationIds, Date startDateTime, Date endDateTime) {
+        Map<String, List<Schedule>> schedules = new LinkedHashMap<>();
+        List<Long> ids = locationIds.stream().map(Long::valueOf).collect(Collectors.toList());
+
+        for (ScheduleDetail scheduleDetail : scheduleSearch.findSchedulesForLocationIds(ids, startDateTime, endDateTime)) {
+            schedules.computeIfAbsent(String.valueOf(scheduleDetail.getLocationId()), locationId -> new ArrayList<>())
+                    .add(scheduleDetailToScheduleResourceConverter(scheduleDetail));
+        }
+
+        return schedules;
+    }
+
     private Schedule scheduleDetailToScheduleResourceConverter(ScheduleDetail scheduleDetail) {
         Schedule schedule = new Schedule();
         
@@ -2,13 +2,21 @@ package uk.gov.hscic.auth;
 
 
 import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import javax.naming.InvalidNameException;
 import javax.naming.ldap.LdapName;
@@ -26,6 +34,9 @@ import uk.gov.hscic.SystemCode;
 /**
  * <p>This class authenticates requests by ensuring the certificate provided is
  * in the trusted jks.</p>
+ * <p>The verdict for each certificate is remembered, so a client presenting
+ * the same certificate again costs one lookup. Loading a new keystore
+ * forgets every verdict.</p>
  */
 public final class CertificateValidator {
 	
@@ -37,14 +48,25 @@ public final class CertificateValidator {
     
     private final String domainName = "msg.dev.spine2.ncrs.nhs.uk";    
     private final String certificateAuthority = "VNIS03_SUBCA";
-    private final List<X509Certificate> storeCertificates = new ArrayList<>();
+    private volatile TrustedCertificates trustedCertificates;
 
     public CertificateValidator(KeyStore keyStore) throws KeyStoreException { 
+        setKeyStore(keyStore);
+    }
+
+    /**
+     * Replaces the trusted certificates, dropping all remembered verdicts.
+     */
+    public void setKeyStore(KeyStore keyStore) throws KeyStoreException {
+        List<X509Certificate> storeCertificates = new ArrayList<>();
+
         for (String alias : Collections.list(keyStore.aliases())) {
             if (keyStore.isCertificateEntry(alias)) {
                 storeCertificates.add((X509Certificate) keyStore.getCertificate(alias));
             }
         }
+
+        trustedCertificates = new TrustedCertificates(storeCertificates);
     }
             
     public void validateRequest(HttpServletRequest request) {
@@ -60,18 +82,20 @@ public final class CertificateValidator {
 
                 X509Certificate certificate = certificates[0];
 
+                TrustedCertificates trusted = trustedCertificates;
+
                 if(logCertsToConsole){
                     System.out.println("Known Certs: ");
-                    for(X509Certificate knownCert : storeCertificates){
+                    for(X509Certificate knownCert : trusted.storeCertificates){
                         System.out.println(knownCert.toString());
                     }
                     System.out.println("Recieved Cert: ");
                     System.out.println(certificate.toString());
                 }
                 
-                if (!storeCertificates.contains(certificate)) {
-                    String message = getCertificateError(certificate);                   
-                    
+                String message = trusted.verify(certificate);
+
+                if (message != null) {
                     throw new CertificateException(message, 495);
                 }               
             }
@@ -138,4 +162,67 @@ public final class CertificateValidator {
 
         return  "Provided certificate is not in trusted list!";
     }
+
+    private static String fingerprint(X509Certificate certificate) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(certificate.getEncoded()));
+        } catch (NoSuchAlgorithmException | CertificateEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * One keystore's worth of trusted certificates and the verdicts reached
+     * against it. Verdicts are keyed by certificate identity, the container
+     * hands back the same instance for each request on a TLS session.
+     */
+    private final class TrustedCertificates {
+        private final List<X509Certificate> storeCertificates;
+        private final Set<String> fingerprints = new HashSet<>();
+        private final Cache<X509Certificate, Verdict> verdicts = CacheBuilder.newBuilder()
+                .weakKeys()
+                .maximumSize(1000)
+                .build();
+
+        private TrustedCertificates(List<X509Certificate> storeCertificates) {
+            this.storeCertificates = storeCertificates;
+
+            for (X509Certificate storeCertificate : storeCertificates) {
+                fingerprints.add(fingerprint(storeCertificate));
+            }
+        }
+
+        /**
+         * @return why the certificate is rejected, or null if it is trusted
+         */
+        private String verify(X509Certificate certificate) throws InvalidNameException {
+            Verdict verdict = verdicts.getIfPresent(certificate);
+
+            if (verdict == null || verdict.expiresAt <= System.currentTimeMillis()) {
+                if (fingerprints.contains(fingerprint(certificate))) {
+                    verdict = Verdict.TRUSTED;
+                } else {
+                    // the reason given changes once the certificate expires
+                    long notAfter = certificate.getNotAfter().getTime();
+                    verdict = new Verdict(getCertificateError(certificate), notAfter < System.currentTimeMillis() ? Long.MAX_VALUE : notAfter);
+                }
+
+                verdicts.put(certificate, verdict);
+            }
+
+            return verdict.error;
+        }
+    }
+
+    private static final class Verdict {
+        private static final Verdict TRUSTED = new Verdict(null, Long.MAX_VALUE);
+
+        private final String error;
+        private final long expiresAt;
+
+        private Verdict(String error, long expiresAt) {
+            this.error = error;
+            this.expiresAt = expiresAt;
+        }
+    }
 }
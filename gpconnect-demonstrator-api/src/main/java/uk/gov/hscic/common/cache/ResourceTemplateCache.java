@@ -0,0 +1,76 @@
+package uk.gov.hscic.common.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * The FHIR resources built from reference data, kept per resource ID and
+ * version so that each request only has to copy one rather than build it
+ * again. Cleared along with the reference data they were built from.
+ */
+@Component
+public class ResourceTemplateCache {
+
+    @Value("${resource.template.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${resource.template.cache.size:1000}")
+    private int cacheSize;
+
+    @Autowired
+    private ReferenceDataCache referenceDataCache;
+
+    private Cache<String, Resource> templates;
+
+    @PostConstruct
+    public void init() {
+        templates = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .recordStats()
+                .build();
+
+        referenceDataCache.addEvictionListener(this::evictAll);
+    }
+
+    /**
+     * @param builder builds the resource, only called when there is no
+     * template for this version of it
+     * @return a copy of the template which the caller is free to change
+     */
+    @SuppressWarnings("unchecked")
+    public <R extends Resource> R get(ResourceType resourceType, Long id, Date lastUpdated, Supplier<R> builder) {
+        if (!enabled || id == null || lastUpdated == null) {
+            return builder.get();
+        }
+
+        String key = resourceType + "/" + id + "/_history/" + lastUpdated.getTime();
+
+        try {
+            return (R) templates.get(key, builder::get).copy();
+        } catch (ExecutionException | UncheckedExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new UncheckedExecutionException(ex.getCause());
+        }
+    }
+
+    public void evictAll() {
+        templates.invalidateAll();
+    }
+
+    public CacheStats getCacheStats() {
+        return templates.stats();
+    }
+}
@@ -0,0 +1,105 @@
+package uk.gov.hscic.common.config;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.annotation.PreDestroy;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Watches config.path and calls back when one of the registered files is
+ * created or modified. One thread serves every file.
+ */
+@Component
+public class ConfigFileWatcher {
+    private static final Logger LOG = Logger.getLogger(ConfigFileWatcher.class);
+
+    @Value("${config.path}")
+    private String configPath;
+
+    private final Map<String, List<Runnable>> listeners = new ConcurrentHashMap<>();
+
+    private WatchService watchService;
+
+    /**
+     * @param filename a file directly under config.path
+     * @param onChange run on the watcher thread after the file changes
+     */
+    public synchronized void watch(String filename, Runnable onChange) {
+        listeners.computeIfAbsent(filename, key -> new CopyOnWriteArrayList<>()).add(onChange);
+
+        if (watchService == null) {
+            start();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private void start() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            Paths.get(configPath).register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+            Thread watcher = new Thread(this::run, "config-file-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        } catch (IOException ex) {
+            LOG.error("Unable to watch " + configPath + " for changes", ex);
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // events were lost, reload everything
+                        listeners.values().forEach(this::notify);
+                    } else {
+                        notify(listeners.get(((Path) event.context()).getFileName().toString()));
+                    }
+                }
+
+                if (!key.reset()) {
+                    LOG.warn("Stopped watching " + configPath + " for changes");
+                    return;
+                }
+            }
+        } catch (ClosedWatchServiceException ex) {
+            // shutting down
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void notify(List<Runnable> onChanges) {
+        if (onChanges != null) {
+            for (Runnable onChange : onChanges) {
+                try {
+                    onChange.run();
+                } catch (RuntimeException ex) {
+                    LOG.error("Error reloading changed config file", ex);
+                }
+            }
+        }
+    }
+}
@@ -15,81 +15,253 @@
  */
 package uk.gov.hscic.common.config;
 
-import org.apache.log4j.Logger;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Service;
-
-import javax.persistence.EntityManager;
-import javax.transaction.Transactional;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import uk.gov.hscic.common.cache.ReferenceDataCache;
 
 @Service
-@Transactional
 public class DatabaseRefresher {
     private static final Logger LOG = Logger.getLogger(DatabaseRefresher.class);
+    private static final int BATCH_SIZE = 500;
+    private static final String PATIENT_FILE_PREFIX = "populate_patient_";
+    private static final long TERMINATION_TIMEOUT_MINUTES = 5;
 
     @Value("${config.path}")
     private String configPath;
 
+    @Value("${database.reset.threads:1}")
+    private int threads;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @Autowired
-    private EntityManager entityManager;
+    private ReferenceDataCache referenceDataCache;
 
     // Reset entire db on startup
     public void resetDatabase() throws IOException {
+        long start = System.currentTimeMillis();
+
         runSql("create_tables.sql");
         runSql("populate_medications_table.sql");
 
-        Files.list(Paths.get(configPath + "sql/"))
-                .map(Path::getFileName)
-                .map(Path::toString)
-                .filter(filename -> filename.startsWith("populate"))
-                .filter(filename -> !filename.equals("populate_patients_table.sql"))
-                .filter(filename -> !filename.equals("populate_medications_table.sql"))
-                .filter(filename -> !filename.equals("populate_patient_2.sql"))
+        List<String> populateFiles;
+        try (Stream<Path> paths = Files.list(Paths.get(configPath + "sql/"))) {
+            populateFiles = paths
+                    .map(Path::getFileName)
+                    .map(Path::toString)
+                    .filter(filename -> filename.startsWith("populate"))
+                    .filter(filename -> !filename.equals("populate_patients_table.sql"))
+                    .filter(filename -> !filename.equals("populate_medications_table.sql"))
+                    .filter(filename -> !filename.equals("populate_patient_2.sql"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        populateFiles.stream()
+                .filter(filename -> !filename.startsWith(PATIENT_FILE_PREFIX))
                 .forEach(this::runSql);
 
+        // the patient files only depend on the tables above so can run side by side
+        runSqlInParallel(populateFiles.stream()
+                .filter(filename -> filename.startsWith(PATIENT_FILE_PREFIX))
+                .collect(Collectors.toList()));
+
         // we can only do this here after ensuring that medications and the allergyintolerance tables are poplulated
         // otherwise there's a constraint violation when populating medication_allergies, be careful changing any orderings here
         runSql("populate_patient_2.sql"); // this is the only file which currently populates the medication_allergies table
         runSql("generate_uids.sql");
         runSql("populate_patients_table.sql");
+        referenceDataCache.evictAll();
 
+        LOG.info("Reset database in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private void runSqlInParallel(List<String> filenames) {
+        if (threads <= 1) {
+            filenames.forEach(this::runSql);
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(filenames.size(), 1)));
+        List<Future<?>> futures = new ArrayList<>();
+
+        try {
+            for (String filename : filenames) {
+                futures.add(executor.submit(() -> runSql(filename)));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException ex) {
+            futures.forEach(future -> future.cancel(true));
+            LOG.error("Error executing patient scripts", ex.getCause());
+
+            // the task is a Runnable so the cause is unchecked
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw (RuntimeException) ex.getCause();
+        } catch (InterruptedException ex) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            LOG.error("Interrupted executing patient scripts", ex);
+        } finally {
+            // no script may still be running once the reset moves on or fails
+            executor.shutdown();
+            awaitTermination(executor);
+        }
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        try {
+            if (!executor.awaitTermination(TERMINATION_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                LOG.warn("Patient scripts still running after " + TERMINATION_TIMEOUT_MINUTES + " minutes");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            LOG.error("Interrupted waiting for patient scripts", ex);
+        }
     }
 
     private void runSql(String filename) {
-        File providerRoutingFile = new File(configPath + "sql/" + filename);
+        File sqlFile = new File(configPath + "sql/" + filename);
+
+        if (sqlFile.exists()) {
+            long start = System.currentTimeMillis();
 
-        if (providerRoutingFile.exists()) {
             try {
-                String[] sqls = Files.readAllLines(providerRoutingFile.toPath())
-                        .stream()
-                        .map(line -> line.replaceAll(";$", ";END_OF_STATEMENT;"))
-                        .collect(Collectors.joining(" "))
-                        .split(";END_OF_STATEMENT;");
+                ScriptCounts counts = jdbcTemplate.execute((ConnectionCallback<ScriptCounts>) connection -> {
+                    try {
+                        return runScript(connection, sqlFile, filename);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+
+                LOG.info("Executed " + filename + ": " + counts.statements + " statements, " + counts.rows
+                        + " rows, " + counts.errors + " errors in " + (System.currentTimeMillis() - start) + "ms");
+            } catch (UncheckedIOException ex) {
+                LOG.error("Error reading " + filename, ex.getCause());
+            } catch (DataAccessException ex) {
+                LOG.error("Error executing " + filename, ex);
+            }
+        }
+    }
 
-                LOG.info("Read " + filename);
+    /**
+     * Streams the statements of the script in one transaction, consecutive
+     * inserts are sent to the database as a single batch.
+     */
+    private ScriptCounts runScript(Connection connection, File sqlFile, String filename) throws SQLException, IOException {
+        ScriptCounts counts = new ScriptCounts();
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
 
-                for (String sql : Arrays.asList(sqls)) {
-                    try {
-                        entityManager
-                            .createNativeQuery(sql)
-                            .executeUpdate();
-                    } catch (Exception ex) {
-                        LOG.error("Error executing " + filename);
+        try (SqlScriptReader reader = new SqlScriptReader(Files.newBufferedReader(sqlFile.toPath(), StandardCharsets.UTF_8));
+                Statement statement = connection.createStatement()) {
+            List<String> inserts = new ArrayList<>();
+            String sql;
+
+            while ((sql = reader.nextStatement()) != null) {
+                counts.statements++;
+
+                if (sql.regionMatches(true, 0, "INSERT", 0, 6)) {
+                    inserts.add(sql);
+
+                    if (inserts.size() == BATCH_SIZE) {
+                        executeBatch(connection, statement, inserts, filename, counts);
                     }
+                } else {
+                    executeBatch(connection, statement, inserts, filename, counts);
+                    execute(statement, sql, filename, counts);
                 }
+            }
+
+            executeBatch(connection, statement, inserts, filename, counts);
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        return counts;
+    }
+
+    private void executeBatch(Connection connection, Statement statement, List<String> inserts, String filename, ScriptCounts counts) throws SQLException {
+        if (inserts.isEmpty()) {
+            return;
+        }
+
+        Savepoint savepoint = connection.setSavepoint();
+
+        try {
+            for (String insert : inserts) {
+                statement.addBatch(insert);
+            }
+
+            for (int updateCount : statement.executeBatch()) {
+                counts.rows += Math.max(updateCount, 0);
+            }
+
+            connection.releaseSavepoint(savepoint);
+        } catch (BatchUpdateException ex) {
+            // undo whatever part of the batch made it in and find the failing statements one by one
+            connection.rollback(savepoint);
+            statement.clearBatch();
+
+            for (String insert : inserts) {
+                execute(statement, insert, filename, counts);
+            }
+        }
+
+        inserts.clear();
+    }
 
-                LOG.info("Executed " + filename);
-            } catch (IOException ex) {
-                LOG.error("Error reading " + filename);
+    private static void execute(Statement statement, String sql, String filename, ScriptCounts counts) {
+        try {
+            if (!statement.execute(sql)) {
+                counts.rows += Math.max(statement.getUpdateCount(), 0);
             }
+        } catch (SQLException ex) {
+            counts.errors++;
+            LOG.error("Error executing " + filename + ": " + abbreviate(sql), ex);
         }
     }
+
+    private static String abbreviate(String sql) {
+        return sql.length() > 200 ? sql.substring(0, 200) + "..." : sql;
+    }
+
+    private static final class ScriptCounts {
+        private int statements;
+        private long rows;
+        private int errors;
+    }
 }
@@ -0,0 +1,58 @@
+package uk.gov.hscic.common.config;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.parser.LenientErrorHandler;
+import ca.uhn.fhir.parser.StrictErrorHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * The one DSTU3 FhirContext for the application. Building a context scans the
+ * model classes so it is only done once, the context itself is thread safe.
+ *
+ * Parsers are not thread safe but are reused, each thread keeps its own. They
+ * are shared so callers must not change their settings.
+ */
+@Component
+public class FhirContextHolder {
+    private final FhirContext fhirContext;
+
+    private final ThreadLocal<IParser> jsonParser;
+    private final ThreadLocal<IParser> xmlParser;
+    private final ThreadLocal<IParser> strictJsonParser;
+
+    public FhirContextHolder() {
+        fhirContext = FhirContext.forDstu3();
+        fhirContext.setParserErrorHandler(new StrictErrorHandler());
+
+        // version required on capability statement operation definition
+        // see https://hapifhir.io/doc_resource_references.html
+        fhirContext.getParserOptions().setStripVersionsFromReferences(false);
+
+        // This explicit call does not work
+        ///fhirContext.getParserOptions().setDontStripVersionsFromReferencesAtPaths("CapabilityStatement");
+
+        jsonParser = ThreadLocal.withInitial(() -> fhirContext.newJsonParser().setParserErrorHandler(new LenientErrorHandler()));
+        xmlParser = ThreadLocal.withInitial(() -> fhirContext.newXmlParser().setParserErrorHandler(new LenientErrorHandler()));
+        strictJsonParser = ThreadLocal.withInitial(fhirContext::newJsonParser);
+    }
+
+    public FhirContext getContext() {
+        return fhirContext;
+    }
+
+    public IParser getJsonParser() {
+        return jsonParser.get();
+    }
+
+    public IParser getXmlParser() {
+        return xmlParser.get();
+    }
+
+    /**
+     * @return a JSON parser that rejects unknown or invalid elements
+     */
+    public IParser getStrictJsonParser() {
+        return strictJsonParser.get();
+    }
+}
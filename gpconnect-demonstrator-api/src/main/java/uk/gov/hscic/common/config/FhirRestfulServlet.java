@@ -12,8 +12,6 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.web.cors.CorsConfiguration;
 
-import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.parser.StrictErrorHandler;
 import ca.uhn.fhir.rest.server.ETagSupportEnum;
 import ca.uhn.fhir.rest.server.HardcodedServerAddressStrategy;
 import ca.uhn.fhir.rest.server.RestfulServer;
@@ -27,6 +25,8 @@ import uk.gov.hscic.common.filters.FhirRequestGenericIntercepter;
 import uk.gov.hscic.common.filters.PatientJwtValidator;
 import uk.gov.hscic.location.LocationResourceProvider;
 import uk.gov.hscic.medications.MedicationResourceProvider;
+import uk.gov.hscic.metadata.CapabilityStatementCache;
+import uk.gov.hscic.metadata.CapabilityStatementInterceptor;
 import uk.gov.hscic.metadata.GpConnectServerCapabilityStatementProvider;
 import uk.gov.hscic.organization.OrganizationResourceProvider;
 import uk.gov.hscic.patient.PatientResourceProvider;
@@ -47,17 +47,7 @@ public class FhirRestfulServlet extends RestfulServer {
     @Override
     protected void initialize() throws ServletException {
         
-        FhirContext ctx = FhirContext.forDstu3();
-        ctx.setParserErrorHandler(new StrictErrorHandler());
-        
-        // version required on capability statement operation definition
-        // see https://hapifhir.io/doc_resource_references.html
-        ctx.getParserOptions().setStripVersionsFromReferences(false);
-        
-        // This explicit call does not work
-        ///ctx.getParserOptions().setDontStripVersionsFromReferencesAtPaths("CapabilityStatement");
-        
-        setFhirContext(ctx);
+        setFhirContext(applicationContext.getBean(FhirContextHolder.class).getContext());
         setETagSupport(ETagSupportEnum.ENABLED);
        
         setServerAddressStrategy(new HardcodedServerAddressStrategy(serverBaseUrl));
@@ -111,8 +101,11 @@ public class FhirRestfulServlet extends RestfulServer {
         
         // #215 don't populate Bundle.entry.fullurl
         registerInterceptor(new PostProcessor());
+
+        // serves /metadata from the pre-serialised capability statements, once authorised
+        registerInterceptor(applicationContext.getBean(CapabilityStatementInterceptor.class));
         
-        GpConnectServerCapabilityStatementProvider capStatementProvider = new GpConnectServerCapabilityStatementProvider(this);
+        GpConnectServerCapabilityStatementProvider capStatementProvider = new GpConnectServerCapabilityStatementProvider(this, applicationContext.getBean(CapabilityStatementCache.class));
         super.setServerConformanceProvider(capStatementProvider);
     }
 }
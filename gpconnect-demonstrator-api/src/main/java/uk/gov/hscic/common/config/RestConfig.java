@@ -16,6 +16,7 @@
 package uk.gov.hscic.common.config;
 
 import org.apache.catalina.filters.HttpHeaderSecurityFilter;
+import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
@@ -46,6 +47,7 @@ import org.springframework.context.annotation.Bean;
     "file:${config.path}/external/gpconnect-demonstrator-api.environment.properties"
 })
 public class RestConfig {
+    private static final Logger LOG = Logger.getLogger(RestConfig.class);
 
     @Value("${config.path}")
     private String configPath;
@@ -115,8 +117,20 @@ public class RestConfig {
     }
 
     @Bean
-    public CertificateValidator certificateValidator() throws Exception {
-        return new CertificateValidator(KeyStoreFactory.getKeyStore(configPath + keystoreName, keystorePassword));
+    public CertificateValidator certificateValidator(ConfigFileWatcher configFileWatcher) throws Exception {
+        CertificateValidator certificateValidator = new CertificateValidator(KeyStoreFactory.getKeyStore(configPath + keystoreName, keystorePassword));
+
+        configFileWatcher.watch(keystoreName, () -> {
+            try {
+                certificateValidator.setKeyStore(KeyStoreFactory.getKeyStore(configPath + keystoreName, keystorePassword));
+                LOG.info("Reloaded trusted certificates from " + configPath + keystoreName);
+            } catch (Exception ex) {
+                // the file may be part way through being written, keep the current certificates
+                LOG.error("Unable to reload trusted certificates from " + configPath + keystoreName, ex);
+            }
+        });
+
+        return certificateValidator;
     }
 
     @Bean
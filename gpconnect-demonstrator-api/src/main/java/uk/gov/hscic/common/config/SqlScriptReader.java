@@ -0,0 +1,122 @@
+package uk.gov.hscic.common.config;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads one SQL statement at a time from a script. Statements end at a
+ * semicolon outside of quotes, block and line comments are dropped.
+ */
+public class SqlScriptReader implements Closeable {
+    private final Reader reader;
+    private int pushedBack = -1;
+
+    public SqlScriptReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return the next statement without its terminating semicolon, or null
+     * at the end of the script
+     */
+    public String nextStatement() throws IOException {
+        StringBuilder statement = new StringBuilder();
+        int c;
+
+        while ((c = read()) != -1) {
+            if (c == ';') {
+                if (statement.toString().trim().isEmpty()) {
+                    statement.setLength(0);
+                    continue;
+                }
+                return statement.toString().trim();
+            }
+
+            if (c == '\'' || c == '"' || c == '`') {
+                readQuoted(statement, c);
+            } else if (c == '/' && peek() == '*') {
+                read();
+                skipBlockComment();
+                statement.append(' ');
+            } else if (c == '-' && peek() == '-') {
+                read();
+                int next = peek();
+                if (next == -1 || Character.isWhitespace(next)) {
+                    skipLine();
+                    statement.append(' ');
+                } else {
+                    statement.append("--");
+                }
+            } else if (c == '#') {
+                skipLine();
+                statement.append(' ');
+            } else {
+                statement.append(Character.isWhitespace(c) ? ' ' : (char) c);
+            }
+        }
+
+        String remaining = statement.toString().trim();
+        return remaining.isEmpty() ? null : remaining;
+    }
+
+    private void readQuoted(StringBuilder statement, int quote) throws IOException {
+        statement.append((char) quote);
+        int c;
+
+        while ((c = read()) != -1) {
+            statement.append((char) c);
+
+            if (c == '\\' && quote != '`') {
+                int escaped = read();
+                if (escaped != -1) {
+                    statement.append((char) escaped);
+                }
+            } else if (c == quote) {
+                // a doubled quote is part of the value and simply reopens it
+                return;
+            }
+        }
+    }
+
+    private void skipBlockComment() throws IOException {
+        int previous = -1;
+        int c;
+
+        while ((c = read()) != -1) {
+            if (previous == '*' && c == '/') {
+                return;
+            }
+            previous = c;
+        }
+    }
+
+    private void skipLine() throws IOException {
+        int c;
+
+        while ((c = read()) != -1 && c != '\n') {
+            // skipping the comment
+        }
+    }
+
+    private int read() throws IOException {
+        if (pushedBack != -1) {
+            int c = pushedBack;
+            pushedBack = -1;
+            return c;
+        }
+        return reader.read();
+    }
+
+    private int peek() throws IOException {
+        if (pushedBack == -1) {
+            pushedBack = reader.read();
+        }
+        return pushedBack;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
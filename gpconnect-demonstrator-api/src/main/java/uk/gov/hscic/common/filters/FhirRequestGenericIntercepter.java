@@ -45,15 +45,6 @@ import uk.gov.hscic.common.ldap.model.ProviderRouting;
 public class FhirRequestGenericIntercepter extends InterceptorAdapter {
 
     private static final Logger LOG = Logger.getLogger(FhirRequestGenericIntercepter.class);
-    private static String sConfigPath = null;
-
-    /**
-     * allows access to command line parameters
-     * @return 
-     */
-    public static String getConfigPath() {
-        return sConfigPath;
-    }
 
     @Autowired
     private Interactions interactions;
@@ -68,12 +59,15 @@ public class FhirRequestGenericIntercepter extends InterceptorAdapter {
     protected String providerRoutingFilename;
 
     private String systemSspToHeader;
+    private InteractionMatcher interactionMatcher;
     private static final String PRACTITIONER_RESOURCE_NAME = "Practitioner";
     private static final String ORGANIZATION_RESOURCE_NAME = "Organization";
     private static final String PATIENT_RESOURCE_NAME = "Patient";
 
     @PostConstruct
     public void postConstruct() {
+        interactionMatcher = InteractionMatcher.compile(interactions.getInteractions(), Resource.mappings.keySet(), Operation.mappings.keySet());
+
         if (providerRoutingFilename != null) {
             Path providerRoutingFilePath = new File(configPath + providerRoutingFilename).toPath();
             LOG.info("config.path = " + configPath);
@@ -89,11 +83,6 @@ public class FhirRequestGenericIntercepter extends InterceptorAdapter {
                 }
             }
         }
-
-        // workaround to enable CapabilityStatement to access config path
-        if (sConfigPath == null) {
-            sConfigPath = configPath;
-        }
     }
 
     @Override
@@ -130,7 +119,12 @@ public class FhirRequestGenericIntercepter extends InterceptorAdapter {
         if (StringUtils.isBlank(interactionIdHeader)) {
             throwInvalidRequest400_InvalidParameterException(SystemHeader.SSP_INTERACTIONID + " header blank");
         }
-        
+
+        if (interactionMatcher.matches(interactionIdHeader, httpRequest)) {
+            return;
+        }
+
+        // work out why the request does not match the interaction
         Interaction interaction = interactions.getInteraction(interactionIdHeader);
 
         if (interaction != null) {
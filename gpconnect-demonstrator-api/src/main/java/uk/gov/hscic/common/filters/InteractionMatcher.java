@@ -0,0 +1,185 @@
+package uk.gov.hscic.common.filters;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.servlet.http.HttpServletRequest;
+import uk.gov.hscic.InteractionId;
+import uk.gov.hscic.SystemParameter;
+import uk.gov.hscic.common.filters.model.Interactions.Interaction;
+
+/**
+ * The interaction rules compiled into one route per interaction ID, each
+ * checking the HTTP verb, the shape of the request URI and the identifier
+ * system in a single pass without allocating. A request that does not match
+ * is not necessarily invalid, the descriptive checks in
+ * FhirRequestGenericIntercepter decide that and raise the error.
+ */
+final class InteractionMatcher {
+    private static final String FHIR_PATH = "/fhir/";
+    private static final int MAX_ID_LENGTH = 64;
+
+    private final Map<String, Route> routes;
+
+    private InteractionMatcher(Map<String, Route> routes) {
+        this.routes = routes;
+    }
+
+    /**
+     * @param interactions the interactions by ID
+     * @param knownResources resource names a request URI may address
+     * @param knownOperations operation names a request URI may address
+     */
+    static InteractionMatcher compile(Map<String, Interaction> interactions, Set<String> knownResources, Set<String> knownOperations) {
+        Map<String, Route> routes = new HashMap<>();
+
+        for (Map.Entry<String, Interaction> entry : interactions.entrySet()) {
+            Interaction interaction = entry.getValue();
+
+            boolean routable = knownResources.contains(interaction.getResource())
+                    && (interaction.getOperation() == null || knownOperations.contains(interaction.getOperation()));
+
+            // an interaction naming an unknown resource or operation can only ever fail
+            if (routable) {
+                routes.put(entry.getKey(), new Route(interaction,
+                        InteractionId.IDENTIFIER_INTERACTIONS.contains(entry.getKey())));
+            }
+        }
+
+        return new InteractionMatcher(Collections.unmodifiableMap(routes));
+    }
+
+    boolean matches(String interactionId, HttpServletRequest httpRequest) {
+        Route route = routes.get(interactionId);
+
+        return route != null
+                && route.httpVerb.equals(httpRequest.getMethod())
+                && route.matchesUri(httpRequest.getRequestURI())
+                && (!route.identifierSystemRequired || route.matchesIdentifier(httpRequest.getParameterMap().get(SystemParameter.IDENTIFIER)));
+    }
+
+    private static final class Route {
+        private final String httpVerb;
+        private final String resource;
+        private final String operation;
+        private final boolean identifier;
+        private final String containedResource;
+        private final boolean identifierSystemRequired;
+        private final String[] identifierSystems;
+
+        private Route(Interaction interaction, boolean identifierSystemRequired) {
+            this.httpVerb = interaction.getHttpVerb();
+            this.resource = interaction.getResource();
+            this.operation = interaction.getOperation();
+            this.identifier = interaction.hasIdentifier();
+            this.containedResource = interaction.getContainedResource();
+            this.identifierSystemRequired = identifierSystemRequired;
+            this.identifierSystems = interaction.getIdentifierSystems().toArray(new String[0]);
+        }
+
+        /**
+         * .../fhir/{resource}[/{id}[/{containedResource}]]... with the first
+         * $ segment anywhere in the URI naming the operation, if any.
+         */
+        private boolean matchesUri(String uri) {
+            if (uri == null || !matchesOperation(uri)) {
+                return false;
+            }
+
+            int fhirIndex = uri.indexOf(FHIR_PATH);
+
+            if (fhirIndex < 0) {
+                return false;
+            }
+
+            int resourceStart = fhirIndex + FHIR_PATH.length();
+            int resourceEnd = segmentEnd(uri, resourceStart);
+
+            if (!matchesSegment(uri, resourceStart, resourceEnd, resource)) {
+                return false;
+            }
+
+            if (!identifier && containedResource == null) {
+                return true;
+            }
+
+            int idStart = resourceEnd + 1;
+            int idEnd = idStart;
+
+            while (idEnd < uri.length() && isIdCharacter(uri.charAt(idEnd))) {
+                idEnd++;
+            }
+
+            if (idStart > uri.length() || uri.charAt(resourceEnd) != '/' || idEnd == idStart) {
+                return false;
+            }
+
+            return containedResource == null
+                    || idEnd - idStart <= MAX_ID_LENGTH
+                    && idEnd < uri.length()
+                    && uri.charAt(idEnd) == '/'
+                    && uri.startsWith(containedResource, idEnd + 1);
+        }
+
+        private boolean matchesOperation(String uri) {
+            for (int i = 0; i < uri.length(); i++) {
+                if (uri.charAt(i) == '$' && (i == 0 || uri.charAt(i - 1) == '/')) {
+                    return operation != null && matchesSegment(uri, i, segmentEnd(uri, i), operation);
+                }
+            }
+
+            return operation == null;
+        }
+
+        /**
+         * A single system|value pair, both present and the system one of
+         * those expected.
+         */
+        private boolean matchesIdentifier(String[] identifiers) {
+            if (identifiers == null || identifiers.length != 1) {
+                return false;
+            }
+
+            String identifier = identifiers[0];
+            int separator = identifier.indexOf('|');
+
+            if (separator < 0 || identifier.indexOf('|', separator + 1) >= 0
+                    || isBlank(identifier, 0, separator) || isBlank(identifier, separator + 1, identifier.length())) {
+                return false;
+            }
+
+            for (String identifierSystem : identifierSystems) {
+                if (matchesSegment(identifier, 0, separator, identifierSystem)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private static int segmentEnd(String uri, int start) {
+            int end = uri.indexOf('/', start);
+
+            return end < 0 ? uri.length() : end;
+        }
+
+        private static boolean matchesSegment(String value, int start, int end, String expected) {
+            return end - start == expected.length() && value.startsWith(expected, start);
+        }
+
+        private static boolean isIdCharacter(char c) {
+            return c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '-' || c == '.';
+        }
+
+        private static boolean isBlank(String value, int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (!Character.isWhitespace(value.charAt(i))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
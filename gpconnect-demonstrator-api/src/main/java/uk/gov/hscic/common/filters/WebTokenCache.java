@@ -0,0 +1,124 @@
+package uk.gov.hscic.common.filters;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import uk.gov.hscic.common.filters.model.WebToken;
+
+/**
+ * Remembers bearer tokens which have already passed validation, keyed by a
+ * digest of the token. Only checks which depend on the token alone are
+ * skipped, an entry is dropped once the token expires.
+ */
+@Component
+@ManagedResource(objectName = "uk.gov.hscic:type=WebTokenCache")
+public class WebTokenCache {
+
+    @Value("${jwt.cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${jwt.cache.size:1000}")
+    private int cacheSize;
+
+    @Value("${request.leeway:5}")
+    private int futureRequestLeeway;
+
+    private Cache<String, WebToken> webTokens;
+
+    @PostConstruct
+    public void init() {
+        // tokens are valid for 5 minutes after creation, which may be up to the leeway in the future
+        webTokens = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(300 + futureRequestLeeway, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param token the encoded JWT
+     * @param validator parses and validates the token, any exception it
+     * throws is passed on and nothing is cached
+     * @return the validated WebToken
+     */
+    public WebToken get(String token, Supplier<WebToken> validator) {
+        if (!enabled) {
+            return validator.get();
+        }
+
+        String digest = digest(token);
+        // the map view does not count towards the hit and miss stats
+        WebToken cached = webTokens.asMap().get(digest);
+
+        if (cached != null && cached.getExp() < System.currentTimeMillis() / 1000) {
+            // expired since it was cached, validate again so the usual error is raised
+            webTokens.invalidate(digest);
+        }
+
+        try {
+            return webTokens.get(digest, validator::get);
+        } catch (ExecutionException | UncheckedExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new UncheckedExecutionException(ex.getCause());
+        }
+    }
+
+    public CacheStats getCacheStats() {
+        return webTokens.stats();
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return webTokens.stats().hitCount();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return webTokens.stats().missCount();
+    }
+
+    @ManagedAttribute
+    public double getHitRate() {
+        return webTokens.stats().hitRate();
+    }
+
+    @ManagedAttribute
+    public long getSize() {
+        return webTokens.size();
+    }
+
+    /**
+     * @return the average validation time of a miss multiplied by the number
+     * of hits
+     */
+    @ManagedAttribute
+    public long getValidationTimeSavedMillis() {
+        CacheStats stats = webTokens.stats();
+
+        return TimeUnit.NANOSECONDS.toMillis((long) (stats.averageLoadPenalty() * stats.hitCount()));
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -8,15 +8,14 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.log4j.Logger;
 import org.hl7.fhir.dstu3.model.OperationOutcome.IssueType;
 import org.springframework.http.HttpHeaders;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
-import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.DataFormatException;
-import ca.uhn.fhir.parser.IParser;
-import ca.uhn.fhir.parser.StrictErrorHandler;
 import ca.uhn.fhir.rest.api.RequestTypeEnum;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
@@ -29,6 +28,7 @@ import java.util.List;
 import java.util.Map;
 import uk.gov.hscic.OperationOutcomeFactory;
 import uk.gov.hscic.SystemCode;
+import uk.gov.hscic.common.config.FhirContextHolder;
 import uk.gov.hscic.common.filters.model.WebToken;
 import uk.gov.hscic.common.filters.model.WebTokenValidator;
 import static uk.gov.hscic.common.filters.FhirRequestGenericIntercepter.throwInvalidRequest400_BadRequestException;
@@ -43,7 +43,16 @@ public class WebTokenFactory {
             "application/fhir+xml"
     );
 
-    private IParser fhirJsonParser = null;
+    // readers are immutable and thread safe, unlike creating a mapper per request
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ObjectReader TREE_READER = OBJECT_MAPPER.readerFor(JsonNode.class);
+    private static final ObjectReader WEB_TOKEN_READER = OBJECT_MAPPER.readerFor(WebToken.class);
+
+    @Autowired
+    private FhirContextHolder fhirContextHolder;
+
+    @Autowired
+    private WebTokenCache webTokenCache;
 
     private static final String JWT_HEADER_TYP = "typ";
     private static final String JWT_HEADER_ALG = "alg";
@@ -55,8 +64,6 @@ public class WebTokenFactory {
      * @return populated WebToken object
      */
     WebToken getWebToken(RequestDetails requestDetails, int futureRequestLeeway) {
-        WebToken webToken = null;
-
         String authorizationHeader = requestDetails.getHeader(HttpHeaders.AUTHORIZATION);
 
         if (null == authorizationHeader) {
@@ -97,22 +104,37 @@ public class WebTokenFactory {
             throwUnsupportedMedia415_BadRequestException("Unsupported accept media type");
         }
 
+        // everything from here on depends only on the token
+        String token = authorizationHeaderComponents[1];
+        return webTokenCache.get(token, () -> parseWebToken(token, futureRequestLeeway));
+    } // getWebToken
+
+    /**
+     * Decodes and validates the bearer token itself
+     *
+     * @param token the encoded JWT
+     * @param futureRequestLeeway JWT time leeway in seconds
+     * @return populated WebToken object
+     */
+    private WebToken parseWebToken(String token, int futureRequestLeeway) {
+        WebToken webToken = null;
+
         try {
-            if (authorizationHeaderComponents[1].contains("==") || authorizationHeaderComponents[1].contains("/") || authorizationHeaderComponents[1].contains("+")) {
+            if (token.contains("==") || token.contains("/") || token.contains("+")) {
                 throwInvalidRequest400_BadRequestException("JWT must be encoded using Base64URL. Padding is not allowed");
             }
 
-            String[] jWTParts = authorizationHeaderComponents[1].split("\\.");
+            String[] jWTParts = token.split("\\.");
             if (jWTParts.length == 2) {
-                String headerJsonString = new String(Base64.getUrlDecoder().decode(jWTParts[0]));
-                validateJWTHeader(headerJsonString);
+                validateJWTHeader(readJsonObject(Base64.getUrlDecoder().decode(jWTParts[0])));
 
-                String claimsJsonString = new String(Base64.getUrlDecoder().decode(jWTParts[1]));
+                // the claims are parsed once, the WebToken and the resource checks both work from the tree
+                JsonNode claims = readJsonObject(Base64.getUrlDecoder().decode(jWTParts[1]));
 
                 // This magically populates the WebToken data object
-                webToken = new ObjectMapper().readValue(claimsJsonString, WebToken.class);
+                webToken = WEB_TOKEN_READER.readValue(claims);
 
-                jwtParseResourcesValidation(claimsJsonString);
+                jwtParseResourcesValidation(claims);
             } else {
                 throwInvalidRequest400_BadRequestException("Invalid number of JWT base 64 blocks " + jWTParts.length);
             }
@@ -127,17 +149,26 @@ public class WebTokenFactory {
         WebTokenValidator.validateWebToken(webToken, futureRequestLeeway);
 
         return webToken;
-    } // getWebToken
+    }
+
+    private static JsonNode readJsonObject(byte[] json) throws IOException {
+        JsonNode jsonNode = TREE_READER.readValue(json);
+
+        if (jsonNode == null || !jsonNode.isObject()) {
+            throwInvalidRequest400_BadRequestException("Invalid WebToken");
+        }
+
+        return jsonNode;
+    }
 
     /**
      * Validates the first part of the JWT object
      *
-     * @param headerJsonString
+     * @param header
      * @throws InvalidRequestException
-     * @throws IOException
      */
-    private void validateJWTHeader(String headerJsonString) throws InvalidRequestException, IOException {
-        Iterator<Map.Entry<String, JsonNode>> iter = new ObjectMapper().readTree(headerJsonString).fields();
+    private void validateJWTHeader(JsonNode header) throws InvalidRequestException {
+        Iterator<Map.Entry<String, JsonNode>> iter = header.fields();
         HashMap<String, String> validHeaderKeys = new HashMap<>();
         validHeaderKeys.put(JWT_HEADER_ALG, null);
         validHeaderKeys.put(JWT_HEADER_TYP, null);
@@ -174,20 +205,11 @@ public class WebTokenFactory {
      * validity of some json objects which will be converted to hapifhir
      * resource objects
      *
-     * @param claimsJsonString
+     * @param jsonNode
      */
-    private void jwtParseResourcesValidation(String claimsJsonString) {
-        if (fhirJsonParser == null) {
-            fhirJsonParser = FhirContext
-                    .forDstu3()
-                    .newJsonParser()
-                    .setParserErrorHandler(new StrictErrorHandler());
-        }
-
+    private void jwtParseResourcesValidation(JsonNode jsonNode) {
         String thisClaim = null;
         try {
-            JsonNode jsonNode = new ObjectMapper().readTree(claimsJsonString);
-
             // Check for json objects that are not allowed
             for (String claim : new String[]{
                 "requested_record",}) // #170 requested_record is not allowed
@@ -210,14 +232,12 @@ public class WebTokenFactory {
                 }
 
                 // are these valid json objects also valid fhir resources?
-                fhirJsonParser.parseResource(jsonNode.get(claim).toString());
+                fhirContextHolder.getStrictJsonParser().parseResource(jsonNode.get(claim).toString());
             }
         } catch (DataFormatException e) { // NB This is a fhir exception not a jackson json parsing exception
             // TODO NB This is UnprocessableEntity is that correct?
             throwUnprocessableEntity422_BadRequestException(
                     String.format("Invalid Resource claim %s in JWT (Not a valid Fhir Resource - %s)", thisClaim, e.getMessage()));
-        } catch (IOException ex) {
-            throwInvalidRequest400_BadRequestException(String.format("Unparsable JSON retrieving JWT claim %s", thisClaim));
         }
     } // jwtParseResourcesValidation
 
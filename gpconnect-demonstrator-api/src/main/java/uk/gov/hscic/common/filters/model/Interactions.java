@@ -1,6 +1,7 @@
 package uk.gov.hscic.common.filters.model;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -71,11 +72,17 @@ public class Interactions {
 		return interactions.get(interactionId);
 	}
 
+	public Map<String, Interaction> getInteractions() {
+		return Collections.unmodifiableMap(interactions);
+	}
+
 	public static class Interaction  {
 		private static final Pattern WILDCARD = Pattern.compile(".+");
 
 		private String resource = null;
 		private String operation = null;
+		private String containedResource = null;
+		private boolean identifier = false;
 		
 		private Pattern resourcePattern = null;
 		private Pattern containedResourcePattern = null;
@@ -102,6 +109,7 @@ public class Interactions {
 		}
 
 		private Interaction containedResource(String containedResource) {
+			this.containedResource = containedResource;
 			containedResourcePattern = buildPattern(containedResource);
 
 			return this;
@@ -117,6 +125,7 @@ public class Interactions {
 		private Interaction identifier() {
 			// from http://hl7.org/fhir/resource.html#id -
 			// Ids can be up to 64 characters long, and contain any combination of upper and lowercase ASCII letters, numerals, "-" and "."
+			this.identifier = true;
 			this.identifierPattern = buildPattern("[A-Za-z0-9\\-\\.]{1,64}");
 
 			return this;
@@ -142,6 +151,18 @@ public class Interactions {
 		    return operation;
 		}
 
+		public String getContainedResource() {
+		    return containedResource;
+		}
+
+		public boolean hasIdentifier() {
+		    return identifier;
+		}
+
+		public String getHttpVerb() {
+		    return httpVerb.name();
+		}
+
 		public Set<String> getIdentifierSystems() {
 		    return this.identifierSystems;
 		}
@@ -2,6 +2,8 @@ package uk.gov.hscic.common.helpers;
 
 import org.hl7.fhir.dstu3.model.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import com.google.common.base.Strings;
@@ -10,7 +12,12 @@ import uk.gov.hscic.SystemURL;
 import uk.gov.hscic.translations.TranslationEntity;
 import uk.gov.hscic.translations.TranslationRepository;
 
+/**
+ * Holds the codings being built so each caller needs its own instance, obtain
+ * one per use from an ObjectFactory rather than sharing an injected builder.
+ */
 @Component
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 public class CodeableConceptBuilder {
 	
 	private Coding concept;
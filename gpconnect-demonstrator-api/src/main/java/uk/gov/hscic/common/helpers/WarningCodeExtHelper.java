@@ -4,7 +4,6 @@ import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
-import java.util.List;
 import java.util.Set;
 import org.hl7.fhir.dstu3.model.Annotation;
 import org.hl7.fhir.dstu3.model.CodeType;
@@ -15,23 +14,13 @@ import static uk.gov.hscic.SystemConstants.DATA_AWAITING_FILING_NOTE;
 import static uk.gov.hscic.SystemConstants.DATA_IN_TRANSIT_NOTE;
 
 import uk.gov.hscic.SystemURL;
-import uk.gov.hscic.medication.statement.MedicationStatementEntity;
-import uk.gov.hscic.medication.statement.MedicationStatementRepository;
-import uk.gov.hscic.patient.details.PatientEntity;
-import uk.gov.hscic.patient.details.PatientRepository;
-import uk.gov.hscic.patient.structuredAllergyIntolerance.StructuredAllergyIntoleranceEntity;
-import uk.gov.hscic.patient.structuredAllergyIntolerance.StructuredAllergySearch;
+import uk.gov.hscic.patient.ClinicalDataContext;
 
 public class WarningCodeExtHelper {
 
-    private static boolean dataInTransit = false;
-    private static boolean dataAwaitingFiling = false;
-
-    private static final String DATA_IN_TRANSIT = "data-in-transit";
+    private static final String DATA_IN_TRANSIT = ClinicalDataContext.DATA_IN_TRANSIT;
     private static final String CONFIDENTIAL_ITEMS = "confidential-items";
-    private static final String DATA_AWAITING_FILING = "data-awaiting-filing";
-
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("dd-MMM-yyyy");
+    private static final String DATA_AWAITING_FILING = ClinicalDataContext.DATA_AWAITING_FILING;
 
     /**
      * confidential items are per record but the other two are global values per
@@ -39,31 +28,16 @@ public class WarningCodeExtHelper {
      *
      * @param warningCodes
      * @param list
-     * @param patientRepository
-     * @param medicationStatementRepository
-     * @param structuredAllergySearch
+     * @param clinicalData the patient's clinical data, which holds the global
+     * flags
      */
-    public static void addWarningCodeExtensions(Set<String> warningCodes, ListResource list,
-            PatientRepository patientRepository, MedicationStatementRepository medicationStatementRepository, StructuredAllergySearch structuredAllergySearch) {
-
-        String NHS = list.getSubject().getIdentifier().getValue();
-
-        PatientEntity patientEntity = patientRepository.findByNhsNumber(NHS);
-        List<MedicationStatementEntity> medicationStatements = medicationStatementRepository.findByPatientId(patientEntity.getId());
-        for (MedicationStatementEntity medicationStatement : medicationStatements) {
-            setFlags(medicationStatement.getWarningCode());
-        }
-
-        List<StructuredAllergyIntoleranceEntity> allergies = structuredAllergySearch.getAllergyIntollerence(NHS);
-        for (StructuredAllergyIntoleranceEntity allergy : allergies) {
-            setFlags(allergy.getWarningCode());
-        }
+    public static void addWarningCodeExtensions(Set<String> warningCodes, ListResource list, ClinicalDataContext clinicalData) {
 
-        // check medication_statements for either of the global flags
-        if (dataInTransit) {
+        // check medication_statements and allergies for either of the global flags
+        if (clinicalData.isDataInTransit()) {
             warningCodes.add(DATA_IN_TRANSIT);
         }
-        if (dataAwaitingFiling) {
+        if (clinicalData.isDataAwaitingFiling()) {
             warningCodes.add(DATA_AWAITING_FILING);
         }
 
@@ -85,7 +59,7 @@ public class WarningCodeExtHelper {
                         Date now = new Date();
                         cal.setTime(now);
                         cal.add(Calendar.DAY_OF_YEAR, -7); // a week before now
-                        annotation.setText(String.format(DATA_IN_TRANSIT_NOTE, DATE_FORMAT.format(cal.getTime()))); // #266
+                        annotation.setText(String.format(DATA_IN_TRANSIT_NOTE, new SimpleDateFormat("dd-MMM-yyyy").format(cal.getTime()))); // #266
                         //list.addNote(annotation);
                         sb.append("\r\n").append(annotation.getText());
                         break;
@@ -118,21 +92,4 @@ public class WarningCodeExtHelper {
             }
         }
     }
-
-    /**
-     * set flags
-     * @param code
-     */
-    private static void setFlags(String code) {
-        if (code != null) {
-            switch (code) {
-                case DATA_IN_TRANSIT:
-                    dataInTransit = true;
-                    break;
-                case DATA_AWAITING_FILING:
-                    dataAwaitingFiling = true;
-                    break;
-            }
-        }
-    }
 }
@@ -1,31 +1,36 @@
 package uk.gov.hscic.common.ldap;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import java.io.File;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.TrustManagerFactory;
+import org.apache.commons.pool.impl.GenericObjectPool;
 import org.apache.directory.api.ldap.model.cursor.EntryCursor;
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.message.SearchScope;
-import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.LdapConnectionConfig;
+import org.apache.directory.ldap.client.api.LdapConnectionPool;
+import org.apache.directory.ldap.client.api.ValidatingPoolableLdapConnectionFactory;
 import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import uk.gov.hscic.common.ldap.model.Practice;
-import uk.gov.hscic.common.ldap.model.ProviderRouting;
 
 @RestController
 @RequestMapping("api/")
@@ -53,19 +58,70 @@ public class EndpointResolver {
     @Value("${ldap.context.keystore.type}")
     private String keystoreType;
 
-    @Value("${gp.connect.provider.routing.filename:#{null}}")
-    protected String providerRoutingFilename;
+    @Value("${ldap.context.timeout:30000}")
+    private long ldapTimeout;
 
-    private Path providerRoutingFilePath;
+    @Value("${ldap.context.pool.size:8}")
+    private int poolSize;
 
-    private KeyManagerFactory serverKeyManager = null;
-    private TrustManagerFactory trustManager = null;
+    @Value("${ldap.cache.size:1000}")
+    private int cacheSize;
+
+    @Value("${ldap.cache.ttl:300}")
+    private int cacheTtl;
+
+    @Value("${ldap.cache.negative.ttl:30}")
+    private int negativeCacheTtl;
+
+    @Autowired
+    private ProviderRoutingTable providerRoutingTable;
+
+    private LdapConnectionPool connectionPool;
+
+    private Cache<String, LdapRoute> ldapRoutes;
 
     @PostConstruct
-    public void postConstruct() {
-        if (providerRoutingFilename != null) {
-            providerRoutingFilePath = new File(configPath + providerRoutingFilename).toPath();
+    public void init() {
+        LdapConnectionConfig config = new LdapConnectionConfig();
+        config.setLdapHost(ldapUrl);
+        config.setLdapPort(ldapPort);
+        config.setUseSsl(ldapUseSSL);
+        config.setTimeout(ldapTimeout);
+
+        if (ldapUseSSL) {
+            // the keystore doubles as the trust store
+            try (FileInputStream keystoreInputStream = new FileInputStream(configPath + keystoreFilename)) {
+                KeyStore keyStore = KeyStore.getInstance(keystoreType);
+                keyStore.load(keystoreInputStream, keystorePassword.toCharArray());
+
+                KeyManagerFactory serverKeyManager = KeyManagerFactory.getInstance("SunX509");
+                serverKeyManager.init(keyStore, keystorePassword.toCharArray());
+                TrustManagerFactory trustManager = TrustManagerFactory.getInstance("SunX509");
+                trustManager.init(keyStore);
+
+                config.setKeyManagers(serverKeyManager.getKeyManagers());
+                config.setTrustManagers(trustManager.getTrustManagers());
+            } catch (IOException | GeneralSecurityException ex) {
+                LOG.error("Unable to load the LDAP keystore " + configPath + keystoreFilename, ex);
+            }
         }
+
+        GenericObjectPool.Config poolConfig = new GenericObjectPool.Config();
+        poolConfig.maxActive = poolSize;
+        poolConfig.maxIdle = poolSize;
+        poolConfig.maxWait = ldapTimeout;
+        poolConfig.testOnBorrow = true;
+        connectionPool = new LdapConnectionPool(new ValidatingPoolableLdapConnectionFactory(config), poolConfig);
+
+        ldapRoutes = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(Math.max(cacheTtl, negativeCacheTtl), TimeUnit.SECONDS)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() throws Exception {
+        connectionPool.close();
     }
 
     @GetMapping("/ldap/endpointLookup")
@@ -82,14 +138,8 @@ public class EndpointResolver {
         return result;
     }
 
-    private String fileLookup(String odsCode, String interactionId) throws Exception {
-        String result = loadPractices()
-                .stream()
-                .filter(practice -> odsCode.equals(practice.getOdsCode()))
-                .filter(practice -> practice.getInteractionIds().contains("*") || practice.getInteractionIds().contains(interactionId))
-                .map(practice -> format(practice.getEndpointURL(), practice.getAsid()))
-                .findFirst()
-                .orElse(null);
+    private String fileLookup(String odsCode, String interactionId) {
+        String result = providerRoutingTable.lookup(odsCode, interactionId);
 
         if (null == result) {
             LOG.warn(String.format("Unable to match one or both of the given odsCode (%s) and interactionId (%s)", odsCode, interactionId));
@@ -98,19 +148,25 @@ public class EndpointResolver {
         return result;
     }
 
-    private List<Practice> loadPractices() throws IOException {
-        if (providerRoutingFilePath.toFile().exists()) {
-            return new ObjectMapper()
-                    .readValue(Files.readAllBytes(providerRoutingFilePath), ProviderRouting.class)
-                    .getPractices();
-        }
+    private String ldapLookup(String odsCode, String interactionId) {
+        String key = odsCode + "|" + interactionId;
+        LdapRoute cached = ldapRoutes.asMap().get(key);
 
-        LOG.warn(String.format("The file %s does not exist", providerRoutingFilePath.toUri()));
+        if (cached != null && cached.expiresAt < System.nanoTime()) {
+            ldapRoutes.invalidate(key);
+        }
 
-        return Collections.emptyList();
+        try {
+            // concurrent lookups of the same key wait for a single query
+            return ldapRoutes.get(key, () -> queryLdap(odsCode, interactionId)).result;
+        } catch (ExecutionException | UncheckedExecutionException ex) {
+            // failures are not cached, the next lookup tries again
+            LOG.error("LDAP endpoint lookup failed - ODSCode:" + odsCode + " InteractionId:" + interactionId, ex.getCause());
+            return format("", "");
+        }
     }
 
-    private String ldapLookup(String odsCode, String interactionId) throws Exception {
+    LdapRoute queryLdap(String odsCode, String interactionId) throws Exception {
         String uuid = java.util.UUID.randomUUID().toString();
 
         LOG.info(uuid + " Endpoint Lookup - ODSCode:" + odsCode + " InteractionId:" + interactionId);
@@ -119,80 +175,66 @@ public class EndpointResolver {
         String asid = "";
         String endpointURL = "";
 
-        // Lookup the PartyKey for the Organization ODS Code
-        String asidFilter = "(&(nhsIDCode=" + odsCode + ")(objectClass=nhsAS)(nhsAsSvcIA=" + interactionId + "))";
-
-        for (Collection<Attribute> attributes : ldapQueryRequest("ou=services, o=nhs", asidFilter)) {
-            for (Attribute attribute : attributes) {
-                LOG.debug(uuid + " ASID Arribute - " + attribute.getId() + " : " + attribute.getString());
-                // Extract PartyKey
-                if ("nhsMhsPartyKey".equalsIgnoreCase(attribute.getId())) {
-                    partyKey = attribute.getString();
-                } else if ("uniqueIdentifier".equalsIgnoreCase(attribute.getId())) {
-                    asid = attribute.getString();
-                }
-            }
-        }
+        LdapConnection connection = connectionPool.getConnection();
+        boolean broken = true;
 
-        // Lookup the GP Connect endpoint URL
-        if (partyKey != null) {
-            String mhsFilter = "(&(nhsMhsPartyKey=" + partyKey + ")(objectClass=nhsMhs)(nhsMhsSvcIA=" + interactionId + "))";
+        try {
+            // Lookup the PartyKey for the Organization ODS Code
+            String asidFilter = "(&(nhsIDCode=" + odsCode + ")(objectClass=nhsAS)(nhsAsSvcIA=" + interactionId + "))";
 
-            for (Collection<Attribute> attributes : ldapQueryRequest("ou=services, o=nhs", mhsFilter)) {
+            for (Collection<Attribute> attributes : ldapQueryRequest(connection, "ou=services, o=nhs", asidFilter)) {
                 for (Attribute attribute : attributes) {
-                    LOG.debug(uuid + " MHS Arribute - " + attribute.getId() + " : " + attribute.getString());
-
-                    if ("nhsMhsEndPoint".equalsIgnoreCase(attribute.getId())) {
-                        endpointURL = attribute.getString();
-                        break;
+                    LOG.debug(uuid + " ASID Arribute - " + attribute.getId() + " : " + attribute.getString());
+                    // Extract PartyKey
+                    if ("nhsMhsPartyKey".equalsIgnoreCase(attribute.getId())) {
+                        partyKey = attribute.getString();
+                    } else if ("uniqueIdentifier".equalsIgnoreCase(attribute.getId())) {
+                        asid = attribute.getString();
                     }
                 }
-
-                if (!endpointURL.isEmpty()) {
-                    break;
-                }
             }
-        }
 
-        return format(endpointURL, asid);
-    }
+            // Lookup the GP Connect endpoint URL
+            if (partyKey != null) {
+                String mhsFilter = "(&(nhsMhsPartyKey=" + partyKey + ")(objectClass=nhsMhs)(nhsMhsSvcIA=" + interactionId + "))";
 
-    private List<Collection<Attribute>> ldapQueryRequest(String queryBase, String queryFilter) throws IOException {
-        String uuid = java.util.UUID.randomUUID().toString();
-        List<Collection<Attribute>> returnList = new ArrayList<>();
-        LdapNetworkConnection connection = null;
+                for (Collection<Attribute> attributes : ldapQueryRequest(connection, "ou=services, o=nhs", mhsFilter)) {
+                    for (Attribute attribute : attributes) {
+                        LOG.debug(uuid + " MHS Arribute - " + attribute.getId() + " : " + attribute.getString());
 
-        LOG.debug(uuid + " ldapSDSQuery (Base:" + queryBase + " Filter:" + queryFilter + ")");
+                        if ("nhsMhsEndPoint".equalsIgnoreCase(attribute.getId())) {
+                            endpointURL = attribute.getString();
+                            break;
+                        }
+                    }
 
-        try {
-            connection = new LdapNetworkConnection(ldapUrl, ldapPort, ldapUseSSL);
-
-            if (serverKeyManager == null && trustManager == null) {
-                // Create Key Manager
-                try (FileInputStream keystoreInputStream = new FileInputStream(configPath + keystoreFilename)) {
-                    KeyStore serverKeys = KeyStore.getInstance(keystoreType);
-                    serverKeys.load(keystoreInputStream, keystorePassword.toCharArray());
-                    serverKeyManager = KeyManagerFactory.getInstance("SunX509");
-                    serverKeyManager.init(serverKeys, keystorePassword.toCharArray());
+                    if (!endpointURL.isEmpty()) {
+                        break;
+                    }
                 }
+            }
 
-                // Create New Trust Store
-                try (FileInputStream keystoreInputStream = new FileInputStream(configPath + keystoreFilename)) {
-                    KeyStore serverTrustStore = KeyStore.getInstance(keystoreType);
-                    serverTrustStore.load(keystoreInputStream, keystorePassword.toCharArray());
-                    trustManager = TrustManagerFactory.getInstance("SunX509");
-                    trustManager.init(serverTrustStore);
-                }
+            broken = false;
+        } finally {
+            if (broken) {
+                connectionPool.invalidateObject(connection);
+            } else {
+                connectionPool.releaseConnection(connection);
             }
+        }
 
-            // Set SSL Trust and Key stores in the config
-            connection.getConfig().setKeyManagers(serverKeyManager.getKeyManagers());
-            connection.getConfig().setTrustManagers(trustManager.getTrustManagers());
+        // an unknown practice is remembered for less time than a known one
+        int ttl = endpointURL.isEmpty() ? negativeCacheTtl : cacheTtl;
 
-            connection.bind();
+        return new LdapRoute(format(endpointURL, asid), System.nanoTime() + TimeUnit.SECONDS.toNanos(ttl));
+    }
+
+    private static List<Collection<Attribute>> ldapQueryRequest(LdapConnection connection, String queryBase, String queryFilter) throws Exception {
+        List<Collection<Attribute>> returnList = new ArrayList<>();
 
-            EntryCursor cursor = connection.search(queryBase, queryFilter, SearchScope.SUBTREE);
+        LOG.debug("ldapSDSQuery (Base:" + queryBase + " Filter:" + queryFilter + ")");
 
+        try (EntryCursor cursor = connection.search(queryBase, queryFilter, SearchScope.SUBTREE)) {
             while (cursor.next()) {
                 returnList.add(cursor.get().getAttributes());
 
@@ -200,20 +242,22 @@ public class EndpointResolver {
                     LOG.debug(attribute.getId() + ":" + attribute.getString());
                 }
             }
-
-            connection.unBind();
-        } catch (Exception e) {
-            LOG.error(uuid + " Error - " + e.getMessage());
-        } finally {
-            if (connection != null) {
-                connection.close();
-            }
         }
 
         return returnList;
     }
 
-    private static String format(String endpointURL, String asid) {
+    static String format(String endpointURL, String asid) {
         return "{ \"endpointURL\" : \"" + endpointURL + "\", \"recievingSysASID\" : \"" + asid + "\"}";
     }
+
+    static final class LdapRoute {
+        private final String result;
+        private final long expiresAt;
+
+        LdapRoute(String result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
 }
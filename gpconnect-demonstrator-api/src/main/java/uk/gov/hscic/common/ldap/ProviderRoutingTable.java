@@ -0,0 +1,122 @@
+package uk.gov.hscic.common.ldap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.PostConstruct;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.gov.hscic.common.config.ConfigFileWatcher;
+import uk.gov.hscic.common.ldap.model.Practice;
+import uk.gov.hscic.common.ldap.model.ProviderRouting;
+
+/**
+ * The provider routing file indexed by ODS code. The file is read once and
+ * read again when it changes, a lookup never touches the disk.
+ */
+@Component
+public class ProviderRoutingTable {
+    private static final Logger LOG = Logger.getLogger("LDAPLog");
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Value("${config.path}")
+    private String configPath;
+
+    @Value("${gp.connect.provider.routing.filename:#{null}}")
+    private String providerRoutingFilename;
+
+    @Autowired
+    private ConfigFileWatcher configFileWatcher;
+
+    private volatile Map<String, Routes> routesByOdsCode = Collections.emptyMap();
+
+    @PostConstruct
+    public void init() {
+        if (providerRoutingFilename != null) {
+            reload();
+            configFileWatcher.watch(providerRoutingFilename, this::reload);
+        }
+    }
+
+    /**
+     * @return the endpoint lookup result of the first practice in the file
+     * with the ODS code and interaction, or null if there is none
+     */
+    public String lookup(String odsCode, String interactionId) {
+        Routes routes = routesByOdsCode.get(odsCode);
+
+        return routes == null ? null : routes.lookup(interactionId);
+    }
+
+    void reload() {
+        Path providerRoutingFilePath = Paths.get(configPath, providerRoutingFilename);
+
+        if (!providerRoutingFilePath.toFile().exists()) {
+            LOG.warn(String.format("The file %s does not exist", providerRoutingFilePath.toUri()));
+            routesByOdsCode = Collections.emptyMap();
+            return;
+        }
+
+        try {
+            List<Practice> practices = OBJECT_MAPPER
+                    .readValue(Files.readAllBytes(providerRoutingFilePath), ProviderRouting.class)
+                    .getPractices();
+
+            routesByOdsCode = index(practices == null ? Collections.emptyList() : practices);
+            LOG.info(String.format("Loaded %d provider routes from %s", routesByOdsCode.size(), providerRoutingFilePath));
+        } catch (IOException | RuntimeException ex) {
+            // keep the last good table, the file may be part way through being written
+            LOG.error("Error reading provider routing file " + providerRoutingFilePath, ex);
+        }
+    }
+
+    private static Map<String, Routes> index(List<Practice> practices) {
+        Map<String, Routes> index = new HashMap<>();
+
+        for (Practice practice : practices) {
+            if (practice.getOdsCode() != null && practice.getInteractionIds() != null) {
+                index.computeIfAbsent(practice.getOdsCode(), odsCode -> new Routes()).add(practice);
+            }
+        }
+
+        return Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * The routes for one ODS code, resolving the same practice as a scan of
+     * the file in order would.
+     */
+    private static final class Routes {
+        private final Map<String, String> byInteractionId = new HashMap<>();
+        private String wildcard;
+
+        private void add(Practice practice) {
+            if (wildcard != null) {
+                // an earlier practice already matches every interaction
+                return;
+            }
+
+            String result = EndpointResolver.format(practice.getEndpointURL(), practice.getAsid());
+
+            if (practice.getInteractionIds().contains("*")) {
+                wildcard = result;
+            } else {
+                for (String interactionId : practice.getInteractionIds()) {
+                    byInteractionId.putIfAbsent(interactionId, result);
+                }
+            }
+        }
+
+        private String lookup(String interactionId) {
+            return byInteractionId.getOrDefault(interactionId, wildcard);
+        }
+    }
+}
@@ -1,19 +1,24 @@
 package uk.gov.hscic.common.validators;
 
-import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.DataFormatException;
-import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
@@ -23,16 +28,25 @@ import org.apache.log4j.Logger;
 import org.hl7.fhir.dstu3.model.Coding;
 import org.hl7.fhir.dstu3.model.OperationOutcome.IssueType;
 import org.hl7.fhir.dstu3.model.ValueSet;
+import org.hl7.fhir.dstu3.model.ValueSet.ConceptReferenceComponent;
 import org.hl7.fhir.dstu3.model.ValueSet.ConceptSetComponent;
-import org.hl7.fhir.dstu3.model.ValueSet.ValueSetComposeComponent;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Component;
 import uk.gov.hscic.OperationOutcomeFactory;
 import uk.gov.hscic.SystemCode;
+import uk.gov.hscic.SystemURL;
+import uk.gov.hscic.common.config.FhirContextHolder;
 
 @Component
+@ManagedResource(objectName = "uk.gov.hscic:type=ValueSetValidator")
 public class ValueSetValidator {
     private static final Logger LOG = Logger.getLogger(ValueSetValidator.class);
+
+    @Autowired
+    private FhirContextHolder fhirContextHolder;
     
     @Value("${fhirvaluesets.checkDisk}")
     private Boolean fhirValueSetsCheckDisk;
@@ -49,35 +63,96 @@ public class ValueSetValidator {
     @Value("${fhirvaluesets.url}")
     private String fhirValueSetsUrl;
         
-    private Map<String, ValueSet> valueSetCache;
-    
-    private ValueSet loadValueSet(String systemUrl){
-        ValueSet set;
-        set = getValueSetFromCache(systemUrl);
-        
-        if(set == null){
-            set = findValueSet(systemUrl);
-            
-            if(valueSetCache == null){
-                valueSetCache = new HashMap<String, ValueSet>();
+    @Value("${fhirvaluesets.cache.size:100}")
+    private int cacheSize;
+
+    @Value("${fhirvaluesets.preload:false}")
+    private boolean preload;
+
+    // a miss loads the value set once, concurrent lookups of the same url wait for it
+    private Cache<String, IndexedValueSet> valueSetCache;
+
+    @PostConstruct
+    public void init() {
+        valueSetCache = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .recordStats()
+                .build();
+
+        if (preload) {
+            Thread preloader = new Thread(this::preloadValueSets, "value-set-preload");
+            preloader.setDaemon(true);
+            preloader.start();
+        }
+    }
+
+    /**
+     * @return hit, miss and load time counts for the value set cache
+     */
+    public CacheStats getCacheStats() {
+        return valueSetCache.stats();
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return valueSetCache.stats().hitCount();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return valueSetCache.stats().missCount();
+    }
+
+    @ManagedAttribute
+    public double getHitRate() {
+        return valueSetCache.stats().hitRate();
+    }
+
+    @ManagedAttribute
+    public long getSize() {
+        return valueSetCache.size();
+    }
+
+    @ManagedAttribute
+    public long getAverageLoadPenaltyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis((long) valueSetCache.stats().averageLoadPenalty());
+    }
+
+    private void preloadValueSets() {
+        for (Field field : SystemURL.class.getFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class) {
+                try {
+                    String systemUrl = (String) field.get(null);
+
+                    if (systemUrl.contains("/ValueSet/")) {
+                        loadValueSet(systemUrl);
+                    }
+                } catch (IllegalAccessException | RuntimeException ex) {
+                    LOG.warn(String.format("Unable to preload value set %s. Message: %s", field.getName(), ex.getMessage()));
+                }
             }
-            valueSetCache.put(systemUrl, set);
         }
-        
-        return set;
+
+        LOG.info("Preloaded value sets " + valueSetCache.stats());
     }
-    
-    private ValueSet getValueSetFromCache(String systemUrl)
-    {  
-        if(valueSetCache == null){
-            return null;
+
+    private IndexedValueSet loadValueSet(String systemUrl) {
+        try {
+            return valueSetCache.get(systemUrl, () -> {
+                long start = System.currentTimeMillis();
+                IndexedValueSet indexedValueSet = new IndexedValueSet(findValueSet(systemUrl));
+                LOG.info(String.format("Loaded value set %s in %dms", systemUrl, System.currentTimeMillis() - start));
+                return indexedValueSet;
+            });
+        } catch (ExecutionException | UncheckedExecutionException ex) {
+            // rethrow the operation outcome raised when the value set can't be found
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new UncheckedExecutionException(ex.getCause());
         }
-        
-        ValueSet set = valueSetCache.get(systemUrl);
-         
-        return set;
     }
-    
+
     private ValueSet findValueSet(String systemUrl)
     {
         int valueSetNamePos = systemUrl.lastIndexOf("/") + 1;
@@ -100,9 +175,7 @@ public class ValueSetValidator {
                
         if (xmlContent != null) {
             try {
-                FhirContext fhirCtx = FhirContext.forDstu3();
-                IParser parser = fhirCtx.newXmlParser();
-                valSet =  parser.parseResource(ValueSet.class, xmlContent);
+                valSet = fhirContextHolder.getXmlParser().parseResource(ValueSet.class, xmlContent);
 
             } catch (DataFormatException ex) {
                 LOG.error(String.format("Error parsing valueSetFilename: %s", valueSetFilename));
@@ -183,46 +256,37 @@ public class ValueSetValidator {
         return httpclient.execute(httpGet);
     }
     
+    /**
+     * A code is valid when it is one of the value set's included concepts.
+     * When the coding has a display it must also equal the concept's display
+     * exactly, as in the lookup this method previously had commented out,
+     * a coding without a display is checked on its code alone.
+     *
+     * @param code
+     * @return true if the code, and display when present, are in the value set
+     */
     public Boolean validateCode(Coding code) {
+        ConceptReferenceComponent concept = loadValueSet(code.getSystem()).getConcept(code.getCode());
 
-        String systemUrl = code.getSystem();        
-        ValueSet valSet =  loadValueSet(systemUrl);
-        
-        //Check Code System
-        @SuppressWarnings("unused")
-        ValueSetComposeComponent codeSys = valSet.getCompose();
-        @SuppressWarnings("unused")
-        List<ValueSet.ConceptReferenceComponent> concepts;
-//
-//        for (ValueSet.ConceptReferenceComponent concept : concepts) {
-//            String codeEl = concept.getCode();
-//            String displayEl = concept.getDisplay();
-//            
-//            if(codeEl.equals(code.getCode()) && displayEl.equals(code.getDisplay())){
-//                return true;
-//            }
-//        }
-        
-        //Check Compose Includes
-//        ValueSetComposeComponent compose = valSet.getCompose();
-//        
-//        List<ValueSet.ValueSetComposeComponent> includeConcepts = new ArrayList<>();
-//        List<ConceptSetComponent> includes = compose.getInclude();
-//        
-//        for(ValueSet.ValueSetComposeComponent include : includes){
-//            includeConcepts.addAll(include.getConcept());
-//        }
-//        
-//        for (ValueSet.ComposeIncludeConcept includeConcept : includeConcepts) {
-//            String incCodeEl = includeConcept.getCode();
-//            String incDisplayEl = includeConcept.getDisplay();
-//            
-//            if(incCodeEl.equals(code.getCode()) && incDisplayEl.equals(code.getDisplay())){
-//                return true;
-//            }
-//        }
-        
-        return true;
+        return concept != null && (code.getDisplay() == null || code.getDisplay().equals(concept.getDisplay()));
+    }
+
+    /**
+     * The concepts of a value set indexed by code
+     */
+    private static final class IndexedValueSet {
+        private final Map<String, ConceptReferenceComponent> conceptsByCode = new HashMap<>();
+
+        private IndexedValueSet(ValueSet valueSet) {
+            for (ConceptSetComponent include : valueSet.getCompose().getInclude()) {
+                for (ConceptReferenceComponent concept : include.getConcept()) {
+                    conceptsByCode.putIfAbsent(concept.getCode(), concept);
+                }
+            }
+        }
+
+        private ConceptReferenceComponent getConcept(String code) {
+            return conceptsByCode.get(code);
+        }
     }
-        
 }
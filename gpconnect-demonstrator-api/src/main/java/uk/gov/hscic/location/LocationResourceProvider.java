@@ -13,6 +13,7 @@ import org.hl7.fhir.dstu3.model.Location.LocationStatus;
 import org.hl7.fhir.dstu3.model.OperationOutcome.IssueType;
 import org.hl7.fhir.dstu3.model.Organization;
 import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.ResourceType;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -28,6 +29,7 @@ import org.hl7.fhir.dstu3.model.StringType;
 import uk.gov.hscic.OperationOutcomeFactory;
 import uk.gov.hscic.SystemCode;
 import uk.gov.hscic.SystemURL;
+import uk.gov.hscic.common.cache.ResourceTemplateCache;
 import uk.gov.hscic.model.location.LocationDetails;
 import uk.gov.hscic.organization.OrganizationResourceProvider;
 
@@ -39,6 +41,9 @@ public class LocationResourceProvider implements IResourceProvider {
     
     @Autowired
     private OrganizationResourceProvider organizationSearch;
+
+    @Autowired
+    private ResourceTemplateCache resourceTemplateCache;
     
     @Override
     public Class<? extends IBaseResource> getResourceType() {
@@ -76,7 +81,12 @@ public class LocationResourceProvider implements IResourceProvider {
      * @param locationDetails
      * @return Location resource
      */
-    private Location locationDetailsToLocation(LocationDetails locationDetails) {
+    public Location locationDetailsToLocation(LocationDetails locationDetails) {
+        return resourceTemplateCache.get(ResourceType.Location, locationDetails.getId(), locationDetails.getLastUpdated(),
+                () -> buildLocation(locationDetails));
+    }
+
+    private Location buildLocation(LocationDetails locationDetails) {
         Location location = new Location();
         
         String resourceId = String.valueOf(locationDetails.getId());
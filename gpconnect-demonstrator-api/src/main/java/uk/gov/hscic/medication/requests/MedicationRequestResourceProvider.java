@@ -15,9 +15,12 @@ import uk.gov.hscic.medication.request.MedicationRequestEntityToDetailTransforme
 import uk.gov.hscic.medication.request.MedicationRequestRepository;
 import uk.gov.hscic.model.medication.MedicationRequestDetail;
 
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import static uk.gov.hscic.SystemConstants.NO_INFORMATION_AVAILABLE;
 
@@ -30,21 +33,37 @@ public class MedicationRequestResourceProvider {
     @Autowired
     private MedicationRequestEntityToDetailTransformer medicationRequestEntityToDetailTransformer;
 
-    public MedicationRequest getMedicationRequestPlanResource(String medicationRequestId) {
-        MedicationRequestDetail requestDetail = medicationRequestEntityToDetailTransformer
-                .transform(medicationRequestRepository.findOne(Long.parseLong(medicationRequestId)));
+    /**
+     * Looks up a number of plan requests with a single query.
+     *
+     * @return the MedicationRequests found, by id
+     */
+    public Map<String, MedicationRequest> getMedicationRequestPlanResources(Collection<String> medicationRequestIds) {
+        Map<String, MedicationRequest> medicationRequests = new HashMap<>();
 
-        MedicationRequest medicationRequest = getMedicationRequestFromDetail(requestDetail);
+        medicationRequestRepository.findAll(medicationRequestIds.stream().map(Long::valueOf).collect(Collectors.toSet()))
+                .stream().map(requestEntity -> medicationRequestEntityToDetailTransformer.transform(requestEntity))
+                .forEach(requestDetail -> medicationRequests.put(requestDetail.getId().toString(), getMedicationRequestFromDetail(requestDetail)));
 
-        return medicationRequest;
+        return medicationRequests;
     }
 
-    public List<MedicationRequest> getMedicationRequestOrderResources(String groupIdentifier) {
-        return medicationRequestRepository.findByIntentCodeAndGroupIdentifier("order", groupIdentifier)
+    /**
+     * Looks up the order requests of a number of groups with a single query.
+     *
+     * @return the MedicationRequests by group identifier, each group ordered
+     * by dispense request start date, groups without orders are left out
+     */
+    public Map<String, List<MedicationRequest>> getMedicationRequestOrderResources(Collection<String> groupIdentifiers) {
+        if (groupIdentifiers.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        return medicationRequestRepository.findByIntentCodeAndGroupIdentifierIn("order", groupIdentifiers)
                 .stream().map(requestEntity -> medicationRequestEntityToDetailTransformer.transform(requestEntity))
                 .sorted(Comparator.comparing(requestDetail -> ((MedicationRequestDetail) requestDetail).getDispenseRequestStartDate()))
-                .map(requestDetail -> getMedicationRequestFromDetail(requestDetail))
-                .collect(Collectors.toList());
+                .collect(Collectors.groupingBy(MedicationRequestDetail::getGroupIdentifier,
+                        Collectors.mapping(requestDetail -> getMedicationRequestFromDetail(requestDetail), Collectors.toList())));
     }
 
     private MedicationRequest getMedicationRequestFromDetail(MedicationRequestDetail requestDetail) {
@@ -7,6 +7,7 @@ import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 
 import org.hl7.fhir.dstu3.model.*;
 import org.hl7.fhir.dstu3.model.OperationOutcome.IssueSeverity;
+import org.springframework.beans.factory.ObjectFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -29,7 +30,7 @@ public class MedicationResourceProvider implements IResourceProvider {
     private MedicationRepository medicationRepository;
     
     @Autowired
-    private MedicationEntityToDetailTransformer medicationEntityToDetailTransformer;
+    private MedicationSearch medicationSearch;
 
 	@Autowired
 	private PatientRepository patientRepository;
@@ -38,7 +39,7 @@ public class MedicationResourceProvider implements IResourceProvider {
 	private MedicationStatementRepository medicationStatementRepository;
 	
     @Autowired
-    private CodeableConceptBuilder codeableConceptBuilder;
+    private ObjectFactory<CodeableConceptBuilder> codeableConceptBuilderFactory;
 
     @Override
     public Class<Medication> getResourceType() {
@@ -68,21 +69,31 @@ public class MedicationResourceProvider implements IResourceProvider {
         return medication;
     }
     
-    public Medication getMedicationResourceForBundle(Long medicationId) {
-		MedicationDetail medicationDetail = medicationEntityToDetailTransformer
-				.transform(medicationRepository.findOne(medicationId));
-		
+    /**
+     * @return the Medications found, by id
+     */
+    public Map<Long, Medication> getMedicationResourcesForBundle(Collection<Long> medicationIds) {
+		Map<Long, Medication> medications = new HashMap<>();
+
+		for (MedicationDetail medicationDetail : medicationSearch.findMedicationDetails(medicationIds)) {
+			medications.put(medicationDetail.getId(), getMedicationFromDetail(medicationDetail));
+		}
+
+		return medications;
+	}
+
+	private Medication getMedicationFromDetail(MedicationDetail medicationDetail) {
 		Medication medication = new Medication();
 		
 		medication.setId(new IdType(medicationDetail.getId()));
 		
 		medication.setMeta(new Meta().addProfile(SystemURL.SD_GPC_MEDICATION));
 		
+		CodeableConceptBuilder codeableConceptBuilder = codeableConceptBuilderFactory.getObject();
 		codeableConceptBuilder.addConceptCode(SystemConstants.SNOMED_URL, medicationDetail.getConceptCode(), medicationDetail.getConceptDisplay())
         	   .addDescription(medicationDetail.getDescCode(), medicationDetail.getDescDisplay())
         	   .addTranslation(medicationDetail.getCodeTranslationRef());
         CodeableConcept code = codeableConceptBuilder.build();
-        codeableConceptBuilder.clear();
 		code.setText(medicationDetail.getText());
 		medication.setCode(code);
 		
@@ -91,7 +102,7 @@ public class MedicationResourceProvider implements IResourceProvider {
 
 	public Map<String,List<String>> getAllMedicationAndAllergiesForPatient(String nhsNumber) {
 		Map<String,List<String>> allergiesAssociatedWithMedicationMap = new HashMap<>();
-		for (MedicationEntity medicationEntity:medicationRepository.findAll()) {
+		for (MedicationEntity medicationEntity:medicationRepository.findAllWithAllergies()) {
 			List<StructuredAllergyIntoleranceEntity> allergyEntities = medicationEntity.getMedicationAllergies();
 			if(allergyEntities.size() > 0) {
 				for (StructuredAllergyIntoleranceEntity allergy :allergyEntities) {
@@ -14,26 +14,17 @@ import uk.gov.hscic.SystemConstants;
 import uk.gov.hscic.SystemURL;
 import uk.gov.hscic.common.helpers.WarningCodeExtHelper;
 import uk.gov.hscic.medication.requests.MedicationRequestResourceProvider;
-import uk.gov.hscic.medication.statement.MedicationStatementEntity;
-import uk.gov.hscic.medication.statement.MedicationStatementEntityToDetailTransformer;
-import uk.gov.hscic.medication.statement.MedicationStatementRepository;
 import uk.gov.hscic.medication.statement.MedicationStatementResourceProvider;
 import uk.gov.hscic.model.medication.MedicationStatementDetail;
 import uk.gov.hscic.model.patient.PatientDetails;
 import java.util.*;
+import java.util.stream.Collectors;
 import static uk.gov.hscic.SystemConstants.*;
-import uk.gov.hscic.patient.details.PatientRepository;
-import uk.gov.hscic.patient.structuredAllergyIntolerance.StructuredAllergySearch;
+import uk.gov.hscic.patient.ClinicalDataContext;
 
 @Component
 public class PopulateMedicationBundle {
 
-	@Autowired
-	private MedicationStatementRepository medicationStatementRepository;
-
-	@Autowired
-	private MedicationStatementEntityToDetailTransformer medicationStatementEntityToDetailTransformer;
-
 	@Autowired
 	private MedicationResourceProvider medicationResourceProvider;
 
@@ -43,25 +34,37 @@ public class PopulateMedicationBundle {
 	@Autowired
 	private MedicationRequestResourceProvider medicationRequestResourceProvider;
 
-    @Autowired
-    private StructuredAllergySearch structuredAllergySearch;
-
-    @Autowired
-    private PatientRepository patientRepository;
-
     public Bundle addMedicationBundleEntries(Bundle structuredBundle, PatientDetails patientDetails, Boolean includePrescriptionIssues,
-			Period medicationPeriod, Set<String> practitionerIds, Set<String> orgIds) {
+			Set<String> practitionerIds, Set<String> orgIds, ClinicalDataContext clinicalData) {
 		BundleEntryComponent listEntry = new BundleEntryComponent();
-        List<MedicationStatementDetail> medicationStatements = findMedicationStatements(Long.valueOf(patientDetails.getId()), medicationPeriod);
-		structuredBundle.addEntry(listEntry.setResource(createListEntry(medicationStatements, patientDetails.getNhsNumber())));
+        List<MedicationStatementDetail> medicationStatements = clinicalData.getMedicationStatements();
+		structuredBundle.addEntry(listEntry.setResource(createListEntry(medicationStatements, patientDetails.getNhsNumber(), clinicalData)));
+
+		// one query per resource type for all the statements, rather than several per statement
+		Map<Long, Medication> medications = medicationResourceProvider.getMedicationResourcesForBundle(medicationStatements.stream()
+				.map(MedicationStatementDetail::getMedicationId)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toSet()));
+		Map<String, MedicationRequest> medicationRequestPlans = medicationRequestResourceProvider.getMedicationRequestPlanResources(medicationStatements.stream()
+				.map(MedicationStatementDetail::getMedicationRequestPlanId)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toSet()));
+		Map<String, List<MedicationRequest>> prescriptionIssues = includePrescriptionIssues
+				? medicationRequestResourceProvider.getMedicationRequestOrderResources(medicationRequestPlans.values().stream()
+						.map(medicationRequest -> medicationRequest.getGroupIdentifier().getValue())
+						.filter(Objects::nonNull)
+						.collect(Collectors.toSet()))
+				: Collections.emptyMap();
+
 		medicationStatements.forEach(medicationStatement -> {
-			createBundleEntries(medicationStatement, includePrescriptionIssues, patientDetails, practitionerIds, orgIds)
+			createBundleEntries(medicationStatement, includePrescriptionIssues, medications, medicationRequestPlans, prescriptionIssues,
+					practitionerIds, orgIds)
 				.forEach(bundleEntry -> structuredBundle.addEntry(bundleEntry));
 		});
 		return structuredBundle;
 	}
 
-    private ListResource createListEntry(List<MedicationStatementDetail> medicationStatements, String nhsNumber) {
+    private ListResource createListEntry(List<MedicationStatementDetail> medicationStatements, String nhsNumber, ClinicalDataContext clinicalData) {
 		ListResource medicationStatementsList = new ListResource();
 
         // #179 dont populate List.id
@@ -97,7 +100,7 @@ public class PopulateMedicationBundle {
 			}
 		});
 		
-		WarningCodeExtHelper.addWarningCodeExtensions(warningCodes, medicationStatementsList, patientRepository, medicationStatementRepository, structuredAllergySearch);
+		WarningCodeExtHelper.addWarningCodeExtensions(warningCodes, medicationStatementsList, clinicalData);
 
         return medicationStatementsList;
 	}
@@ -111,7 +114,8 @@ public class PopulateMedicationBundle {
 	}
 
 	private List<BundleEntryComponent> createBundleEntries(MedicationStatementDetail statementDetail, Boolean includePrescriptionIssues,
-			PatientDetails patientDetails, Set<String> practitionerIds, Set<String> orgIds) {
+			Map<Long, Medication> medications, Map<String, MedicationRequest> medicationRequestPlans,
+			Map<String, List<MedicationRequest>> prescriptionIssues, Set<String> practitionerIds, Set<String> orgIds) {
 
 		List<BundleEntryComponent> bundleEntryComponents = new ArrayList<>();
 
@@ -119,19 +123,26 @@ public class PopulateMedicationBundle {
         bundleEntryComponents.add(new BundleEntryComponent()
 				.setResource(medStatement));
         
-        bundleEntryComponents.add(new BundleEntryComponent()
-				.setResource(medicationResourceProvider.getMedicationResourceForBundle(statementDetail.getMedicationId())));
+        // a medication missing from the batch has no entry rather than an empty one
+        Medication medication = medications.get(statementDetail.getMedicationId());
+        if (medication != null) {
+            bundleEntryComponents.add(new BundleEntryComponent()
+                    .setResource(medication));
+        }
+
+        // likewise a missing plan, which leaves out its issues too
+        MedicationRequest medicationRequest = medicationRequestPlans.get(statementDetail.getMedicationRequestPlanId());
+        List<MedicationRequest> allMedReqs = new ArrayList<>();
+        if (medicationRequest != null) {
+            bundleEntryComponents.add(new BundleEntryComponent().setResource(medicationRequest));
 
-        MedicationRequest medicationRequest = medicationRequestResourceProvider.getMedicationRequestPlanResource(statementDetail.getMedicationRequestPlanId());
-		bundleEntryComponents.add(new BundleEntryComponent().setResource(medicationRequest));
+            if (includePrescriptionIssues) {
+                prescriptionIssues.getOrDefault(medicationRequest.getGroupIdentifier().getValue(), Collections.emptyList())
+                        .forEach(requestOrder -> bundleEntryComponents.add(new BundleEntryComponent().setResource(requestOrder)));
+            }
 
-        if(includePrescriptionIssues) {
-			List<MedicationRequest> prescriptionIssues = medicationRequestResourceProvider.getMedicationRequestOrderResources(medicationRequest.getGroupIdentifier().getValue());
-			prescriptionIssues.forEach(requestOrder -> bundleEntryComponents.add(new BundleEntryComponent().setResource(requestOrder)));
-		}
-        
-        List<MedicationRequest> allMedReqs = new ArrayList<>();
-        allMedReqs.add(medicationRequest);
+            allMedReqs.add(medicationRequest);
+        }
         allMedReqs.addAll(allMedReqs);
 		practitionerIds.addAll(getPractitionerIds(medStatement, allMedReqs));
 		orgIds.addAll(getOrganisationIds(allMedReqs));
@@ -191,54 +202,4 @@ public class PopulateMedicationBundle {
         return practitionerIds;
 	}
 
-	private List<MedicationStatementDetail> findMedicationStatements(Long patientId, Period medicationPeriod) {
-		List<MedicationStatementEntity> medicationStatementEntities = medicationStatementRepository.findByPatientId(patientId);
-		List<MedicationStatementDetail> medicationStatements = new ArrayList<>();
-
-        List<MedicationStatementEntity> statementsfilteredByDate = new ArrayList<>();
-		if(medicationPeriod != null) {
-			medicationStatementEntities.forEach(statement -> {
-				if(statement.getLastIssueDate() != null) {
-					if(dateIsWithinPeriod(statement.getLastIssueDate(), medicationPeriod)){
-						statementsfilteredByDate.add(statement);
-					}
-				} else if(statement.getStartDate() != null) {
-					if(dateIsWithinPeriod(statement.getStartDate(), medicationPeriod)) {
-						statementsfilteredByDate.add(statement);
-					}
-				} else if(statement.getDateAsserted() != null) {
-					if(dateIsWithinPeriod(statement.getDateAsserted(), medicationPeriod)) {
-						statementsfilteredByDate.add(statement);
-					}
-				}
-            });
-			statementsfilteredByDate.forEach(entity ->{
-				medicationStatements.add(medicationStatementEntityToDetailTransformer.transform(entity));
-			});
-		} else {
-			medicationStatementEntities.forEach(entity ->{
-				medicationStatements.add(medicationStatementEntityToDetailTransformer.transform(entity));
-			});
-		}
-
-		medicationStatements.sort(Comparator.comparing(medicationStatement -> medicationStatement.getDateAsserted()));
-
-        return medicationStatements;
-	}
-
-	private boolean dateIsWithinPeriod(Date date, Period period) {
-		Date startDate = period.getStart();
-		Date endDate = period.getEnd();
-
-        if(startDate != null && endDate != null) {
-			return !date.before(startDate) && !date.after(endDate);
-		} else if (startDate != null) {
-			return !date.before(startDate);
-		} else if (endDate != null) {
-			return !date.after(endDate);
-		} else {
-			return true;
-		}
-	}
-
 }
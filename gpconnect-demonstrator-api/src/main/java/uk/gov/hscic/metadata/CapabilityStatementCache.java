@@ -0,0 +1,172 @@
+package uk.gov.hscic.metadata;
+
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.PostConstruct;
+import org.apache.log4j.Logger;
+import org.hl7.fhir.dstu3.model.CapabilityStatement;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import static uk.gov.hscic.InteractionId.REST_READ_STRUCTURED_METADATA;
+import uk.gov.hscic.common.config.ConfigFileWatcher;
+import uk.gov.hscic.common.config.FhirContextHolder;
+
+/**
+ * Holds the capability statements read from config.path, parsed once and
+ * serialised up front in every format they are served in. The files are
+ * watched and reloaded when they change.
+ */
+@Component
+public class CapabilityStatementCache {
+    private static final Logger LOG = Logger.getLogger(CapabilityStatementCache.class);
+
+    static final String CAPABILITY_FILE = "capability.json";
+    static final String STRUCTURED_CAPABILITY_FILE = "structured_capability.json";
+
+    @Value("${config.path}")
+    private String configPath;
+
+    @Autowired
+    private FhirContextHolder fhirContextHolder;
+
+    @Autowired
+    private ConfigFileWatcher configFileWatcher;
+
+    private volatile Map<String, CachedCapabilityStatement> capabilityStatements = Collections.emptyMap();
+
+    @PostConstruct
+    public void init() {
+        reload();
+
+        configFileWatcher.watch(CAPABILITY_FILE, this::reload);
+        configFileWatcher.watch(STRUCTURED_CAPABILITY_FILE, this::reload);
+    }
+
+    /**
+     * @return the capability statement for the interaction, or null if it
+     * could not be read. The instance is shared between requests and must not
+     * be modified.
+     */
+    public CapabilityStatement getCapabilityStatement(String interactionId) {
+        CachedCapabilityStatement cached = capabilityStatements.get(capabilityFile(interactionId));
+
+        return cached == null ? null : cached.capabilityStatement;
+    }
+
+    /**
+     * @return the serialised capability statement for the interaction, or
+     * null if it could not be read
+     */
+    public SerialisedCapabilityStatement getSerialised(String interactionId, EncodingEnum encoding, boolean prettyPrint) {
+        CachedCapabilityStatement cached = capabilityStatements.get(capabilityFile(interactionId));
+
+        return cached == null ? null : cached.serialised.get(serialisedKey(encoding, prettyPrint));
+    }
+
+    void reload() {
+        Map<String, CachedCapabilityStatement> loaded = new HashMap<>();
+
+        for (String capabilityFile : new String[]{CAPABILITY_FILE, STRUCTURED_CAPABILITY_FILE}) {
+            Path path = Paths.get(configPath, capabilityFile);
+
+            try {
+                String capabilityJson = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+                CapabilityStatement capabilityStatement = fhirContextHolder.getJsonParser().parseResource(CapabilityStatement.class, capabilityJson);
+                GpConnectServerCapabilityStatementProvider.addServerDetails(capabilityStatement);
+
+                loaded.put(capabilityFile, new CachedCapabilityStatement(capabilityStatement, serialise(capabilityStatement)));
+            } catch (IOException | RuntimeException ex) {
+                LOG.error("Error reading capability statement " + path, ex);
+
+                // keep serving the last good copy, the file may be part way through being written
+                if (capabilityStatements.containsKey(capabilityFile)) {
+                    loaded.put(capabilityFile, capabilityStatements.get(capabilityFile));
+                }
+            }
+        }
+
+        capabilityStatements = Collections.unmodifiableMap(loaded);
+        LOG.info("Loaded capability statements " + loaded.keySet());
+    }
+
+    private Map<String, SerialisedCapabilityStatement> serialise(CapabilityStatement capabilityStatement) {
+        Map<String, SerialisedCapabilityStatement> serialised = new HashMap<>();
+
+        for (EncodingEnum encoding : new EncodingEnum[]{EncodingEnum.JSON, EncodingEnum.XML}) {
+            for (boolean prettyPrint : new boolean[]{false, true}) {
+                IParser parser = encoding.newParser(fhirContextHolder.getContext()).setPrettyPrint(prettyPrint);
+                byte[] body = parser.encodeResourceToString(capabilityStatement).getBytes(StandardCharsets.UTF_8);
+
+                serialised.put(serialisedKey(encoding, prettyPrint), new SerialisedCapabilityStatement(body, etag(body)));
+            }
+        }
+
+        return serialised;
+    }
+
+    static String capabilityFile(String interactionId) {
+        // 1.2.6 #316
+        return REST_READ_STRUCTURED_METADATA.equals(interactionId) ? STRUCTURED_CAPABILITY_FILE : CAPABILITY_FILE;
+    }
+
+    private static String serialisedKey(EncodingEnum encoding, boolean prettyPrint) {
+        return encoding.name() + (prettyPrint ? "/pretty" : "");
+    }
+
+    private static String etag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + "\"";
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static final class CachedCapabilityStatement {
+        private final CapabilityStatement capabilityStatement;
+        private final Map<String, SerialisedCapabilityStatement> serialised;
+
+        private CachedCapabilityStatement(CapabilityStatement capabilityStatement, Map<String, SerialisedCapabilityStatement> serialised) {
+            this.capabilityStatement = capabilityStatement;
+            this.serialised = serialised;
+        }
+    }
+
+    public static final class SerialisedCapabilityStatement {
+        private final byte[] body;
+        private final String etag;
+
+        private SerialisedCapabilityStatement(byte[] body, String etag) {
+            this.body = body;
+            this.etag = etag;
+        }
+
+        public void writeTo(OutputStream outputStream) throws IOException {
+            outputStream.write(body);
+        }
+
+        public int getLength() {
+            return body.length;
+        }
+
+        /**
+         * @return a strong entity tag, quoted
+         */
+        public String getEtag() {
+            return etag;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package uk.gov.hscic.metadata;
+
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
+import ca.uhn.fhir.rest.server.RestfulServerUtils.ResponseEncoding;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import uk.gov.hscic.SystemHeader;
+import uk.gov.hscic.metadata.CapabilityStatementCache.SerialisedCapabilityStatement;
+
+/**
+ * Answers metadata requests with the pre-serialised capability statement,
+ * or a 304 when the client already holds the current version. Requests with
+ * anything more than a format or pretty parameter are left to HAPI.
+ *
+ * This is done on the way out so that FhirRequestAuthInterceptor has already
+ * checked the JWT, metadata requests are authorised like any other.
+ */
+@Component
+public class CapabilityStatementInterceptor extends InterceptorAdapter {
+    private static final Set<String> HANDLED_PARAMETERS = new HashSet<>(Arrays.asList(
+            Constants.PARAM_FORMAT,
+            Constants.PARAM_PRETTY));
+
+    @Autowired
+    private CapabilityStatementCache capabilityStatementCache;
+
+    @Override
+    public boolean outgoingResponse(RequestDetails requestDetails, IBaseResource resource,
+            HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
+        if (requestDetails.getRestOperationType() != RestOperationTypeEnum.METADATA
+                || !HANDLED_PARAMETERS.containsAll(requestDetails.getParameters().keySet())) {
+            return true;
+        }
+
+        ResponseEncoding responseEncoding = RestfulServerUtils.determineResponseEncodingWithDefault(requestDetails);
+        boolean prettyPrint = RestfulServerUtils.prettyPrintResponse(requestDetails.getServer(), requestDetails);
+
+        SerialisedCapabilityStatement serialised = capabilityStatementCache.getSerialised(
+                httpRequest.getHeader(SystemHeader.SSP_INTERACTIONID), responseEncoding.getEncoding(), prettyPrint);
+
+        if (serialised == null) {
+            return true;
+        }
+
+        httpResponse.setHeader(HttpHeaders.ETAG, serialised.getEtag());
+
+        if (matches(httpRequest.getHeader(HttpHeaders.IF_NONE_MATCH), serialised.getEtag())) {
+            httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return false;
+        }
+
+        httpResponse.setStatus(HttpServletResponse.SC_OK);
+        httpResponse.setContentType(responseEncoding.getResourceContentType() + Constants.CHARSET_UTF8_CTSUFFIX);
+        httpResponse.setContentLength(serialised.getLength());
+
+        try {
+            serialised.writeTo(httpResponse.getOutputStream());
+        } catch (IOException ex) {
+            throw new InternalErrorException(ex);
+        }
+
+        return false;
+    }
+
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+
+            // If-None-Match uses weak comparison
+            if (trimmed.startsWith("W/")) {
+                trimmed = trimmed.substring(2);
+            }
+
+            if (trimmed.equals("*") || trimmed.equals(etag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -24,6 +24,7 @@ import org.hl7.fhir.dstu3.model.Identifier;
 import org.hl7.fhir.dstu3.model.Location;
 import org.hl7.fhir.dstu3.model.OperationOutcome.IssueType;
 import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.ResourceType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -40,6 +41,7 @@ import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import uk.gov.hscic.OperationOutcomeFactory;
 import uk.gov.hscic.SystemCode;
 import uk.gov.hscic.SystemURL;
+import uk.gov.hscic.common.cache.ResourceTemplateCache;
 import static uk.gov.hscic.common.filters.FhirRequestGenericIntercepter.throwInvalidRequest400_InvalidParameterException;
 import uk.gov.hscic.common.validators.IdentifierValidator;
 import uk.gov.hscic.location.LocationSearch;
@@ -59,6 +61,9 @@ public class OrganizationResourceProvider implements IResourceProvider {
     @Autowired
     private LocationSearch locationSearch;
 
+    @Autowired
+    private ResourceTemplateCache resourceTemplateCache;
+
     public static Set<String> getCustomReadOperations() {
         Set<String> customReadOperations = new HashSet<>();
         return customReadOperations;
@@ -147,6 +152,7 @@ public class OrganizationResourceProvider implements IResourceProvider {
     private List<Organization> convertOrganizatonDetailsListToOrganizationList(
             List<OrganizationDetails> organizationDetails) {
         Map<Long, Organization> map = new HashMap<>();
+        List<LocationDetails> locationsDetails = locationSearch.findAllLocations();
 
         for (OrganizationDetails organizationDetail : organizationDetails) {
 
@@ -157,35 +163,43 @@ public class OrganizationResourceProvider implements IResourceProvider {
                 continue;
             }
 
-            Identifier identifier = new Identifier().setSystem(SystemURL.ID_ODS_ORGANIZATION_CODE)
-                    .setValue(organizationDetail.getOrgCode());
+            Organization organization = convertOrganizationDetailsToOrganization(organizationDetail, locationsDetails);
 
-            Organization organization = new Organization().setName(organizationDetail.getOrgName())
-                    .addIdentifier(identifier);
-
-            String resourceId = String.valueOf(organizationDetail.getId());
-            String versionId = String.valueOf(organizationDetail.getLastUpdated().getTime());
-            String resourceType = organization.getResourceType().toString();
+            map.put(mapKey, organization);
 
-            IdType id = new IdType(resourceType, resourceId, versionId);
+        }
 
-            organization.setId(id);
-            organization.getMeta().setVersionId(versionId);
-            organization.getMeta().setLastUpdated(organizationDetail.getLastUpdated());
-            organization.getMeta().addProfile(SystemURL.SD_GPC_ORGANIZATION);
+        return new ArrayList<>(map.values());
+    }
 
-            organization = addAdditionalProperties(organization);
+    public Organization convertOrganizationDetailsToOrganization(OrganizationDetails organizationDetails) {
+        return convertOrganizationDetailsToOrganization(organizationDetails, locationSearch.findAllLocations());
+    }
 
-            map.put(mapKey, organization);
+    /**
+     * Converts a number of organizations reading the locations used for their
+     * addresses once rather than once per organization
+     *
+     * @param organizationDetails
+     * @return Organizations in the same order as organizationDetails
+     */
+    public List<Organization> convertOrganizationDetailsToOrganizations(List<OrganizationDetails> organizationDetails) {
+        List<LocationDetails> locationsDetails = locationSearch.findAllLocations();
+        List<Organization> organizations = new ArrayList<>();
 
+        for (OrganizationDetails organizationDetail : organizationDetails) {
+            organizations.add(convertOrganizationDetailsToOrganization(organizationDetail, locationsDetails));
         }
 
-        return new ArrayList<>(map.values());
+        return organizations;
     }
 
-    public Organization convertOrganizationDetailsToOrganization(OrganizationDetails organizationDetails) {
+    private Organization convertOrganizationDetailsToOrganization(OrganizationDetails organizationDetails, List<LocationDetails> locationsDetails) {
+        return resourceTemplateCache.get(ResourceType.Organization, organizationDetails.getId(), organizationDetails.getLastUpdated(),
+                () -> buildOrganization(organizationDetails, locationsDetails));
+    }
 
-        String mapKey = String.format("%s", organizationDetails.getOrgCode());
+    private Organization buildOrganization(OrganizationDetails organizationDetails, List<LocationDetails> locationsDetails) {
 
         Identifier identifier = new Identifier().setSystem(SystemURL.ID_ODS_ORGANIZATION_CODE)
                 .setValue(organizationDetails.getOrgCode());
@@ -204,17 +218,17 @@ public class OrganizationResourceProvider implements IResourceProvider {
         organization.getMeta().setLastUpdated(organizationDetails.getLastUpdated());
         organization.getMeta().addProfile(SystemURL.SD_GPC_ORGANIZATION);
 
-        organization = addAdditionalProperties(organization);
+        organization = addAdditionalProperties(organization, locationsDetails);
 
         return organization;
     }
 
     // Adding in additional properties manually for now so we can test in the
     // Test Suite
-    private Organization addAdditionalProperties(Organization organization) {
+    private Organization addAdditionalProperties(Organization organization, List<LocationDetails> locationsDetails) {
 
         organization.addTelecom(getValidTelecom());
-        organization.addAddress(getValidAddress(organization));
+        organization.addAddress(getValidAddress(organization, locationsDetails));
         // organization.addContact(getValidContact());
 
         // # 152
@@ -243,8 +257,7 @@ public class OrganizationResourceProvider implements IResourceProvider {
         return orgTelCom;
     }
 
-    private Address getValidAddress(Organization organization) {
-        List<LocationDetails> locationsDetails = locationSearch.findAllLocations();
+    private Address getValidAddress(Organization organization, List<LocationDetails> locationsDetails) {
         LocationDetails location = null;
         for (LocationDetails locationDetails : locationsDetails) {
             if (locationDetails.getOrgOdsCode().equals(organization.getIdentifierFirstRep().getValue())) {
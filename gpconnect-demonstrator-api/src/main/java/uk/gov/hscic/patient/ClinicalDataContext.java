@@ -0,0 +1,90 @@
+package uk.gov.hscic.patient;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import uk.gov.hscic.model.medication.MedicationStatementDetail;
+import uk.gov.hscic.patient.structuredAllergyIntolerance.StructuredAllergyIntoleranceEntity;
+
+/**
+ * The clinical data of one patient, read once per structured record request
+ * and shared by the sections built from it. Immutable so that sections built
+ * concurrently can share it.
+ */
+public final class ClinicalDataContext {
+    public static final String DATA_IN_TRANSIT = "data-in-transit";
+    public static final String DATA_AWAITING_FILING = "data-awaiting-filing";
+
+    private final String nhsNumber;
+    private final List<MedicationStatementDetail> medicationStatements;
+    private final List<StructuredAllergyIntoleranceEntity> allergies;
+    private final boolean dataInTransit;
+    private final boolean dataAwaitingFiling;
+
+    /**
+     * For when the medication statements are all of the patient's statements.
+     */
+    public ClinicalDataContext(String nhsNumber, List<MedicationStatementDetail> medicationStatements,
+            List<StructuredAllergyIntoleranceEntity> allergies) {
+        this(nhsNumber, medicationStatements, medicationStatements.stream()
+                .map(MedicationStatementDetail::getWarningCode)
+                .collect(Collectors.toList()), allergies);
+    }
+
+    /**
+     * @param medicationStatements the statements to include in the record,
+     * which may be only those in the requested period
+     * @param medicationWarningCodes the warning codes of all the patient's
+     * statements
+     */
+    public ClinicalDataContext(String nhsNumber, List<MedicationStatementDetail> medicationStatements,
+            Collection<String> medicationWarningCodes, List<StructuredAllergyIntoleranceEntity> allergies) {
+        this.nhsNumber = nhsNumber;
+        this.medicationStatements = Collections.unmodifiableList(medicationStatements);
+        this.allergies = Collections.unmodifiableList(allergies);
+
+        boolean inTransit = medicationWarningCodes.contains(DATA_IN_TRANSIT);
+        boolean awaitingFiling = medicationWarningCodes.contains(DATA_AWAITING_FILING);
+
+        for (StructuredAllergyIntoleranceEntity allergy : allergies) {
+            inTransit |= DATA_IN_TRANSIT.equals(allergy.getWarningCode());
+            awaitingFiling |= DATA_AWAITING_FILING.equals(allergy.getWarningCode());
+        }
+
+        this.dataInTransit = inTransit;
+        this.dataAwaitingFiling = awaitingFiling;
+    }
+
+    public String getNhsNumber() {
+        return nhsNumber;
+    }
+
+    /**
+     * @return the patient's medication statements in the requested period,
+     * ordered by date asserted
+     */
+    public List<MedicationStatementDetail> getMedicationStatements() {
+        return medicationStatements;
+    }
+
+    public List<StructuredAllergyIntoleranceEntity> getAllergies() {
+        return allergies;
+    }
+
+    /**
+     * @return true if any of the patient's medication statements or allergies
+     * has data in transit, which then applies to the whole record
+     */
+    public boolean isDataInTransit() {
+        return dataInTransit;
+    }
+
+    /**
+     * @return true if any of the patient's medication statements or allergies
+     * has data awaiting filing, which then applies to the whole record
+     */
+    public boolean isDataAwaitingFiling() {
+        return dataAwaitingFiling;
+    }
+}
@@ -0,0 +1,64 @@
+package uk.gov.hscic.patient;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.hl7.fhir.dstu3.model.Period;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import uk.gov.hscic.medication.statement.MedicationStatementEntity;
+import uk.gov.hscic.medication.statement.MedicationStatementEntityToDetailTransformer;
+import uk.gov.hscic.medication.statement.MedicationStatementRepository;
+import uk.gov.hscic.model.medication.MedicationStatementDetail;
+import uk.gov.hscic.model.patient.PatientDetails;
+import uk.gov.hscic.patient.structuredAllergyIntolerance.StructuredAllergySearch;
+
+@Component
+public class ClinicalDataContextLoader {
+    // the DATETIME range, for a period open at either end
+    private static final Date EARLIEST = new GregorianCalendar(1000, 0, 1).getTime();
+    private static final Date LATEST = new GregorianCalendar(9999, 11, 31).getTime();
+
+    @Autowired
+    private MedicationStatementRepository medicationStatementRepository;
+
+    @Autowired
+    private MedicationStatementEntityToDetailTransformer medicationStatementEntityToDetailTransformer;
+
+    @Autowired
+    private StructuredAllergySearch structuredAllergySearch;
+
+    /**
+     * @param getMedications whether the medication statements themselves are
+     * needed, their warning codes are always read
+     * @param medicationPeriod the period the statements must fall in, null for
+     * all of them
+     */
+    @Transactional(readOnly = true)
+    public ClinicalDataContext load(PatientDetails patientDetails, boolean getMedications, Period medicationPeriod) {
+        Long patientId = Long.valueOf(patientDetails.getId());
+
+        List<MedicationStatementDetail> medicationStatements = getMedications
+                ? findMedicationStatements(patientId, medicationPeriod).stream()
+                        .map(medicationStatementEntityToDetailTransformer::transform)
+                        .collect(Collectors.toList())
+                : Collections.emptyList();
+
+        return new ClinicalDataContext(patientDetails.getNhsNumber(), medicationStatements,
+                medicationStatementRepository.findWarningCodesByPatientId(patientId),
+                structuredAllergySearch.getAllergyIntollerence(patientDetails.getNhsNumber()));
+    }
+
+    private List<MedicationStatementEntity> findMedicationStatements(Long patientId, Period medicationPeriod) {
+        if (medicationPeriod == null) {
+            return medicationStatementRepository.findByPatientIdOrderByDateAssertedAscIdAsc(patientId);
+        }
+
+        return medicationStatementRepository.findByPatientIdAndEffectiveDateBetween(patientId,
+                medicationPeriod.getStart() == null ? EARLIEST : medicationPeriod.getStart(),
+                medicationPeriod.getEnd() == null ? LATEST : medicationPeriod.getEnd());
+    }
+}
@@ -36,15 +36,10 @@ import uk.gov.hscic.SystemURL;
 import uk.gov.hscic.appointments.AppointmentResourceProvider;
 import uk.gov.hscic.common.helpers.StaticElementsHelper;
 import uk.gov.hscic.common.validators.IdentifierValidator;
-import uk.gov.hscic.medications.PopulateMedicationBundle;
-import uk.gov.hscic.model.organization.OrganizationDetails;
 import uk.gov.hscic.model.patient.PatientDetails;
-import uk.gov.hscic.organization.OrganizationResourceProvider;
-import uk.gov.hscic.organization.OrganizationSearch;
 import uk.gov.hscic.patient.details.PatientSearch;
 import uk.gov.hscic.patient.details.PatientStore;
 import uk.gov.hscic.practitioner.PractitionerResourceProvider;
-import uk.gov.hscic.practitioner.PractitionerRoleResourceProvider;
 import uk.gov.hscic.util.NhsCodeValidator;
 
 import javax.annotation.PostConstruct;
@@ -78,32 +73,20 @@ public class PatientResourceProvider implements IResourceProvider {
     @Autowired
     private PractitionerResourceProvider practitionerResourceProvider;
 
-    @Autowired
-    private PractitionerRoleResourceProvider practitionerRoleResourceProvider;
-
     @Autowired
     private AppointmentResourceProvider appointmentResourceProvider;
 
-    @Autowired
-    private OrganizationResourceProvider organizationResourceProvider;
-
     @Autowired
     private PatientStore patientStore;
 
     @Autowired
     private PatientSearch patientSearch;
 
-    @Autowired
-    private OrganizationSearch organizationSearch;
-
     @Autowired
     private StaticElementsHelper staticElHelper;
 
     @Autowired
-    private StructuredAllergyIntoleranceBuilder structuredAllergyIntoleranceBuilder;
-
-    @Autowired
-    private PopulateMedicationBundle populateMedicationBundle;
+    private StructuredRecordAssembler structuredRecordAssembler;
 
     @Value("${datasource.patient.notOnSpine:#{null}}")
     private String patientNotOnSpine;
@@ -352,46 +335,8 @@ public class PatientResourceProvider implements IResourceProvider {
             structuredBundle.addEntry().setResource(patient);
         }
 
-        //Organization from patient
-        Set<String> orgIds = new HashSet<>();
-        orgIds.add(patientDetails.getManagingOrganization());
-
-        //Practitioner from patient
-        Set<String> practitionerIds = new HashSet<>();
-        List<Reference> practitionerReferenceList = patient.getGeneralPractitioner();
-        practitionerReferenceList.forEach(practitionerReference -> {
-            String[] pracRef = practitionerReference.getReference().split("/");
-            if (pracRef.length > 1) {
-                practitionerIds.add(pracRef[1]);
-            }
-        });
-
-        if (getAllergies) {
-            structuredBundle = structuredAllergyIntoleranceBuilder.buildStructuredAllergyIntolerence(NHS, practitionerIds, structuredBundle, includeResolved);
-        }
-        if (getMedications) {
-            structuredBundle = populateMedicationBundle.addMedicationBundleEntries(structuredBundle, patientDetails, includePrescriptionIssues, medicationPeriod, practitionerIds, orgIds);
-        }
-
-        //Add all practitioners and practitioner roles
-        for (String practitionerId : practitionerIds) {
-            Practitioner pracResource = practitionerResourceProvider.getPractitionerById(new IdType(practitionerId));
-            structuredBundle.addEntry().setResource(pracResource);
-
-            List<PractitionerRole> practitionerRoleList = practitionerRoleResourceProvider.getPractitionerRoleByPracticionerId(new IdType(practitionerId));
-            for (PractitionerRole role : practitionerRoleList) {
-                String[] split = role.getOrganization().getReference().split("/");
-                orgIds.add(split[1]);
-                structuredBundle.addEntry().setResource(role);
-            }
-        }
-
-        //Add all organizations
-        for (String orgId : orgIds) {
-            OrganizationDetails organizationDetails = organizationSearch.findOrganizationDetails(new Long(orgId));
-            Organization organization = organizationResourceProvider.convertOrganizationDetailsToOrganization(organizationDetails);
-            structuredBundle.addEntry().setResource(organization);
-        }
+        structuredRecordAssembler.assemble(structuredBundle, patientDetails, patient, NHS, getAllergies, includeResolved,
+                getMedications, includePrescriptionIssues, medicationPeriod);
 
         structuredBundle.setType(BundleType.COLLECTION);
         structuredBundle.getMeta().addProfile(SystemURL.SD_GPC_STRUCTURED_BUNDLE);
@@ -1275,20 +1220,17 @@ public class PatientResourceProvider implements IResourceProvider {
      * @param structuredBundle
      */
     private void removeDuplicateResources(Bundle structuredBundle) {
-        // take a copy into an array so we are not accused of modifying a collection while iterating through it.
-        Bundle.BundleEntryComponent[] entries = structuredBundle.getEntry().toArray(new Bundle.BundleEntryComponent[0]);
         HashSet<String> hs = new HashSet<>();
-        for (Bundle.BundleEntryComponent entry : entries) {
+        structuredBundle.getEntry().removeIf(entry -> {
             if (entry.getResource().getId() != null) {
                 String reference = entry.getResource().getResourceType().toString() + "/" + entry.getResource().getId();
-                if (!hs.contains(reference)) {
-                    hs.add(reference);
-                } else {
+                if (!hs.add(reference)) {
                     System.out.println("Removing duplicate entry " + reference);
-                    structuredBundle.getEntry().remove(entry);
+                    return true;
                 }
             }
-        }
+            return false;
+        });
     }
 
     private class NhsNumber {
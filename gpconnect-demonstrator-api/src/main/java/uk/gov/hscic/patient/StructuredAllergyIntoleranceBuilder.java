@@ -7,6 +7,7 @@ import org.hl7.fhir.dstu3.model.ListResource.ListMode;
 import org.hl7.fhir.dstu3.model.ListResource.ListStatus;
 import org.hl7.fhir.dstu3.model.OperationOutcome.IssueType;
 import org.hl7.fhir.exceptions.FHIRException;
+import org.springframework.beans.factory.ObjectFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -17,11 +18,11 @@ import uk.gov.hscic.SystemConstants;
 import uk.gov.hscic.SystemURL;
 import uk.gov.hscic.common.helpers.CodeableConceptBuilder;
 import uk.gov.hscic.common.helpers.WarningCodeExtHelper;
-import uk.gov.hscic.patient.details.PatientRepository;
+import uk.gov.hscic.patient.details.PatientSearch;
 import uk.gov.hscic.patient.structuredAllergyIntolerance.StructuredAllergyIntoleranceEntity;
-import uk.gov.hscic.patient.structuredAllergyIntolerance.StructuredAllergySearch;
 import uk.gov.hscic.practitioner.PractitionerSearch;
 import java.util.*;
+import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Value;
 import static uk.gov.hscic.SystemConstants.ACTIVE_ALLERGIES_DISPLAY;
 import static uk.gov.hscic.SystemConstants.ACTIVE_ALLERGIES_TITLE;
@@ -29,34 +30,28 @@ import static uk.gov.hscic.SystemConstants.NO_CONTENT_RECORDED;
 import static uk.gov.hscic.SystemConstants.NO_CONTENT_RECORDED_DISPLAY;
 import static uk.gov.hscic.SystemConstants.NO_INFORMATION_AVAILABLE;
 import static uk.gov.hscic.SystemConstants.RESOLVED_ALLERGIES_DISPLAY;
-import uk.gov.hscic.medication.statement.MedicationStatementRepository;
 
 @Component
 public class StructuredAllergyIntoleranceBuilder {
 
     @Autowired
-    private StructuredAllergySearch structuredAllergySearch;
-
-    @Autowired
-    private PatientRepository patientRepository;
+    private PatientSearch patientSearch;
 
     @Autowired
     private PractitionerSearch practitionerSearch;
 
     @Autowired
-    private CodeableConceptBuilder codeableConceptBuilder;
-
-    @Autowired
-    private MedicationStatementRepository medicationStatementRepository;
+    private ObjectFactory<CodeableConceptBuilder> codeableConceptBuilderFactory;
 
     @Value("${datasource.patient.nhsNumber:#{null}}")
     private String patient2NhsNo;
 
-    public Bundle buildStructuredAllergyIntolerence(String NHS, Set<String> practitionerIds, Bundle bundle, Boolean includedResolved) {
-        List<StructuredAllergyIntoleranceEntity> allergyData = structuredAllergySearch.getAllergyIntollerence(NHS);
+    public Bundle buildStructuredAllergyIntolerence(ClinicalDataContext clinicalData, Set<String> practitionerIds, Bundle bundle, Boolean includedResolved) {
+        String NHS = clinicalData.getNhsNumber();
+        List<StructuredAllergyIntoleranceEntity> allergyData = clinicalData.getAllergies();
 
-        ListResource activeList = initiateListResource(NHS, ACTIVE_ALLERGIES_DISPLAY, allergyData);
-        ListResource resolvedList = initiateListResource(NHS, RESOLVED_ALLERGIES_DISPLAY, allergyData);
+        ListResource activeList = initiateListResource(NHS, ACTIVE_ALLERGIES_DISPLAY, allergyData, clinicalData);
+        ListResource resolvedList = initiateListResource(NHS, RESOLVED_ALLERGIES_DISPLAY, allergyData, clinicalData);
 
         //If there is a 'no known' allergies code then add the necessary coding and return the bundle
         // This is patient 5 example 2 only
@@ -90,6 +85,20 @@ public class StructuredAllergyIntoleranceBuilder {
             return bundle;
         }
 
+        // which recorders are patient NHS numbers and which are practitioner ids,
+        // one lookup each for all the allergies
+        Set<String> recorders = allergyData.stream()
+                .map(StructuredAllergyIntoleranceEntity::getRecorder)
+                .collect(Collectors.toSet());
+        Set<String> patientRecorders = patientSearch.findPatientNhsNumbers(recorders);
+        Set<String> practitionerRecorders = practitionerSearch.findPractitionerDetails(recorders.stream()
+                .filter(recorder -> recorder != null && recorder.matches("[0-9]+") && !patientRecorders.contains(recorder))
+                .map(Long::valueOf)
+                .collect(Collectors.toSet()))
+                .stream()
+                .map(practitionerDetails -> String.valueOf(practitionerDetails.getId()))
+                .collect(Collectors.toSet());
+
         for (StructuredAllergyIntoleranceEntity allergyIntoleranceEntity : allergyData) {
             AllergyIntolerance allergyIntolerance = new AllergyIntolerance();
             allergyIntolerance.setOnset(new DateTimeType(allergyIntoleranceEntity.getOnSetDateTime()));
@@ -118,6 +127,7 @@ public class StructuredAllergyIntoleranceBuilder {
             allergyIntolerance.setVerificationStatus(AllergyIntoleranceVerificationStatus.UNCONFIRMED);
 
             //CODE
+            CodeableConceptBuilder codeableConceptBuilder = codeableConceptBuilderFactory.getObject();
             codeableConceptBuilder.addConceptCode(SystemConstants.SNOMED_URL, allergyIntoleranceEntity.getConceptCode(), allergyIntoleranceEntity.getConceptDisplay())
                     .addDescription(allergyIntoleranceEntity.getDescCode(), allergyIntoleranceEntity.getDescDisplay())
                     .addTranslation(allergyIntoleranceEntity.getCodeTranslationRef());
@@ -170,13 +180,13 @@ public class StructuredAllergyIntoleranceBuilder {
                 Reference rec = new Reference(
                         SystemConstants.PATIENT_REFERENCE_URL + allergyIntoleranceEntity.getPatientRef());
                 allergyIntolerance.setRecorder(rec);
-            } else if (patientRepository.findByNhsNumber(recorder) != null) {
+            } else if (patientRecorders.contains(recorder)) {
                 identifier.setSystem(SystemURL.ID_NHS_NUMBER);
                 identifier.setValue(recorder);
 
                 refValue.setIdentifier(identifier);
                 allergyIntolerance.setRecorder(refValue);
-            } else if (practitionerSearch.findPractitionerByUserId(recorder) != null) {
+            } else if (practitionerRecorders.contains(recorder)) {
                 refValue.setReference("Practitioner/" + recorder);
                 allergyIntolerance.setRecorder(refValue);
 
@@ -268,7 +278,8 @@ public class StructuredAllergyIntoleranceBuilder {
         return allergyIntolerance;
     }
 
-    private ListResource initiateListResource(String NHS, String display, List<StructuredAllergyIntoleranceEntity> allergyIntoleranceEntity) {
+    private ListResource initiateListResource(String NHS, String display, List<StructuredAllergyIntoleranceEntity> allergyIntoleranceEntity,
+            ClinicalDataContext clinicalData) {
         ListResource listResource = new ListResource();
 
         if (display.equals(ACTIVE_ALLERGIES_DISPLAY)) {
@@ -286,7 +297,7 @@ public class StructuredAllergyIntoleranceBuilder {
         listResource.setMode(ListMode.SNAPSHOT);
         addSubjectWithIdentifier(NHS, listResource);
 
-        addWarningCodeExtensions(allergyIntoleranceEntity, listResource);
+        addWarningCodeExtensions(allergyIntoleranceEntity, listResource, clinicalData);
         Extension clinicalSettingExtension = setClinicalSetting(allergyIntoleranceEntity);
 
         if (clinicalSettingExtension != null) {
@@ -296,7 +307,8 @@ public class StructuredAllergyIntoleranceBuilder {
         return listResource;
     }
 
-    private void addWarningCodeExtensions(List<StructuredAllergyIntoleranceEntity> allergyIntolerances, ListResource list) {
+    private void addWarningCodeExtensions(List<StructuredAllergyIntoleranceEntity> allergyIntolerances, ListResource list,
+            ClinicalDataContext clinicalData) {
 
         Set<String> warningCodes = new HashSet<>();
         allergyIntolerances.forEach(allergy -> {
@@ -305,7 +317,7 @@ public class StructuredAllergyIntoleranceBuilder {
             }
         });
 
-        WarningCodeExtHelper.addWarningCodeExtensions(warningCodes, list, patientRepository, medicationStatementRepository, structuredAllergySearch);
+        WarningCodeExtHelper.addWarningCodeExtensions(warningCodes, list, clinicalData);
     }
 
     private Extension setClinicalSetting(List<StructuredAllergyIntoleranceEntity> allergyIntoleranceEntity) {
@@ -0,0 +1,329 @@
+package uk.gov.hscic.patient;
+
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.log4j.Logger;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.IdType;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Period;
+import org.hl7.fhir.dstu3.model.PractitionerRole;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.gov.hscic.medications.PopulateMedicationBundle;
+import uk.gov.hscic.model.organization.OrganizationDetails;
+import uk.gov.hscic.model.patient.PatientDetails;
+import uk.gov.hscic.model.practitioner.PractitionerDetails;
+import uk.gov.hscic.organization.OrganizationResourceProvider;
+import uk.gov.hscic.organization.OrganizationSearch;
+import uk.gov.hscic.practitioner.PractitionerResourceProvider;
+import uk.gov.hscic.practitioner.PractitionerRoleResourceProvider;
+import uk.gov.hscic.practitioner.PractitionerSearch;
+
+/**
+ * Builds the clinical sections of a structured record and then resolves every
+ * practitioner, practitioner role and organization they reference with one
+ * query per resource type, so the number of queries does not grow with the
+ * number of distinct prescribers and recorders.
+ *
+ * When structuredrecord.parallel is set the allergy and medication sections,
+ * and then the practitioner and organization lookups, run concurrently on a
+ * bounded pool, each in its own read only transaction. Sections build into
+ * their own Bundle and are merged in a fixed order so the response is the
+ * same in either mode.
+ *
+ * The patient's medication statements and allergies are read once, before
+ * the sections, into a ClinicalDataContext which is handed to each section
+ * rather than held in request scope, as the sections may run on the pool.
+ */
+@Component
+public class StructuredRecordAssembler {
+    private static final Logger LOG = Logger.getLogger(StructuredRecordAssembler.class);
+
+    private static final String CLINICAL_DATA = "clinicalData";
+    private static final String ALLERGIES = "allergies";
+    private static final String MEDICATIONS = "medications";
+    private static final String PRACTITIONERS = "practitioners";
+    private static final String ORGANIZATIONS = "organizations";
+
+    @Autowired
+    private ClinicalDataContextLoader clinicalDataContextLoader;
+
+    @Autowired
+    private StructuredAllergyIntoleranceBuilder structuredAllergyIntoleranceBuilder;
+
+    @Autowired
+    private PopulateMedicationBundle populateMedicationBundle;
+
+    @Autowired
+    private PractitionerSearch practitionerSearch;
+
+    @Autowired
+    private PractitionerResourceProvider practitionerResourceProvider;
+
+    @Autowired
+    private PractitionerRoleResourceProvider practitionerRoleResourceProvider;
+
+    @Autowired
+    private OrganizationSearch organizationSearch;
+
+    @Autowired
+    private OrganizationResourceProvider organizationResourceProvider;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${structuredrecord.parallel:false}")
+    private boolean parallel;
+
+    @Value("${structuredrecord.threads:4}")
+    private int threads;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+
+        if (parallel) {
+            AtomicInteger threadCount = new AtomicInteger();
+            // a full queue runs the section on the request thread rather than rejecting it
+            executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(threads * 16),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "structured-record-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    public Bundle assemble(Bundle structuredBundle, PatientDetails patientDetails, Patient patient, String NHS,
+            boolean getAllergies, boolean includeResolved, boolean getMedications, boolean includePrescriptionIssues,
+            Period medicationPeriod) {
+        Map<String, Long> timings = new LinkedHashMap<>();
+
+        //Organization from patient
+        Set<String> orgIds = new HashSet<>();
+        orgIds.add(patientDetails.getManagingOrganization());
+
+        //Practitioner from patient
+        Set<String> practitionerIds = new HashSet<>();
+        for (Reference practitionerReference : patient.getGeneralPractitioner()) {
+            String[] pracRef = practitionerReference.getReference().split("/");
+            if (pracRef.length > 1) {
+                practitionerIds.add(pracRef[1]);
+            }
+        }
+
+        ClinicalDataContext clinicalData = null;
+        if (getAllergies || getMedications) {
+            long start = System.currentTimeMillis();
+            clinicalData = clinicalDataContextLoader.load(patientDetails, getMedications, medicationPeriod);
+            timings.put(CLINICAL_DATA, System.currentTimeMillis() - start);
+        }
+        ClinicalDataContext sectionClinicalData = clinicalData;
+
+        Bundle allergyBundle = new Bundle();
+        Set<String> allergyPractitionerIds = new HashSet<>();
+        Future<Long> allergies = null;
+        if (getAllergies) {
+            allergies = submit(() -> section(() -> structuredAllergyIntoleranceBuilder
+                    .buildStructuredAllergyIntolerence(sectionClinicalData, allergyPractitionerIds, allergyBundle, includeResolved)));
+        }
+
+        Bundle medicationBundle = new Bundle();
+        Set<String> medicationPractitionerIds = new HashSet<>();
+        Set<String> medicationOrgIds = new HashSet<>();
+        Future<Long> medications = null;
+        if (getMedications) {
+            medications = submit(() -> section(() -> populateMedicationBundle
+                    .addMedicationBundleEntries(medicationBundle, patientDetails, includePrescriptionIssues,
+                            medicationPractitionerIds, medicationOrgIds, sectionClinicalData)));
+        }
+
+        if (allergies != null) {
+            timings.put(ALLERGIES, await(allergies));
+            structuredBundle.getEntry().addAll(allergyBundle.getEntry());
+            practitionerIds.addAll(allergyPractitionerIds);
+        }
+        if (medications != null) {
+            timings.put(MEDICATIONS, await(medications));
+            structuredBundle.getEntry().addAll(medicationBundle.getEntry());
+            practitionerIds.addAll(medicationPractitionerIds);
+            orgIds.addAll(medicationOrgIds);
+        }
+
+        // the organizations known so far are fetched alongside the practitioners,
+        // only organizations first seen on a practitioner role need a second query
+        Map<String, PractitionerDetails> practitionerDetailsMap = new HashMap<>();
+        Future<Long> practitioners = submit(() -> section(() ->
+                practitionerDetailsMap.putAll(findPractitionerDetails(practitionerIds))));
+
+        Map<String, OrganizationDetails> organizationDetailsMap = new HashMap<>();
+        Future<Long> organizations = null;
+        if (parallel) {
+            Set<String> knownOrgIds = new HashSet<>(orgIds);
+            organizations = submit(() -> section(() ->
+                    organizationDetailsMap.putAll(findOrganizationDetails(knownOrgIds))));
+        }
+
+        timings.put(PRACTITIONERS, await(practitioners));
+        addPractitioners(structuredBundle, practitionerIds, practitionerDetailsMap, orgIds);
+
+        long organizationTime = organizations == null ? 0 : await(organizations);
+        Set<String> remainingOrgIds = orgIds.stream()
+                .filter(orgId -> !organizationDetailsMap.containsKey(orgId))
+                .collect(Collectors.toSet());
+        if (!remainingOrgIds.isEmpty()) {
+            organizationTime += section(() -> organizationDetailsMap.putAll(findOrganizationDetails(remainingOrgIds)));
+        }
+        timings.put(ORGANIZATIONS, organizationTime);
+        addOrganizations(structuredBundle, orgIds, organizationDetailsMap);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Structured record section timings (ms) " + timings);
+        }
+
+        return structuredBundle;
+    }
+
+    /**
+     * Runs the task on the executor in parallel mode, otherwise immediately on
+     * the calling thread.
+     */
+    private Future<Long> submit(Supplier<Long> task) {
+        if (executor != null) {
+            return executor.submit(task::get);
+        }
+
+        return CompletableFuture.completedFuture(task.get());
+    }
+
+    /**
+     * @return the time taken in milliseconds
+     */
+    private long section(Runnable runnable) {
+        long start = System.currentTimeMillis();
+        readOnlyTransaction.execute(status -> {
+            runnable.run();
+            return null;
+        });
+
+        return System.currentTimeMillis() - start;
+    }
+
+    private static long await(Future<Long> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new InternalErrorException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalErrorException(e);
+        }
+    }
+
+    private Map<String, PractitionerDetails> findPractitionerDetails(Set<String> practitionerIds) {
+        return practitionerSearch.findPractitionerDetails(toLongs(practitionerIds))
+                .stream()
+                .collect(Collectors.toMap(practitionerDetails -> String.valueOf(practitionerDetails.getId()), Function.identity()));
+    }
+
+    private Map<String, OrganizationDetails> findOrganizationDetails(Set<String> orgIds) {
+        return organizationSearch.findOrganizationDetails(toLongs(orgIds))
+                .stream()
+                .collect(Collectors.toMap(organizationDetails -> String.valueOf(organizationDetails.getId()), Function.identity()));
+    }
+
+    /**
+     * Adds all practitioners and their roles, the organizations of the roles
+     * are added to orgIds
+     */
+    private void addPractitioners(Bundle structuredBundle, Set<String> practitionerIds,
+            Map<String, PractitionerDetails> practitionerDetailsMap, Set<String> orgIds) {
+        for (String practitionerId : practitionerIds) {
+            PractitionerDetails practitionerDetails = practitionerDetailsMap.get(practitionerId);
+
+            if (practitionerDetails == null) {
+                // not expected, the single lookup raises the usual not found error
+                practitionerResourceProvider.getPractitionerById(new IdType(practitionerId));
+                continue;
+            }
+
+            structuredBundle.addEntry().setResource(practitionerResourceProvider.practitionerDetailsToPractitionerResourceConverter(practitionerDetails));
+
+            for (PractitionerRole role : practitionerRoleResourceProvider.practitionerDetailsToPractitionerRoleList(practitionerDetails)) {
+                String[] split = role.getOrganization().getReference().split("/");
+                orgIds.add(split[1]);
+                structuredBundle.addEntry().setResource(role);
+            }
+        }
+    }
+
+    private void addOrganizations(Bundle structuredBundle, Set<String> orgIds, Map<String, OrganizationDetails> organizationDetailsMap) {
+        List<OrganizationDetails> organizationDetails = new ArrayList<>();
+        for (String orgId : orgIds) {
+            if (!organizationDetailsMap.containsKey(orgId)) {
+                // not expected, the single lookup raises the usual not found error
+                organizationResourceProvider.getOrganizationById(new IdType(orgId));
+                continue;
+            }
+
+            organizationDetails.add(organizationDetailsMap.get(orgId));
+        }
+
+        for (Organization organization : organizationResourceProvider.convertOrganizationDetailsToOrganizations(organizationDetails)) {
+            structuredBundle.addEntry().setResource(organization);
+        }
+    }
+
+    private static Set<Long> toLongs(Set<String> ids) {
+        Set<Long> longs = new LinkedHashSet<>();
+        for (String id : ids) {
+            if (id != null && id.matches("[0-9]+")) {
+                longs.add(Long.valueOf(id));
+            }
+        }
+
+        return longs;
+    }
+}
@@ -15,12 +15,15 @@ import org.springframework.stereotype.Component;
 import uk.gov.hscic.OperationOutcomeFactory;
 import uk.gov.hscic.SystemCode;
 import uk.gov.hscic.SystemURL;
+import uk.gov.hscic.common.cache.ResourceTemplateCache;
 import uk.gov.hscic.common.validators.IdentifierValidator;
 import uk.gov.hscic.model.practitioner.PractitionerDetails;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Component
@@ -29,6 +32,9 @@ public class PractitionerResourceProvider implements IResourceProvider {
     @Autowired
     private PractitionerSearch practitionerSearch;
 
+    @Autowired
+    private ResourceTemplateCache resourceTemplateCache;
+
     @Override
     public Class<Practitioner> getResourceType() {
         return Practitioner.class;
@@ -52,6 +58,24 @@ public class PractitionerResourceProvider implements IResourceProvider {
         );
     }
 
+    /**
+     * Resolves a number of practitioners with a single query
+     *
+     * @param practitionerIds logical practitioner ids
+     * @return Practitioners keyed by logical id, ids that were not found are absent
+     */
+    public Map<String, Practitioner> getPractitionersByIds(Collection<String> practitionerIds) {
+        List<Long> ids = practitionerIds.stream()
+                .filter(practitionerId -> practitionerId.matches("[0-9]+"))
+                .map(Long::valueOf)
+                .collect(Collectors.toList());
+
+        return practitionerSearch.findPractitionerDetails(ids)
+                .stream()
+                .map(this::practitionerDetailsToPractitionerResourceConverter)
+                .collect(Collectors.toMap(practitioner -> practitioner.getIdElement().getIdPart(), practitioner -> practitioner));
+    }
+
     @Search
     public List<Practitioner> getPractitionerByPractitionerUserId(
             @RequiredParam(name = Practitioner.SP_IDENTIFIER) TokenParam practitionerId, 
@@ -95,7 +119,12 @@ public class PractitionerResourceProvider implements IResourceProvider {
         return count != null ? practitioners.subList(0, count) : practitioners;
     }
 
-    private Practitioner practitionerDetailsToPractitionerResourceConverter(PractitionerDetails practitionerDetails) {
+    public Practitioner practitionerDetailsToPractitionerResourceConverter(PractitionerDetails practitionerDetails) {
+        return resourceTemplateCache.get(ResourceType.Practitioner, practitionerDetails.getId(), practitionerDetails.getLastUpdated(),
+                () -> buildPractitioner(practitionerDetails));
+    }
+
+    private Practitioner buildPractitioner(PractitionerDetails practitionerDetails) {
     	
         Identifier identifier = new Identifier()
                 .setSystem(SystemURL.ID_SDS_USER_ID)
@@ -45,7 +45,7 @@ public class PractitionerRoleResourceProvider implements IResourceProvider {
     }
 
 
-    private List<PractitionerRole> practitionerDetailsToPractitionerRoleList(PractitionerDetails practitionerDetails) {
+    public List<PractitionerRole> practitionerDetailsToPractitionerRoleList(PractitionerDetails practitionerDetails) {
         final List<String> roleIds = practitionerDetails.getRoleIds();
 
         final CodeableConcept codeableConcept = new CodeableConcept();
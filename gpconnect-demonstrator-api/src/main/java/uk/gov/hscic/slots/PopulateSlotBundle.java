@@ -1,8 +1,10 @@
 package uk.gov.hscic.slots;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.hl7.fhir.dstu3.model.Bundle;
@@ -104,7 +106,7 @@ public class PopulateSlotBundle {
         HashMap<String, BundleEntryComponent> locationEntries = new HashMap<>();
         for (LocationDetails aLocationDetail : locationSearch.findAllLocations()) {
             if (aLocationDetail.getOrgOdsCode().equals(OUR_ODS_CODE)) {
-                Location aLocationResource = locationResourceProvider.getLocationById(new IdType(aLocationDetail.getId()));
+                Location aLocationResource = locationResourceProvider.locationDetailsToLocation(aLocationDetail);
                 BundleEntryComponent locationEntry = new BundleEntryComponent();
                 locationEntry.setResource(aLocationResource);
                 // #202 use full urls
@@ -134,6 +136,25 @@ public class PopulateSlotBundle {
             bookingOrganizationDetails = bookingOrganizationsDetails.get(0);
         }
 
+        // Resolve the schedules, their slots and their practitioners up front with one query each
+        // rather than once per location, schedule and slot
+        Map<String, List<Schedule>> locationSchedules = scheduleResourceProvider.getSchedulesForLocationIds(locationEntries.keySet(),
+                planningHorizonStart, planningHorizonEnd);
+
+        Set<Long> scheduleIds = new HashSet<>();
+        Set<String> practitionerIds = new HashSet<>();
+        for (List<Schedule> schedules : locationSchedules.values()) {
+            for (Schedule schedule : schedules) {
+                scheduleIds.add(schedule.getIdElement().getIdPartAsLong());
+                for (Reference practitionerActor : scheduleResourceProvider.getPractitionerReferences(schedule)) {
+                    practitionerIds.add(practitionerActor.getReferenceElement().getIdPart());
+                }
+            }
+        }
+
+        Map<Long, List<SlotDetail>> scheduleSlots = slotSearch.findSlotsForScheduleIds(scheduleIds, planningHorizonStart, planningHorizonEnd);
+        Map<String, Practitioner> practitioners = practitionerResourceProvider.getPractitionersByIds(practitionerIds);
+
         HashSet<BundleEntryComponent> addedSchedule = new HashSet<>();
         HashSet<BundleEntryComponent> addedLocation = new HashSet<>();
         HashSet<String> addedPractitioner = new HashSet<>();
@@ -145,7 +166,7 @@ public class PopulateSlotBundle {
         for (String locationId : locationEntries.keySet()) {
 
             // process the schedules
-            for (Schedule schedule : scheduleResourceProvider.getSchedulesForLocationId(locationId, planningHorizonStart, planningHorizonEnd)) {
+            for (Schedule schedule : locationSchedules.getOrDefault(locationId, Collections.emptyList())) {
                 boolean slotsAdded = false;
 
                 schedule.getMeta().addProfile(SystemURL.SD_GPC_SCHEDULE);
@@ -163,40 +184,28 @@ public class PopulateSlotBundle {
                 //  # 166 see https://nhsconnect.github.io/gpconnect/appointments_slotavailabilitymanagement.html
                 // for the details of the logic implemeneted here
                 // 
-                if (bookingOrgType.isEmpty() && bookingOdsCode.isEmpty()) {
-                    // OPTION 1 get slots Specfying  neither org type nor org code
-                    slots.addAll(slotResourceProvider.getSlotsForScheduleIdNoOrganizationTypeOrODS(schedule.getIdElement().getIdPart(),
-                            planningHorizonStart, planningHorizonEnd));
-                } else if (!bookingOrgType.isEmpty() && bookingOdsCode.isEmpty()) {
-                    // OPTION 2 organisation type only
-                    for (Slot slot : slotResourceProvider.getSlotsForScheduleId(schedule.getIdElement().getIdPart(),
-                            planningHorizonStart, planningHorizonEnd)) {
-                        SlotDetail slotDetail = slotSearch.findSlotByID(Long.parseLong(slot.getId()));
-                        if (slotDetail.getOrganizationIds().isEmpty()
+                for (SlotDetail slotDetail : scheduleSlots.getOrDefault(schedule.getIdElement().getIdPartAsLong(), Collections.emptyList())) {
+                    boolean include;
+                    if (bookingOrgType.isEmpty() && bookingOdsCode.isEmpty()) {
+                        // OPTION 1 get slots Specfying  neither org type nor org code
+                        include = slotDetail.getOrganizationIds().isEmpty() && slotDetail.getOrganizationTypes().isEmpty();
+                    } else if (!bookingOrgType.isEmpty() && bookingOdsCode.isEmpty()) {
+                        // OPTION 2 organisation type only
+                        include = slotDetail.getOrganizationIds().isEmpty()
                                 && (slotDetail.getOrganizationTypes().isEmpty()
-                                || slotDetail.getOrganizationTypes().contains(bookingOrgType))) {
-                            slots.add(slot);
-                        }
+                                || slotDetail.getOrganizationTypes().contains(bookingOrgType));
+                    } else if (!bookingOdsCode.isEmpty() && bookingOrgType.isEmpty()) {
+                        // OPTION 3 org code only
+                        include = slotDetail.getOrganizationTypes().isEmpty()
+                                && (slotDetail.getOrganizationIds().isEmpty() || bookingOrganizationDetails != null && slotDetail.getOrganizationIds().contains(bookingOrganizationDetails.getId()));
+                    } else {
+                        // OPTION 4 both org code and org type
+                        include = ((slotDetail.getOrganizationTypes().isEmpty() || slotDetail.getOrganizationTypes().contains(bookingOrgType)))
+                                && (slotDetail.getOrganizationIds().isEmpty() || bookingOrganizationDetails != null && slotDetail.getOrganizationIds().contains(bookingOrganizationDetails.getId()));
                     }
-                } else if (!bookingOdsCode.isEmpty() && bookingOrgType.isEmpty()) {
-                    // OPTION 3 org code only
-                    for (Slot slot : slotResourceProvider.getSlotsForScheduleId(schedule.getIdElement().getIdPart(),
-                            planningHorizonStart, planningHorizonEnd)) {
-                        SlotDetail slotDetail = slotSearch.findSlotByID(Long.parseLong(slot.getId()));
-                        if (slotDetail.getOrganizationTypes().isEmpty()
-                                && (slotDetail.getOrganizationIds().isEmpty() || bookingOrganizationDetails != null && slotDetail.getOrganizationIds().contains(bookingOrganizationDetails.getId()))) {
-                            slots.add(slot);
-                        }
-                    }
-                } else if (!bookingOrgType.isEmpty() && !bookingOdsCode.isEmpty()) {
-                    // OPTION 4 both org code and org type
-                    for (Slot slot : slotResourceProvider.getSlotsForScheduleId(schedule.getIdElement().getIdPart(),
-                            planningHorizonStart, planningHorizonEnd)) {
-                        SlotDetail slotDetail = slotSearch.findSlotByID(Long.parseLong(slot.getId()));
-                        if (((slotDetail.getOrganizationTypes().isEmpty() || slotDetail.getOrganizationTypes().contains(bookingOrgType)))
-                                && (slotDetail.getOrganizationIds().isEmpty() || bookingOrganizationDetails != null && slotDetail.getOrganizationIds().contains(bookingOrganizationDetails.getId()))) {
-                            slots.add(slot);
-                        }
+
+                    if (include) {
+                        slots.add(slotResourceProvider.slotDetailToSlotResourceConverter(slotDetail));
                     }
                 }
 
@@ -246,8 +255,13 @@ public class PopulateSlotBundle {
 
                     if (!practitionerActors.isEmpty()) {
                         for (Reference practitionerActor : practitionerActors) {
-                            Practitioner practitioner = practitionerResourceProvider
-                                    .getPractitionerById((IdType) practitionerActor.getReferenceElement());
+                            Practitioner practitioner = practitioners.get(practitionerActor.getReferenceElement().getIdPart());
+
+                            if (practitioner == null) {
+                                // not resolved by the batch, the single read reports the missing practitioner
+                                practitioner = practitionerResourceProvider
+                                        .getPractitionerById((IdType) practitionerActor.getReferenceElement());
+                            }
 
                             if (practitioner == null) {
                                 Coding errorCoding = new Coding().setSystem(SystemURL.VS_GPC_ERROR_WARNING_CODE)
@@ -294,10 +308,8 @@ public class PopulateSlotBundle {
      */
     private void addOrganisation(OrganizationDetails organization, Bundle bundle) {
         BundleEntryComponent organizationEntry = new BundleEntryComponent();
-        Long organizationId = organization.getId();
-        OrganizationDetails organizationDetails = organizationSearch.findOrganizationDetails(organizationId);
         Organization organizationResource = organizationResourceProvider
-                .convertOrganizationDetailsToOrganization(organizationDetails);
+                .convertOrganizationDetailsToOrganization(organization);
         organizationEntry.setResource(organizationResource);
         // #202 use full urls
         // #215 full url removed completely
@@ -223,7 +223,7 @@ public class SlotResourceProvider implements IResourceProvider {
         return slots;
     }
 
-    private Slot slotDetailToSlotResourceConverter(SlotDetail slotDetail) {
+    Slot slotDetailToSlotResourceConverter(SlotDetail slotDetail) {
         Slot slot = new Slot();
 
         Date lastUpdated = slotDetail.getLastUpdated() == null
@@ -0,0 +1,114 @@
+package uk.gov.hscic.appointments;
+
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import org.hl7.fhir.dstu3.model.Appointment;
+import org.hl7.fhir.dstu3.model.Appointment.AppointmentStatus;
+import org.hl7.fhir.dstu3.model.Appointment.ParticipationStatus;
+import org.hl7.fhir.dstu3.model.CodeableConcept;
+import org.hl7.fhir.dstu3.model.InstantType;
+import org.hl7.fhir.dstu3.model.OperationOutcome;
+import org.hl7.fhir.dstu3.model.Reference;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.gov.hscic.SystemCode;
+import uk.gov.hscic.SystemURL;
+import uk.gov.hscic.appointment.appointment.AppointmentStore;
+import uk.gov.hscic.appointment.schedule.ScheduleSearch;
+import uk.gov.hscic.appointment.slot.SlotSearch;
+import uk.gov.hscic.model.appointment.AppointmentDetail;
+import uk.gov.hscic.model.appointment.ScheduleDetail;
+import uk.gov.hscic.model.appointment.SlotDetail;
+
+public class AppointmentResourceProviderTest {
+    private static final Date START = new Date(1_500_000_000_000L);
+    private static final Date END = new Date(START.getTime() + 15 * 60 * 1000L);
+
+    private AppointmentStore appointmentStore;
+    private AppointmentResourceProvider appointmentResourceProvider;
+
+    @Before
+    public void setUp() {
+        SlotDetail slotDetail = new SlotDetail();
+        slotDetail.setId(1L);
+        slotDetail.setFreeBusyType("FREE");
+        slotDetail.setScheduleReference(1L);
+        slotDetail.setStartDateTime(START);
+        slotDetail.setEndDateTime(END);
+        slotDetail.setDeliveryChannelCode("In-person");
+        slotDetail.setTypeDisply("Stable angina");
+
+        SlotSearch slotSearch = mock(SlotSearch.class);
+        when(slotSearch.findSlotByID(1L)).thenReturn(slotDetail);
+
+        ScheduleDetail scheduleDetail = new ScheduleDetail();
+        scheduleDetail.setId(1L);
+        scheduleDetail.setPractitionerId(1L);
+        scheduleDetail.setLocationId(1L);
+
+        ScheduleSearch scheduleSearch = mock(ScheduleSearch.class);
+        when(scheduleSearch.findScheduleByID(1L)).thenReturn(scheduleDetail);
+
+        AppointmentValidation appointmentValidation = mock(AppointmentValidation.class);
+        when(appointmentValidation.validateParticipantType(any())).thenReturn(true);
+
+        appointmentStore = mock(AppointmentStore.class);
+
+        appointmentResourceProvider = new AppointmentResourceProvider();
+        ReflectionTestUtils.setField(appointmentResourceProvider, "slotSearch", slotSearch);
+        ReflectionTestUtils.setField(appointmentResourceProvider, "scheduleSearch", scheduleSearch);
+        ReflectionTestUtils.setField(appointmentResourceProvider, "appointmentValidation", appointmentValidation);
+        ReflectionTestUtils.setField(appointmentResourceProvider, "appointmentStore", appointmentStore);
+    }
+
+    @Test
+    public void shouldRejectABookingWhenTheSlotIsClaimedFirst() {
+        // the slot was FREE when read but another booking claimed it first
+        when(appointmentStore.bookAppointment(any(AppointmentDetail.class), anyList())).thenReturn(null);
+
+        try {
+            appointmentResourceProvider.createAppointment(appointment());
+            fail("Expected a 409");
+        } catch (BaseServerResponseException ex) {
+            assertEquals(409, ex.getStatusCode());
+
+            OperationOutcome operationOutcome = (OperationOutcome) ex.getOperationOutcome();
+            assertEquals(SystemCode.DUPLICATE_REJECTED, operationOutcome.getIssueFirstRep().getDetails().getCodingFirstRep().getCode());
+        }
+
+        verify(appointmentStore).bookAppointment(any(AppointmentDetail.class), anyList());
+    }
+
+    private static Appointment appointment() {
+        Appointment appointment = new Appointment();
+        appointment.getMeta().addProfile(SystemURL.SD_GPC_APPOINTMENT);
+        appointment.setStatus(AppointmentStatus.BOOKED);
+        appointment.setStartElement(new InstantType(format(START)));
+        appointment.setEndElement(new InstantType(format(END)));
+        appointment.addSlot(new Reference("Slot/1"));
+        appointment.setCreated(new Date());
+        appointment.addExtension().setUrl(SystemURL.SD_CC_APPOINTMENT_BOOKINGORG).setValue(new Reference("#1"));
+
+        for (String actor : new String[] { "Patient/1", "Location/1" }) {
+            appointment.addParticipant()
+                    .setActor(new Reference(actor))
+                    .setStatus(ParticipationStatus.ACCEPTED)
+                    .addType(new CodeableConcept());
+        }
+
+        return appointment;
+    }
+
+    private static String format(Date date) {
+        return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(date).replaceFirst("([0-9]{2})([0-9]{2})$", "$1:$2");
+    }
+}
@@ -0,0 +1,57 @@
+package uk.gov.hscic.auth;
+
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class CertificateValidatorCacheTest {
+    private static final String KEYSTORE_PATH = "src/test/resources/Authentication/";
+    private static final String PASSWORD = "password";
+
+    @Test
+    public void trustedCertificateVerdictsAreForgottenWithTheKeystore() throws Exception {
+        CertificateValidator certificateValidator = new CertificateValidator(KeyStoreFactory.getKeyStore(KEYSTORE_PATH + "server.jks", PASSWORD));
+        ReflectionTestUtils.setField(certificateValidator, "env", new MockEnvironment());
+
+        X509Certificate trusted = (X509Certificate) KeyStoreFactory
+                .getKeyStore(KEYSTORE_PATH + "client.jks", PASSWORD)
+                .getCertificate("nhsdigitalclient");
+        X509Certificate untrusted = (X509Certificate) KeyStoreFactory
+                .getKeyStore(KEYSTORE_PATH + "invalidClient.jks", PASSWORD)
+                .getCertificate("nhsdigitalclientinvalid");
+
+        for (int i = 0; i < 2; i++) {
+            certificateValidator.validateRequest(secureRequest(trusted));
+            assertRejected(certificateValidator, untrusted);
+        }
+
+        KeyStore emptyKeyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        emptyKeyStore.load(null, null);
+        certificateValidator.setKeyStore(emptyKeyStore);
+
+        assertRejected(certificateValidator, trusted);
+    }
+
+    private static void assertRejected(CertificateValidator certificateValidator, X509Certificate certificate) {
+        try {
+            certificateValidator.validateRequest(secureRequest(certificate));
+            fail("Expected a 495");
+        } catch (BaseServerResponseException ex) {
+            assertEquals(495, ex.getStatusCode());
+        }
+    }
+
+    private static MockHttpServletRequest secureRequest(X509Certificate certificate) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/fhir/metadata");
+        request.setSecure(true);
+        request.setAttribute("javax.servlet.request.X509Certificate", new X509Certificate[]{certificate});
+
+        return request;
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.x509;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -13,7 +14,9 @@ import org.springframework.test.web.servlet.MockMvc;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import uk.gov.hscic.common.config.ConfigFileWatcher;
 import uk.gov.hscic.common.ldap.EndpointResolver;
+import uk.gov.hscic.common.ldap.ProviderRoutingTable;
 
 @RunWith(SpringRunner.class)
 @TestPropertySource(properties = {
@@ -22,10 +25,12 @@ import uk.gov.hscic.common.ldap.EndpointResolver;
     "ldap.context.keystore.pwd = password",
     "ldap.context.keystore.type = JKS",
     "ldap.context.port = 10636",
+    "ldap.context.timeout = 1000",
     "ldap.context.url = localhost",
     "ldap.context.useSSL = false"
 })
 @WebMvcTest(EndpointResolver.class)
+@Import({ProviderRoutingTable.class, ConfigFileWatcher.class})
 public class CertificateValidatorTest {
     protected static final String KEYSTORE_PATH = "src/test/resources/Authentication/";
     protected static final String PASSWORD = "password";
@@ -0,0 +1,48 @@
+package uk.gov.hscic.common.config;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class SqlScriptReaderTest {
+
+    @Test
+    public void shouldSplitMultiLineStatementsAndDropComments() throws IOException {
+        String script = "/*\n * licence; header\n */\nUSE gpconnect1;\n"
+                + "INSERT INTO allergyintolerance\n  (nhsNumber, note)\nVALUES\n  (9658220150, 'Swollen lips');\n"
+                + "-- a line comment;\n"
+                + "SET SQL_SAFE_UPDATES = 0;\n\n;\n";
+
+        assertEquals(Arrays.asList(
+                "USE gpconnect1",
+                "INSERT INTO allergyintolerance   (nhsNumber, note) VALUES   (9658220150, 'Swollen lips')",
+                "SET SQL_SAFE_UPDATES = 0"), statements(script));
+    }
+
+    @Test
+    public void shouldKeepSeparatorsInsideQuotes() throws IOException {
+        String script = "INSERT INTO notes VALUES ('a;b', \"c -- d\", 'it''s', 'e\\';f', `g;h`);"
+                + "UPDATE notes SET note = '/* kept */' WHERE id = 1";
+
+        assertEquals(Arrays.asList(
+                "INSERT INTO notes VALUES ('a;b', \"c -- d\", 'it''s', 'e\\';f', `g;h`)",
+                "UPDATE notes SET note = '/* kept */' WHERE id = 1"), statements(script));
+    }
+
+    private static List<String> statements(String script) throws IOException {
+        List<String> statements = new ArrayList<>();
+
+        try (SqlScriptReader reader = new SqlScriptReader(new StringReader(script))) {
+            String statement;
+            while ((statement = reader.nextStatement()) != null) {
+                statements.add(statement);
+            }
+        }
+
+        return statements;
+    }
+}
@@ -0,0 +1,115 @@
+package uk.gov.hscic.common.filters;
+
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import java.util.Collections;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.gov.hscic.InteractionId;
+import uk.gov.hscic.SystemHeader;
+import uk.gov.hscic.SystemURL;
+import uk.gov.hscic.auth.CertificateValidator;
+import uk.gov.hscic.auth.KeyStoreFactory;
+import uk.gov.hscic.common.filters.model.Interactions;
+
+public class FhirRequestGenericIntercepterTest {
+    private static final String BASE = "/gpconnect-demonstrator/v1/fhir/";
+    private static final int ACCEPTED = 200;
+
+    private FhirRequestGenericIntercepter intercepter;
+
+    @Before
+    public void setUp() throws Exception {
+        intercepter = new FhirRequestGenericIntercepter();
+        ReflectionTestUtils.setField(intercepter, "interactions", new Interactions());
+        ReflectionTestUtils.setField(intercepter, "certificateValidator",
+                new CertificateValidator(KeyStoreFactory.getKeyStore("src/test/resources/Authentication/server.jks", "password")));
+        intercepter.postConstruct();
+    }
+
+    @Test
+    public void shouldAcceptRequestsMatchingTheInteraction() {
+        assertOutcome(ACCEPTED, InteractionId.REST_READ_METADATA, "GET", BASE + "metadata", null);
+        assertOutcome(ACCEPTED, InteractionId.REST_READ_PATIENT, "GET", BASE + "Patient/1", null);
+        assertOutcome(ACCEPTED, InteractionId.REST_SEARCH_PATIENT_APPOINTMENTS, "GET", BASE + "Patient/2/Appointment", null);
+        assertOutcome(ACCEPTED, InteractionId.REST_UPDATE_APPOINTMENT, "PUT", BASE + "Appointment/a-1.2", null);
+        assertOutcome(ACCEPTED, InteractionId.OPERATION_GPC_GET_STRUCTURED_RECORD, "POST", BASE + "Patient/$gpc.getstructuredrecord", null);
+        assertOutcome(ACCEPTED, InteractionId.REST_SEARCH_PATIENT, "GET", BASE + "Patient", SystemURL.ID_NHS_NUMBER + "|9476719931");
+        assertOutcome(ACCEPTED, InteractionId.REST_SEARCH_PATIENT, "GET", BASE + "Patient", SystemURL.ID_NHS_NUMBER + "|9476719931|");
+        assertOutcome(ACCEPTED, InteractionId.REST_SEARCH_ORGANIZATION, "GET", BASE + "Organization", SystemURL.ID_ODS_SITE_CODE + "|Z33433");
+
+        InteractionMatcher interactionMatcher = (InteractionMatcher) ReflectionTestUtils.getField(intercepter, "interactionMatcher");
+        assertTrue(interactionMatcher.matches(InteractionId.REST_SEARCH_PATIENT_APPOINTMENTS, request("GET", BASE + "Patient/2/Appointment", null)));
+        assertTrue(interactionMatcher.matches(InteractionId.REST_SEARCH_PATIENT, request("GET", BASE + "Patient", SystemURL.ID_NHS_NUMBER + "|9476719931")));
+    }
+
+    @Test
+    public void shouldRejectRequestsNotMatchingTheInteraction() {
+        assertOutcome(400, "urn:unknown", "GET", BASE + "metadata", null);
+        assertOutcome(400, InteractionId.REST_READ_PATIENT, "POST", BASE + "Patient/1", null);
+        assertOutcome(400, InteractionId.REST_READ_PATIENT, "GET", "/Patient/1", null);
+        assertOutcome(400, InteractionId.REST_READ_PATIENT, "GET", BASE + "Practitioner/1", null);
+        assertOutcome(404, InteractionId.REST_READ_PATIENT, "GET", BASE + "Unknown/1", null);
+        assertOutcome(400, InteractionId.REST_READ_PATIENT, "GET", BASE + "Patient", null);
+        assertOutcome(400, InteractionId.REST_READ_PATIENT, "GET", BASE + "Patient/", null);
+        assertOutcome(404, InteractionId.REST_READ_APPOINTMENT, "GET", BASE + "Appointment/", null);
+        assertOutcome(400, InteractionId.REST_SEARCH_PATIENT_APPOINTMENTS, "GET", BASE + "Patient/2/Slot", null);
+        assertOutcome(400, InteractionId.REST_READ_PATIENT, "GET", BASE + "Patient/$gpc.getcarerecord", null);
+        assertOutcome(404, InteractionId.OPERATION_GPC_GET_STRUCTURED_RECORD, "POST", BASE + "Patient/$gpc.unknown", null);
+        assertOutcome(400, InteractionId.OPERATION_GPC_GET_STRUCTURED_RECORD, "POST", BASE + "Patient/$gpc.getcarerecord", null);
+        assertOutcome(400, InteractionId.OPERATION_GPC_GET_STRUCTURED_RECORD, "POST", BASE + "Patient", null);
+        assertOutcome(400, InteractionId.CLAIM_PATIENT_OBSERVATION, "GET", BASE + "Observation", null);
+        assertOutcome(400, InteractionId.REST_SEARCH_PATIENT, "GET", BASE + "Patient", null);
+        assertOutcome(400, InteractionId.REST_SEARCH_PATIENT, "GET", BASE + "Patient", "https://unknown|9476719931");
+        assertOutcome(422, InteractionId.REST_SEARCH_PATIENT, "GET", BASE + "Patient", SystemURL.ID_NHS_NUMBER + "|");
+        assertOutcome(422, InteractionId.REST_SEARCH_PATIENT, "GET", BASE + "Patient", " |9476719931");
+        assertOutcome(422, InteractionId.REST_SEARCH_PATIENT, "GET", BASE + "Patient", SystemURL.ID_NHS_NUMBER + "|1|2");
+    }
+
+    /**
+     * Checks the outcome with the compiled routes and again with only the
+     * descriptive checks, which must agree.
+     */
+    private void assertOutcome(int expected, String interactionId, String httpVerb, String requestUri, String identifier) {
+        assertEquals(requestUri, expected, outcome(interactionId, httpVerb, requestUri, identifier));
+
+        InteractionMatcher interactionMatcher = (InteractionMatcher) ReflectionTestUtils.getField(intercepter, "interactionMatcher");
+        ReflectionTestUtils.setField(intercepter, "interactionMatcher",
+                InteractionMatcher.compile(Collections.emptyMap(), Collections.emptySet(), Collections.emptySet()));
+
+        try {
+            assertEquals(requestUri, expected, outcome(interactionId, httpVerb, requestUri, identifier));
+        } finally {
+            ReflectionTestUtils.setField(intercepter, "interactionMatcher", interactionMatcher);
+        }
+    }
+
+    private int outcome(String interactionId, String httpVerb, String requestUri, String identifier) {
+        MockHttpServletRequest request = request(httpVerb, requestUri, identifier);
+        request.addHeader(SystemHeader.SSP_TRACEID, "583c4d4c-8ca4-4ac7-a0d7-cbac2c6a8a7e");
+        request.addHeader(SystemHeader.SSP_FROM, "200000000359");
+        request.addHeader(SystemHeader.SSP_TO, "918999198993");
+        request.addHeader(SystemHeader.SSP_INTERACTIONID, interactionId);
+
+        try {
+            intercepter.incomingRequestPreProcessed(request, new MockHttpServletResponse());
+            return ACCEPTED;
+        } catch (BaseServerResponseException ex) {
+            return ex.getStatusCode();
+        }
+    }
+
+    private static MockHttpServletRequest request(String httpVerb, String requestUri, String identifier) {
+        MockHttpServletRequest request = new MockHttpServletRequest(httpVerb, requestUri);
+
+        if (identifier != null) {
+            request.addParameter("identifier", identifier);
+        }
+
+        return request;
+    }
+}
@@ -0,0 +1,116 @@
+package uk.gov.hscic.common.filters;
+
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.gov.hscic.common.config.FhirContextHolder;
+import uk.gov.hscic.common.filters.model.WebToken;
+
+public class WebTokenFactoryTest {
+    private static final String HEADER = "{\"alg\":\"none\",\"typ\":\"JWT\"}";
+
+    private WebTokenCache webTokenCache;
+    private WebTokenFactory webTokenFactory;
+
+    @Before
+    public void setUp() {
+        webTokenCache = new WebTokenCache();
+        ReflectionTestUtils.setField(webTokenCache, "cacheSize", 10);
+        ReflectionTestUtils.setField(webTokenCache, "futureRequestLeeway", 5);
+        webTokenCache.init();
+
+        webTokenFactory = new WebTokenFactory();
+        ReflectionTestUtils.setField(webTokenFactory, "fhirContextHolder", new FhirContextHolder());
+        ReflectionTestUtils.setField(webTokenFactory, "webTokenCache", webTokenCache);
+    }
+
+    @Test
+    public void shouldBindAndValidateAGpConnectToken() {
+        WebToken webToken = webTokenFactory.getWebToken(request(HEADER, claims("")), 5);
+
+        assertEquals("patient/*.read", webToken.getRequestedScope());
+        assertEquals("1", webToken.getSub());
+        assertEquals("Device", webToken.getRequestingDevice().getResourceType());
+        assertEquals("GPC001", webToken.getRequestingOrganization().getIdentifierValue("https://fhir.nhs.uk/Id/ods-organization-code"));
+    }
+
+    @Test
+    public void shouldRejectInvalidTokens() {
+        assertStatus(400, request("{\"alg\":\"HS256\",\"typ\":\"JWT\"}", claims("")));
+        assertStatus(400, request(HEADER, "{\"aud\":"));
+        assertStatus(400, request(HEADER, "[]"));
+        assertStatus(400, request(HEADER, claims("\"requested_record\":{\"resourceType\":\"Patient\"},")));
+        assertStatus(422, request(HEADER, claims("").replace("\"resourceType\":\"Device\",", "\"resourceType\":\"Device\",\"colour\":\"blue\",")));
+    }
+
+    @Test
+    public void shouldReuseValidatedTokensButStillCheckTheRequest() {
+        ReflectionTestUtils.setField(webTokenCache, "enabled", true);
+        String claims = claims("");
+
+        WebToken webToken = webTokenFactory.getWebToken(request(HEADER, claims), 5);
+        assertSame(webToken, webTokenFactory.getWebToken(request(HEADER, claims), 5));
+        assertEquals(1, webTokenCache.getHitCount());
+        assertEquals(1, webTokenCache.getMissCount());
+
+        RequestDetails xmlOnly = request(HEADER, claims);
+        when(xmlOnly.getHeader(HttpHeaders.ACCEPT)).thenReturn("text/xml");
+        assertStatus(415, xmlOnly);
+
+        // failures are not cached
+        String invalid = claims("\"requested_record\":{\"resourceType\":\"Patient\"},");
+        assertStatus(400, request(HEADER, invalid));
+        assertStatus(400, request(HEADER, invalid));
+        assertEquals(1, webTokenCache.getSize());
+    }
+
+    private void assertStatus(int statusCode, RequestDetails requestDetails) {
+        try {
+            webTokenFactory.getWebToken(requestDetails, 5);
+            fail("Expected a " + statusCode);
+        } catch (BaseServerResponseException ex) {
+            assertEquals(statusCode, ex.getStatusCode());
+        }
+    }
+
+    private static String claims(String extra) {
+        long now = System.currentTimeMillis() / 1000;
+
+        return "{" + extra
+                + "\"iss\":\"https://orange.testlab.nhs.uk/\",\"sub\":\"1\",\"aud\":\"https://provider.thirdparty.nhs.uk/GP0001/STU3/1\","
+                + "\"exp\":" + (now + 300) + ",\"iat\":" + now + ","
+                + "\"reason_for_request\":\"directcare\",\"requested_scope\":\"patient/*.read\","
+                + "\"requesting_device\":{\"resourceType\":\"Device\",\"id\":\"1\","
+                + "\"identifier\":[{\"system\":\"GPConnectTestSystem\",\"value\":\"Client\"}],\"model\":\"v1\",\"version\":\"1.1\"},"
+                + "\"requesting_organization\":{\"resourceType\":\"Organization\",\"id\":\"1\","
+                + "\"identifier\":[{\"system\":\"https://fhir.nhs.uk/Id/ods-organization-code\",\"value\":\"GPC001\"}],\"name\":\"GP Connect Assurance\"},"
+                + "\"requesting_practitioner\":{\"resourceType\":\"Practitioner\",\"id\":\"1\","
+                + "\"identifier\":[{\"system\":\"https://fhir.nhs.uk/Id/sds-user-id\",\"value\":\"G13579135\"}],"
+                + "\"name\":[{\"family\":\"Demonstrator\",\"given\":[\"GPConnect\"],\"prefix\":[\"Mr\"]}]}}";
+    }
+
+    private static RequestDetails request(String header, String claims) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String token = encoder.encodeToString(header.getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(claims.getBytes(StandardCharsets.UTF_8));
+
+        RequestDetails requestDetails = mock(RequestDetails.class);
+        when(requestDetails.getHeader(HttpHeaders.AUTHORIZATION)).thenReturn("Bearer " + token);
+        when(requestDetails.getHeader(HttpHeaders.ACCEPT)).thenReturn("application/fhir+json");
+        when(requestDetails.getParameters()).thenReturn(Collections.emptyMap());
+        when(requestDetails.getRequestType()).thenReturn(RequestTypeEnum.GET);
+        return requestDetails;
+    }
+}
@@ -0,0 +1,42 @@
+package uk.gov.hscic.common.helpers;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.hl7.fhir.dstu3.model.Extension;
+import org.hl7.fhir.dstu3.model.ListResource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import uk.gov.hscic.model.medication.MedicationStatementDetail;
+import uk.gov.hscic.patient.ClinicalDataContext;
+
+public class WarningCodeExtHelperTest {
+
+    @Test
+    public void shouldOnlyFlagThePatientWithDataInTransit() {
+        MedicationStatementDetail inTransit = new MedicationStatementDetail();
+        inTransit.setWarningCode(ClinicalDataContext.DATA_IN_TRANSIT);
+
+        ListResource first = new ListResource();
+        WarningCodeExtHelper.addWarningCodeExtensions(new HashSet<>(), first,
+                new ClinicalDataContext("1", Collections.singletonList(inTransit), Collections.emptyList()));
+
+        ListResource second = new ListResource();
+        WarningCodeExtHelper.addWarningCodeExtensions(new HashSet<>(), second,
+                new ClinicalDataContext("2", Collections.emptyList(), Collections.emptyList()));
+
+        assertEquals(Collections.singletonList(ClinicalDataContext.DATA_IN_TRANSIT), warningCodes(first));
+        assertEquals(1, first.getNote().size());
+        assertTrue(warningCodes(second).isEmpty());
+        assertTrue(second.getNote().isEmpty());
+    }
+
+    private static List<String> warningCodes(ListResource list) {
+        return list.getExtension().stream()
+                .map(Extension::getValue)
+                .map(value -> value.primitiveValue())
+                .collect(Collectors.toList());
+    }
+}
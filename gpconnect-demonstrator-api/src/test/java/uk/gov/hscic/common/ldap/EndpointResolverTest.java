@@ -0,0 +1,113 @@
+package uk.gov.hscic.common.ldap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The LDAP queries themselves are stubbed, there is no directory server to
+ * run in process here.
+ */
+public class EndpointResolverTest {
+    private static final String FOUND = EndpointResolver.format("https://a20047/fhir", "918999198993");
+    private static final String NOT_FOUND = EndpointResolver.format("", "");
+    private static final int THREADS = 16;
+
+    private EndpointResolver endpointResolver;
+
+    @Before
+    public void setUp() {
+        EndpointResolver resolver = new EndpointResolver();
+        ReflectionTestUtils.setField(resolver, "ldapUrl", "localhost");
+        ReflectionTestUtils.setField(resolver, "ldapPort", 10636);
+        ReflectionTestUtils.setField(resolver, "ldapTimeout", 1000L);
+        ReflectionTestUtils.setField(resolver, "poolSize", 2);
+        ReflectionTestUtils.setField(resolver, "cacheSize", 10);
+        ReflectionTestUtils.setField(resolver, "cacheTtl", 300);
+        ReflectionTestUtils.setField(resolver, "negativeCacheTtl", 30);
+        ReflectionTestUtils.setField(resolver, "providerRoutingTable", mock(ProviderRoutingTable.class));
+        resolver.init();
+
+        endpointResolver = spy(resolver);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        endpointResolver.shutdown();
+    }
+
+    @Test
+    public void shouldShareOneQueryBetweenConcurrentLookups() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            Thread.sleep(100);
+            return route(FOUND, 300);
+        }).when(endpointResolver).queryLdap("A20047", "id1");
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<String>> futures = new ArrayList<>();
+
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return endpointResolver.findEndpointFromODSCode("A20047", "id1");
+            }));
+        }
+
+        start.countDown();
+        for (Future<String> future : futures) {
+            assertEquals(FOUND, future.get(30, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertEquals(FOUND, endpointResolver.findEndpointFromODSCode("A20047", "id1"));
+        verify(endpointResolver, times(1)).queryLdap(anyString(), anyString());
+    }
+
+    @Test
+    public void shouldQueryAgainOnceAnEntryExpires() throws Exception {
+        doReturn(route(NOT_FOUND, 30)).when(endpointResolver).queryLdap("X1", "id1");
+        doReturn(route(NOT_FOUND, -1)).when(endpointResolver).queryLdap("X2", "id1");
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(NOT_FOUND, endpointResolver.findEndpointFromODSCode("X1", "id1"));
+            assertEquals(NOT_FOUND, endpointResolver.findEndpointFromODSCode("X2", "id1"));
+        }
+
+        verify(endpointResolver, times(1)).queryLdap("X1", "id1");
+        verify(endpointResolver, times(3)).queryLdap("X2", "id1");
+    }
+
+    @Test
+    public void shouldNotCacheFailures() throws Exception {
+        doThrow(new IllegalStateException("connection refused"))
+                .doReturn(route(FOUND, 300))
+                .when(endpointResolver).queryLdap("A20047", "id1");
+
+        assertEquals(NOT_FOUND, endpointResolver.findEndpointFromODSCode("A20047", "id1"));
+        assertEquals(FOUND, endpointResolver.findEndpointFromODSCode("A20047", "id1"));
+        assertEquals(FOUND, endpointResolver.findEndpointFromODSCode("A20047", "id1"));
+        verify(endpointResolver, times(2)).queryLdap("A20047", "id1");
+    }
+
+    private static EndpointResolver.LdapRoute route(String result, int ttlSeconds) {
+        return new EndpointResolver.LdapRoute(result, System.nanoTime() + TimeUnit.SECONDS.toNanos(ttlSeconds));
+    }
+}
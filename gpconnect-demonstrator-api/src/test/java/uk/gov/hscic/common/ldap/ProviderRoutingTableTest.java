@@ -0,0 +1,66 @@
+package uk.gov.hscic.common.ldap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ProviderRoutingTableTest {
+    private static final String FILENAME = "providerRouting.json";
+
+    @Rule
+    public TemporaryFolder configFolder = new TemporaryFolder();
+
+    private ProviderRoutingTable providerRoutingTable;
+
+    @Before
+    public void setUp() throws IOException {
+        write(practice("A1", "[\"id1\"]", "http://a1/first", "1")
+                + "," + practice("A1", "[\"*\"]", "http://a1/wildcard", "2")
+                + "," + practice("A1", "[\"id2\"]", "http://a1/unreachable", "3")
+                + "," + practice("B2", "[\"id1\",\"id2\"]", "http://b2", "4"));
+
+        providerRoutingTable = new ProviderRoutingTable();
+        ReflectionTestUtils.setField(providerRoutingTable, "configPath", configFolder.getRoot().getPath());
+        ReflectionTestUtils.setField(providerRoutingTable, "providerRoutingFilename", FILENAME);
+        providerRoutingTable.reload();
+    }
+
+    @Test
+    public void shouldMatchTheFirstPracticeInTheFile() {
+        assertEquals(EndpointResolver.format("http://a1/first", "1"), providerRoutingTable.lookup("A1", "id1"));
+        assertEquals(EndpointResolver.format("http://a1/wildcard", "2"), providerRoutingTable.lookup("A1", "id2"));
+        assertEquals(EndpointResolver.format("http://b2", "4"), providerRoutingTable.lookup("B2", "id2"));
+        assertNull(providerRoutingTable.lookup("B2", "id3"));
+        assertNull(providerRoutingTable.lookup("C3", "id1"));
+    }
+
+    @Test
+    public void shouldKeepTheLastGoodTableWhenTheFileIsBroken() throws IOException {
+        write(practice("C3", "[\"*\"]", "http://c3", "5"));
+        providerRoutingTable.reload();
+        assertNull(providerRoutingTable.lookup("A1", "id1"));
+        assertEquals(EndpointResolver.format("http://c3", "5"), providerRoutingTable.lookup("C3", "id1"));
+
+        Files.write(new File(configFolder.getRoot(), FILENAME).toPath(), "{".getBytes(StandardCharsets.UTF_8));
+        providerRoutingTable.reload();
+        assertEquals(EndpointResolver.format("http://c3", "5"), providerRoutingTable.lookup("C3", "id1"));
+    }
+
+    private void write(String practices) throws IOException {
+        String json = "{\"spineProxy\":\"\",\"ASID\":\"900\",\"practices\":[" + practices + "]}";
+        Files.write(new File(configFolder.getRoot(), FILENAME).toPath(), json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String practice(String odsCode, String interactionIds, String endpointURL, String asid) {
+        return "{\"odsCode\":\"" + odsCode + "\",\"interactionIds\":" + interactionIds
+                + ",\"endpointURL\":\"" + endpointURL + "\",\"ASID\":\"" + asid + "\"}";
+    }
+}
@@ -0,0 +1,92 @@
+package uk.gov.hscic.common.validators;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.hl7.fhir.dstu3.model.Coding;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.gov.hscic.common.config.FhirContextHolder;
+
+public class ValueSetValidatorTest {
+    private static final String SYSTEM = "https://fhir.nhs.uk/STU3/ValueSet/GPConnect-PractitionerRole-1";
+    private static final int THREADS = 16;
+
+    @Rule
+    public TemporaryFolder valueSetFolder = new TemporaryFolder();
+
+    private ValueSetValidator valueSetValidator;
+
+    @Before
+    public void setUp() throws IOException {
+        String xml = "<ValueSet xmlns=\"http://hl7.org/fhir\"><url value=\"" + SYSTEM + "\"/><status value=\"active\"/>"
+                + "<compose><include><system value=\"" + SYSTEM + "\"/>"
+                + "<concept><code value=\"R0260\"/><display value=\"General Medical Practitioner\"/></concept>"
+                + "<concept><code value=\"R0270\"/><display value=\"Salaried General Practitioner\"/></concept>"
+                + "</include></compose></ValueSet>";
+        Files.write(new File(valueSetFolder.getRoot(), "ValueSet-GPConnect-PractitionerRole-1.xml").toPath(), xml.getBytes(StandardCharsets.UTF_8));
+
+        valueSetValidator = new ValueSetValidator();
+        ReflectionTestUtils.setField(valueSetValidator, "fhirContextHolder", new FhirContextHolder());
+        ReflectionTestUtils.setField(valueSetValidator, "fhirValueSetsCheckDisk", true);
+        ReflectionTestUtils.setField(valueSetValidator, "fhirValueSetsCheckWeb", false);
+        ReflectionTestUtils.setField(valueSetValidator, "fhirValueSetsCheckWebFirst", false);
+        ReflectionTestUtils.setField(valueSetValidator, "fhirValueSetsPath", valueSetFolder.getRoot().getPath() + "/");
+        ReflectionTestUtils.setField(valueSetValidator, "cacheSize", 10);
+        valueSetValidator.init();
+    }
+
+    @Test
+    public void shouldLookUpCodesInTheValueSet() {
+        assertTrue(valueSetValidator.validateCode(new Coding(SYSTEM, "R0260", "General Medical Practitioner")));
+        assertFalse(valueSetValidator.validateCode(new Coding(SYSTEM, "R9999", null)));
+        assertFalse(valueSetValidator.validateCode(new Coding(SYSTEM, "r0260", null)));
+    }
+
+    @Test
+    public void shouldMatchTheDisplayExactlyWhenPresent() {
+        assertTrue(valueSetValidator.validateCode(new Coding(SYSTEM, "R0270", null)));
+        assertTrue(valueSetValidator.validateCode(new Coding(SYSTEM, "R0270", "Salaried General Practitioner")));
+        assertFalse(valueSetValidator.validateCode(new Coding(SYSTEM, "R0270", "General Medical Practitioner")));
+        assertFalse(valueSetValidator.validateCode(new Coding(SYSTEM, "R0270", "salaried general practitioner")));
+    }
+
+    @Test
+    public void shouldLoadEachValueSetOnceUnderConcurrentMisses() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Boolean>> futures = new ArrayList<>();
+
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return valueSetValidator.validateCode(new Coding(SYSTEM, "R0260", null));
+            }));
+        }
+
+        start.countDown();
+        for (Future<Boolean> future : futures) {
+            assertTrue(future.get(30, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertEquals(1, valueSetValidator.getCacheStats().loadCount());
+        assertEquals(THREADS, valueSetValidator.getCacheStats().requestCount());
+        assertEquals(THREADS, valueSetValidator.getHitCount() + valueSetValidator.getMissCount());
+        assertEquals(1, valueSetValidator.getSize());
+    }
+}
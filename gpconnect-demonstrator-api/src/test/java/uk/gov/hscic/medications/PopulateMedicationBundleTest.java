@@ -0,0 +1,155 @@
+package uk.gov.hscic.medications;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Identifier;
+import org.hl7.fhir.dstu3.model.Medication;
+import org.hl7.fhir.dstu3.model.MedicationRequest;
+import org.hl7.fhir.dstu3.model.MedicationStatement;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.gov.hscic.medication.requests.MedicationRequestResourceProvider;
+import uk.gov.hscic.medication.statement.MedicationStatementResourceProvider;
+import uk.gov.hscic.model.medication.MedicationStatementDetail;
+import uk.gov.hscic.model.patient.PatientDetails;
+import uk.gov.hscic.patient.ClinicalDataContext;
+
+public class PopulateMedicationBundleTest {
+    private static final int STATEMENTS = 30;
+
+    private MedicationResourceProvider medicationResourceProvider;
+    private MedicationRequestResourceProvider medicationRequestResourceProvider;
+    private PopulateMedicationBundle populateMedicationBundle;
+
+    @Before
+    public void setUp() {
+        medicationResourceProvider = mock(MedicationResourceProvider.class);
+        medicationRequestResourceProvider = mock(MedicationRequestResourceProvider.class);
+        MedicationStatementResourceProvider medicationStatementResourceProvider = mock(MedicationStatementResourceProvider.class);
+        when(medicationStatementResourceProvider.getMedicationStatementResource(any()))
+                .thenAnswer(invocation -> new MedicationStatement().setId(((MedicationStatementDetail) invocation.getArgument(0)).getId().toString()));
+
+        when(medicationResourceProvider.getMedicationResourcesForBundle(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().collect(Collectors.toMap(Function.identity(), id -> new Medication().setId(id.toString())));
+        });
+        when(medicationRequestResourceProvider.getMedicationRequestPlanResources(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> ids = invocation.getArgument(0);
+            return ids.stream().collect(Collectors.toMap(Function.identity(), id -> (MedicationRequest) new MedicationRequest()
+                    .setGroupIdentifier(new Identifier().setValue("M-" + id))
+                    .setRecorder(new Reference("Practitioner/" + id))
+                    .setId(id)));
+        });
+        when(medicationRequestResourceProvider.getMedicationRequestOrderResources(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> groupIdentifiers = invocation.getArgument(0);
+            return groupIdentifiers.stream().collect(Collectors.toMap(Function.identity(), groupIdentifier -> Arrays.asList(
+                    (MedicationRequest) new MedicationRequest().setRecorder(new Reference("Practitioner/1")).setId(groupIdentifier + "-1"),
+                    (MedicationRequest) new MedicationRequest().setRecorder(new Reference("Practitioner/1")).setId(groupIdentifier + "-2"))));
+        });
+
+        populateMedicationBundle = new PopulateMedicationBundle();
+        ReflectionTestUtils.setField(populateMedicationBundle, "medicationResourceProvider", medicationResourceProvider);
+        ReflectionTestUtils.setField(populateMedicationBundle, "medicationStatementResourceProvider", medicationStatementResourceProvider);
+        ReflectionTestUtils.setField(populateMedicationBundle, "medicationRequestResourceProvider", medicationRequestResourceProvider);
+    }
+
+    @Test
+    public void shouldLoadEachResourceTypeOnceForAllStatements() {
+        Bundle bundle = addMedicationBundleEntries();
+
+        Map<ResourceType, Long> counts = bundle.getEntry().stream()
+                .collect(Collectors.groupingBy(entry -> entry.getResource().getResourceType(), Collectors.counting()));
+        assertEquals(Long.valueOf(STATEMENTS), counts.get(ResourceType.MedicationStatement));
+        assertEquals(Long.valueOf(STATEMENTS), counts.get(ResourceType.Medication));
+        assertEquals(Long.valueOf(STATEMENTS * 3), counts.get(ResourceType.MedicationRequest));
+        // each statement followed by its medication, plan and orders
+        assertEquals("MedicationStatement/1", reference(bundle, 1));
+        assertEquals("Medication/1", reference(bundle, 2));
+        assertEquals("MedicationRequest/1", reference(bundle, 3));
+        assertEquals("MedicationRequest/M-1-1", reference(bundle, 4));
+        assertEquals("MedicationRequest/M-1-2", reference(bundle, 5));
+        assertEquals("MedicationStatement/2", reference(bundle, 6));
+
+        verify(medicationResourceProvider, times(1)).getMedicationResourcesForBundle(anyCollection());
+        verify(medicationRequestResourceProvider, times(1)).getMedicationRequestPlanResources(anyCollection());
+        verify(medicationRequestResourceProvider, times(1)).getMedicationRequestOrderResources(anyCollection());
+        verifyNoMoreInteractions(medicationResourceProvider, medicationRequestResourceProvider);
+    }
+
+    @Test
+    public void shouldLeaveOutMedicationsAndPlansThatAreNotFound() {
+        when(medicationResourceProvider.getMedicationResourcesForBundle(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream()
+                    .filter(id -> id != 2L)
+                    .collect(Collectors.toMap(Function.identity(), id -> new Medication().setId(id.toString())));
+        });
+        when(medicationRequestResourceProvider.getMedicationRequestPlanResources(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> ids = invocation.getArgument(0);
+            return ids.stream()
+                    .filter(id -> !id.equals("3"))
+                    .collect(Collectors.toMap(Function.identity(), id -> (MedicationRequest) new MedicationRequest()
+                            .setGroupIdentifier(new Identifier().setValue("M-" + id))
+                            .setRecorder(new Reference("Practitioner/" + id))
+                            .setId(id)));
+        });
+
+        Bundle bundle = addMedicationBundleEntries();
+
+        assertTrue(bundle.getEntry().stream().allMatch(entry -> entry.getResource() != null));
+        assertEquals(STATEMENTS - 1, bundle.getEntry().stream()
+                .filter(entry -> entry.getResource().getResourceType() == ResourceType.Medication).count());
+        assertEquals((STATEMENTS - 1) * 3, bundle.getEntry().stream()
+                .filter(entry -> entry.getResource().getResourceType() == ResourceType.MedicationRequest).count());
+        assertEquals("MedicationStatement/2", reference(bundle, 6));
+        assertEquals("MedicationRequest/2", reference(bundle, 7));
+
+        // the statement without a plan has neither the plan nor its issues
+        assertEquals("MedicationStatement/3", reference(bundle, 10));
+        assertEquals("Medication/3", reference(bundle, 11));
+        assertEquals("MedicationStatement/4", reference(bundle, 12));
+    }
+
+    private Bundle addMedicationBundleEntries() {
+        List<MedicationStatementDetail> medicationStatements = new ArrayList<>();
+        for (long i = 1; i <= STATEMENTS; i++) {
+            MedicationStatementDetail medicationStatement = new MedicationStatementDetail();
+            medicationStatement.setId(i);
+            medicationStatement.setMedicationId(i);
+            medicationStatement.setMedicationRequestPlanId(String.valueOf(i));
+            medicationStatement.setDateAsserted(new Date(i * 1000));
+            medicationStatements.add(medicationStatement);
+        }
+
+        PatientDetails patientDetails = new PatientDetails();
+        patientDetails.setNhsNumber("9476719931");
+        return populateMedicationBundle.addMedicationBundleEntries(new Bundle(), patientDetails, true,
+                new HashSet<>(), new HashSet<>(), new ClinicalDataContext("9476719931", medicationStatements, Collections.emptyList()));
+    }
+
+    private static String reference(Bundle bundle, int index) {
+        return bundle.getEntry().get(index).getResource().getResourceType() + "/"
+                + bundle.getEntry().get(index).getResource().getIdElement().getIdPart();
+    }
+}
@@ -0,0 +1,93 @@
+package uk.gov.hscic.metadata;
+
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.gov.hscic.InteractionId;
+import uk.gov.hscic.SystemVariable;
+import uk.gov.hscic.common.config.FhirContextHolder;
+
+public class CapabilityStatementCacheTest {
+
+    @Rule
+    public TemporaryFolder configFolder = new TemporaryFolder();
+
+    private CapabilityStatementCache capabilityStatementCache;
+
+    @Before
+    public void setUp() throws IOException {
+        write(CapabilityStatementCache.CAPABILITY_FILE, "1");
+        write(CapabilityStatementCache.STRUCTURED_CAPABILITY_FILE, "2");
+
+        capabilityStatementCache = new CapabilityStatementCache();
+        ReflectionTestUtils.setField(capabilityStatementCache, "configPath", configFolder.getRoot().getPath() + "/");
+        ReflectionTestUtils.setField(capabilityStatementCache, "fhirContextHolder", new FhirContextHolder());
+        capabilityStatementCache.reload();
+    }
+
+    @Test
+    public void shouldServeTheStatementForTheInteraction() throws IOException {
+        assertEquals("1", capabilityStatementCache.getCapabilityStatement(InteractionId.REST_READ_METADATA).getIdElement().getIdPart());
+        assertEquals("2", capabilityStatementCache.getCapabilityStatement(InteractionId.REST_READ_STRUCTURED_METADATA).getIdElement().getIdPart());
+        assertEquals(SystemVariable.VERSION, capabilityStatementCache.getCapabilityStatement(null).getVersion());
+        assertSame(capabilityStatementCache.getCapabilityStatement(null), capabilityStatementCache.getCapabilityStatement(null));
+
+        String json = body(capabilityStatementCache.getSerialised(InteractionId.REST_READ_METADATA, EncodingEnum.JSON, false));
+        assertTrue(json.startsWith("{\"resourceType\":\"CapabilityStatement\""));
+        assertTrue(json.contains("\"version\":\"" + SystemVariable.VERSION + "\""));
+        assertTrue(body(capabilityStatementCache.getSerialised(null, EncodingEnum.XML, true)).startsWith("<CapabilityStatement"));
+    }
+
+    @Test
+    public void shouldChangeTheEtagOnlyWhenTheStatementChanges() throws IOException {
+        String jsonEtag = capabilityStatementCache.getSerialised(null, EncodingEnum.JSON, false).getEtag();
+        String xmlEtag = capabilityStatementCache.getSerialised(null, EncodingEnum.XML, false).getEtag();
+        assertNotEquals(jsonEtag, xmlEtag);
+
+        capabilityStatementCache.reload();
+        assertEquals(jsonEtag, capabilityStatementCache.getSerialised(null, EncodingEnum.JSON, false).getEtag());
+
+        write(CapabilityStatementCache.CAPABILITY_FILE, "3");
+        capabilityStatementCache.reload();
+        assertNotEquals(jsonEtag, capabilityStatementCache.getSerialised(null, EncodingEnum.JSON, false).getEtag());
+
+        // a broken file leaves the last good statement in place
+        Files.write(new File(configFolder.getRoot(), CapabilityStatementCache.CAPABILITY_FILE).toPath(), "{".getBytes(StandardCharsets.UTF_8));
+        capabilityStatementCache.reload();
+        assertEquals("3", capabilityStatementCache.getCapabilityStatement(null).getIdElement().getIdPart());
+    }
+
+    @Test
+    public void shouldMatchIfNoneMatch() {
+        assertTrue(CapabilityStatementInterceptor.matches("\"abc\"", "\"abc\""));
+        assertTrue(CapabilityStatementInterceptor.matches("\"xyz\", W/\"abc\"", "\"abc\""));
+        assertTrue(CapabilityStatementInterceptor.matches("*", "\"abc\""));
+        assertFalse(CapabilityStatementInterceptor.matches("\"xyz\"", "\"abc\""));
+        assertFalse(CapabilityStatementInterceptor.matches(null, "\"abc\""));
+    }
+
+    private void write(String filename, String id) throws IOException {
+        String json = "{\"resourceType\":\"CapabilityStatement\",\"id\":\"" + id + "\",\"status\":\"active\",\"kind\":\"capability\","
+                + "\"software\":{\"name\":\"gpconnect\"},\"fhirVersion\":\"3.0.1\",\"format\":[\"application/fhir+json\"]}";
+        Files.write(new File(configFolder.getRoot(), filename).toPath(), json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String body(CapabilityStatementCache.SerialisedCapabilityStatement serialised) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        serialised.writeTo(outputStream);
+        return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,153 @@
+package uk.gov.hscic.metadata;
+
+import ca.uhn.fhir.rest.server.RestfulServer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Base64;
+import javax.servlet.ServletException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.hl7.fhir.dstu3.model.CapabilityStatement;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletConfig;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.gov.hscic.common.config.FhirContextHolder;
+import uk.gov.hscic.common.filters.FhirRequestAuthInterceptor;
+import uk.gov.hscic.common.filters.WebTokenCache;
+import uk.gov.hscic.common.filters.WebTokenFactory;
+
+public class CapabilityStatementInterceptorTest {
+
+    @Rule
+    public TemporaryFolder configFolder = new TemporaryFolder();
+
+    private CapabilityStatementCache capabilityStatementCache;
+    private RestfulServer restfulServer;
+
+    @Before
+    public void setUp() throws IOException, ServletException {
+        String json = "{\"resourceType\":\"CapabilityStatement\",\"id\":\"1\",\"status\":\"active\",\"kind\":\"capability\","
+                + "\"software\":{\"name\":\"gpconnect\"},\"fhirVersion\":\"3.0.1\",\"format\":[\"application/fhir+json\"]}";
+        for (String filename : new String[] { CapabilityStatementCache.CAPABILITY_FILE, CapabilityStatementCache.STRUCTURED_CAPABILITY_FILE }) {
+            Files.write(new File(configFolder.getRoot(), filename).toPath(), json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        FhirContextHolder fhirContextHolder = new FhirContextHolder();
+
+        capabilityStatementCache = new CapabilityStatementCache();
+        ReflectionTestUtils.setField(capabilityStatementCache, "configPath", configFolder.getRoot().getPath() + "/");
+        ReflectionTestUtils.setField(capabilityStatementCache, "fhirContextHolder", fhirContextHolder);
+        capabilityStatementCache.reload();
+
+        WebTokenCache webTokenCache = new WebTokenCache();
+        ReflectionTestUtils.setField(webTokenCache, "cacheSize", 10);
+        ReflectionTestUtils.setField(webTokenCache, "futureRequestLeeway", 5);
+        webTokenCache.init();
+
+        WebTokenFactory webTokenFactory = new WebTokenFactory();
+        ReflectionTestUtils.setField(webTokenFactory, "fhirContextHolder", fhirContextHolder);
+        ReflectionTestUtils.setField(webTokenFactory, "webTokenCache", webTokenCache);
+
+        FhirRequestAuthInterceptor fhirRequestAuthInterceptor = new FhirRequestAuthInterceptor();
+        ReflectionTestUtils.setField(fhirRequestAuthInterceptor, "webTokenFactory", webTokenFactory);
+        ReflectionTestUtils.setField(fhirRequestAuthInterceptor, "futureRequestLeeway", 5);
+        ReflectionTestUtils.invokeMethod(fhirRequestAuthInterceptor, "postConstruct");
+
+        CapabilityStatementInterceptor capabilityStatementInterceptor = new CapabilityStatementInterceptor();
+        ReflectionTestUtils.setField(capabilityStatementInterceptor, "capabilityStatementCache", capabilityStatementCache);
+
+        // registered in the same order as FhirRestfulServlet
+        restfulServer = new RestfulServer(fhirContextHolder.getContext());
+        restfulServer.registerInterceptor(fhirRequestAuthInterceptor);
+        restfulServer.registerInterceptor(capabilityStatementInterceptor);
+        restfulServer.setServerConformanceProvider(new GpConnectServerCapabilityStatementProvider(restfulServer, capabilityStatementCache));
+        restfulServer.init(new MockServletConfig());
+    }
+
+    @Test
+    public void shouldRejectMetadataRequestsWithoutAValidToken() throws IOException, ServletException {
+        MockHttpServletResponse response = metadata(null);
+        assertEquals(400, response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.ETAG));
+        assertFalse(response.getContentAsString().contains("\"id\":\"1\""));
+
+        response = metadata("Bearer not.a.token");
+        assertEquals(400, response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    public void shouldServeTheCachedStatementOnceAuthorised() throws IOException, ServletException {
+        MockHttpServletResponse response = metadata("Bearer " + token());
+        assertEquals(200, response.getStatus());
+        assertTrue(response.getContentAsString().startsWith("{\"resourceType\":\"CapabilityStatement\",\"id\":\"1\""));
+
+        String etag = response.getHeader(HttpHeaders.ETAG);
+        MockHttpServletRequest request = request("Bearer " + token());
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        response = new MockHttpServletResponse();
+        restfulServer.service(request, response);
+        assertEquals(304, response.getStatus());
+    }
+
+    @Test
+    public void shouldLeaveTheCachedStatementUnchangedWhenHapiServesIt() throws IOException, ServletException {
+        CapabilityStatement cached = capabilityStatementCache.getCapabilityStatement(null).copy();
+
+        // a parameter the interceptor does not handle, HAPI encodes the shared statement
+        MockHttpServletRequest request = request("Bearer " + token());
+        request.addParameter("_summary", "true");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        restfulServer.service(request, response);
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.ETAG));
+        assertTrue(response.getContentAsString().contains("\"id\":\"1\""));
+
+        assertTrue(cached.equalsDeep(capabilityStatementCache.getCapabilityStatement(null)));
+    }
+
+    private MockHttpServletResponse metadata(String authorization) throws IOException, ServletException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        restfulServer.service(request(authorization), response);
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String authorization) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/metadata");
+        request.addHeader(HttpHeaders.ACCEPT, "application/fhir+json");
+
+        if (authorization != null) {
+            request.addHeader(HttpHeaders.AUTHORIZATION, authorization);
+        }
+
+        return request;
+    }
+
+    private static String token() {
+        long now = System.currentTimeMillis() / 1000;
+        String claims = "{\"iss\":\"https://orange.testlab.nhs.uk/\",\"sub\":\"1\",\"aud\":\"https://provider.thirdparty.nhs.uk/GP0001/STU3/1\","
+                + "\"exp\":" + (now + 300) + ",\"iat\":" + now + ","
+                + "\"reason_for_request\":\"directcare\",\"requested_scope\":\"organization/*.read\","
+                + "\"requesting_device\":{\"resourceType\":\"Device\",\"id\":\"1\","
+                + "\"identifier\":[{\"system\":\"GPConnectTestSystem\",\"value\":\"Client\"}],\"model\":\"v1\",\"version\":\"1.1\"},"
+                + "\"requesting_organization\":{\"resourceType\":\"Organization\",\"id\":\"1\","
+                + "\"identifier\":[{\"system\":\"https://fhir.nhs.uk/Id/ods-organization-code\",\"value\":\"GPC001\"}],\"name\":\"GP Connect Assurance\"},"
+                + "\"requesting_practitioner\":{\"resourceType\":\"Practitioner\",\"id\":\"1\","
+                + "\"identifier\":[{\"system\":\"https://fhir.nhs.uk/Id/sds-user-id\",\"value\":\"G13579135\"}],"
+                + "\"name\":[{\"family\":\"Demonstrator\",\"given\":[\"GPConnect\"],\"prefix\":[\"Mr\"]}]}}";
+
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"none\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(claims.getBytes(StandardCharsets.UTF_8));
+    }
+}
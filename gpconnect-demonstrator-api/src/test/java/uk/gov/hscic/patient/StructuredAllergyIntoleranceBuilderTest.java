@@ -0,0 +1,131 @@
+package uk.gov.hscic.patient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.hl7.fhir.dstu3.model.AllergyIntolerance;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Reference;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.gov.hscic.SystemConstants;
+import uk.gov.hscic.SystemURL;
+import uk.gov.hscic.common.helpers.CodeableConceptBuilder;
+import uk.gov.hscic.model.practitioner.PractitionerDetails;
+import uk.gov.hscic.patient.details.PatientSearch;
+import uk.gov.hscic.patient.structuredAllergyIntolerance.StructuredAllergyIntoleranceEntity;
+import uk.gov.hscic.practitioner.PractitionerSearch;
+
+public class StructuredAllergyIntoleranceBuilderTest {
+    private static final String NHS = "9476719931";
+    private static final String PATIENT_2_NHS = "9476719974";
+    private static final String OTHER_PATIENT_NHS = "9476719958";
+
+    private PractitionerSearch practitionerSearch;
+    private StructuredAllergyIntoleranceBuilder structuredAllergyIntoleranceBuilder;
+
+    @Before
+    public void setUp() {
+        PatientSearch patientSearch = mock(PatientSearch.class);
+        when(patientSearch.findPatientNhsNumbers(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> nhsNumbers = invocation.getArgument(0);
+            return nhsNumbers.stream()
+                    .filter(nhsNumber -> nhsNumber.equals(PATIENT_2_NHS) || nhsNumber.equals(OTHER_PATIENT_NHS))
+                    .collect(Collectors.toSet());
+        });
+
+        // the seed data's recorders are practitioner table ids, of which only 1 and 2 exist here
+        practitionerSearch = mock(PractitionerSearch.class);
+        when(practitionerSearch.findPractitionerDetails(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream()
+                    .filter(id -> id == 1L || id == 2L)
+                    .map(id -> {
+                        PractitionerDetails practitionerDetails = new PractitionerDetails();
+                        practitionerDetails.setId(id);
+                        return practitionerDetails;
+                    })
+                    .collect(Collectors.toList());
+        });
+
+        structuredAllergyIntoleranceBuilder = new StructuredAllergyIntoleranceBuilder();
+        ReflectionTestUtils.setField(structuredAllergyIntoleranceBuilder, "patientSearch", patientSearch);
+        ReflectionTestUtils.setField(structuredAllergyIntoleranceBuilder, "practitionerSearch", practitionerSearch);
+        ReflectionTestUtils.setField(structuredAllergyIntoleranceBuilder, "codeableConceptBuilderFactory",
+                (ObjectFactory<CodeableConceptBuilder>) CodeableConceptBuilder::new);
+        ReflectionTestUtils.setField(structuredAllergyIntoleranceBuilder, "patient2NhsNo", PATIENT_2_NHS);
+    }
+
+    @Test
+    public void shouldReferenceEachKindOfRecorder() {
+        List<StructuredAllergyIntoleranceEntity> allergies = new ArrayList<>();
+        for (String recorder : new String[] { PATIENT_2_NHS, OTHER_PATIENT_NHS, "1", "2", "1", "99", "unknown" }) {
+            allergies.add(allergy(allergies.size() + 1L, recorder));
+        }
+
+        Set<String> practitionerIds = new HashSet<>();
+        Bundle bundle = structuredAllergyIntoleranceBuilder.buildStructuredAllergyIntolerence(
+                new ClinicalDataContext(NHS, Collections.emptyList(), allergies), practitionerIds, new Bundle(), false);
+
+        List<Reference> recorders = bundle.getEntry().stream()
+                .map(Bundle.BundleEntryComponent::getResource)
+                .filter(AllergyIntolerance.class::isInstance)
+                .map(resource -> ((AllergyIntolerance) resource).getRecorder())
+                .collect(Collectors.toList());
+        assertEquals(7, recorders.size());
+
+        assertEquals(SystemConstants.PATIENT_REFERENCE_URL + "2", recorders.get(0).getReference());
+
+        assertNull(recorders.get(1).getReference());
+        assertEquals(SystemURL.ID_NHS_NUMBER, recorders.get(1).getIdentifier().getSystem());
+        assertEquals(OTHER_PATIENT_NHS, recorders.get(1).getIdentifier().getValue());
+
+        assertEquals("Practitioner/1", recorders.get(2).getReference());
+        assertEquals("Practitioner/2", recorders.get(3).getReference());
+        assertEquals("Practitioner/1", recorders.get(4).getReference());
+
+        // a recorder that is neither a patient nor a practitioner is left out
+        assertFalse(recorders.get(5).hasReference() || recorders.get(5).hasIdentifier());
+        assertFalse(recorders.get(6).hasReference() || recorders.get(6).hasIdentifier());
+
+        assertEquals(new HashSet<>(Arrays.asList("1", "2")), practitionerIds);
+
+        // one lookup for the numeric recorders that are not patients
+        verify(practitionerSearch).findPractitionerDetails(new HashSet<>(Arrays.asList(1L, 2L, 99L)));
+    }
+
+    private static StructuredAllergyIntoleranceEntity allergy(Long id, String recorder) {
+        StructuredAllergyIntoleranceEntity allergy = new StructuredAllergyIntoleranceEntity();
+        allergy.setId(id);
+        allergy.setGuid("guid-" + id);
+        allergy.setNhsNumber(NHS);
+        allergy.setPatientRef("2");
+        allergy.setClinicalStatus(SystemConstants.ACTIVE);
+        allergy.setCategory(SystemConstants.MEDICATION);
+        allergy.setOnSetDateTime(new Date(1_500_000_000_000L));
+        allergy.setAssertedDate(new Date(1_500_000_000_000L));
+        allergy.setConceptCode("91936005");
+        allergy.setConceptDisplay("Allergy to penicillin");
+        allergy.setManifestationCoding("247472004");
+        allergy.setManifestationDisplay("Weal");
+        allergy.setSeverity("mild");
+        allergy.setNote("Penicillin allergy");
+        allergy.setRecorder(recorder);
+        return allergy;
+    }
+}
@@ -0,0 +1,206 @@
+package uk.gov.hscic.patient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.hl7.fhir.dstu3.model.AllergyIntolerance;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.MedicationStatement;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import static org.junit.Assert.assertEquals;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import uk.gov.hscic.common.cache.ReferenceDataCache;
+import uk.gov.hscic.common.cache.ResourceTemplateCache;
+import uk.gov.hscic.location.LocationSearch;
+import uk.gov.hscic.medications.PopulateMedicationBundle;
+import uk.gov.hscic.model.organization.OrganizationDetails;
+import uk.gov.hscic.model.patient.PatientDetails;
+import uk.gov.hscic.model.practitioner.PractitionerDetails;
+import uk.gov.hscic.organization.OrganizationResourceProvider;
+import uk.gov.hscic.organization.OrganizationSearch;
+import uk.gov.hscic.practitioner.PractitionerResourceProvider;
+import uk.gov.hscic.practitioner.PractitionerRoleResourceProvider;
+import uk.gov.hscic.practitioner.PractitionerSearch;
+
+public class StructuredRecordAssemblerTest {
+    private static final Date LAST_UPDATED = new Date(1_500_000_000_000L);
+    private static final String NHS = "9476719931";
+
+    private ClinicalDataContextLoader clinicalDataContextLoader;
+    private StructuredAllergyIntoleranceBuilder structuredAllergyIntoleranceBuilder;
+    private PopulateMedicationBundle populateMedicationBundle;
+    private PractitionerSearch practitionerSearch;
+    private OrganizationSearch organizationSearch;
+    private LocationSearch locationSearch;
+    private StructuredRecordAssembler structuredRecordAssembler;
+
+    @Before
+    public void setUp() {
+        clinicalDataContextLoader = mock(ClinicalDataContextLoader.class);
+        when(clinicalDataContextLoader.load(any(), anyBoolean(), any()))
+                .thenReturn(new ClinicalDataContext(NHS, Collections.emptyList(), Collections.emptyList()));
+        structuredAllergyIntoleranceBuilder = mock(StructuredAllergyIntoleranceBuilder.class);
+        populateMedicationBundle = mock(PopulateMedicationBundle.class);
+        practitionerSearch = mock(PractitionerSearch.class);
+        organizationSearch = mock(OrganizationSearch.class);
+        locationSearch = mock(LocationSearch.class);
+        when(locationSearch.findAllLocations()).thenReturn(Collections.emptyList());
+
+        ResourceTemplateCache resourceTemplateCache = new ResourceTemplateCache();
+        ReflectionTestUtils.setField(resourceTemplateCache, "enabled", true);
+        ReflectionTestUtils.setField(resourceTemplateCache, "cacheSize", 100);
+        ReflectionTestUtils.setField(resourceTemplateCache, "referenceDataCache", new ReferenceDataCache());
+        resourceTemplateCache.init();
+
+        PractitionerResourceProvider practitionerResourceProvider = new PractitionerResourceProvider();
+        ReflectionTestUtils.setField(practitionerResourceProvider, "practitionerSearch", practitionerSearch);
+        ReflectionTestUtils.setField(practitionerResourceProvider, "resourceTemplateCache", resourceTemplateCache);
+
+        PractitionerRoleResourceProvider practitionerRoleResourceProvider = new PractitionerRoleResourceProvider();
+        ReflectionTestUtils.setField(practitionerRoleResourceProvider, "practitionerSearch", practitionerSearch);
+
+        OrganizationResourceProvider organizationResourceProvider = new OrganizationResourceProvider();
+        ReflectionTestUtils.setField(organizationResourceProvider, "organizationSearch", organizationSearch);
+        ReflectionTestUtils.setField(organizationResourceProvider, "locationSearch", locationSearch);
+        ReflectionTestUtils.setField(organizationResourceProvider, "resourceTemplateCache", resourceTemplateCache);
+
+        structuredRecordAssembler = new StructuredRecordAssembler();
+        ReflectionTestUtils.setField(structuredRecordAssembler, "clinicalDataContextLoader", clinicalDataContextLoader);
+        ReflectionTestUtils.setField(structuredRecordAssembler, "structuredAllergyIntoleranceBuilder", structuredAllergyIntoleranceBuilder);
+        ReflectionTestUtils.setField(structuredRecordAssembler, "populateMedicationBundle", populateMedicationBundle);
+        ReflectionTestUtils.setField(structuredRecordAssembler, "practitionerSearch", practitionerSearch);
+        ReflectionTestUtils.setField(structuredRecordAssembler, "practitionerResourceProvider", practitionerResourceProvider);
+        ReflectionTestUtils.setField(structuredRecordAssembler, "practitionerRoleResourceProvider", practitionerRoleResourceProvider);
+        ReflectionTestUtils.setField(structuredRecordAssembler, "organizationSearch", organizationSearch);
+        ReflectionTestUtils.setField(structuredRecordAssembler, "organizationResourceProvider", organizationResourceProvider);
+        ReflectionTestUtils.setField(structuredRecordAssembler, "transactionManager", mock(PlatformTransactionManager.class));
+
+        // every allergy recorded by a different practitioner working for a different organization
+        when(structuredAllergyIntoleranceBuilder.buildStructuredAllergyIntolerence(any(), any(), any(), eq(false)))
+                .thenAnswer(invocation -> {
+                    Set<String> practitionerIds = invocation.getArgument(1);
+                    for (int i = 2; i <= 10; i++) {
+                        practitionerIds.add(String.valueOf(i));
+                    }
+                    Bundle bundle = invocation.getArgument(2);
+                    bundle.addEntry().setResource(new AllergyIntolerance().setId("1"));
+                    return bundle;
+                });
+        // and every medication dispensed by another organization
+        when(populateMedicationBundle.addMedicationBundleEntries(any(), any(), eq(false), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    Set<String> orgIds = invocation.getArgument(4);
+                    orgIds.add("11");
+                    Bundle bundle = invocation.getArgument(0);
+                    bundle.addEntry().setResource(new MedicationStatement().setId("1"));
+                    return bundle;
+                });
+        when(practitionerSearch.findPractitionerDetails(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(StructuredRecordAssemblerTest::practitioner).collect(Collectors.toList());
+        });
+        when(organizationSearch.findOrganizationDetails(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(StructuredRecordAssemblerTest::organization).collect(Collectors.toList());
+        });
+    }
+
+    @After
+    public void tearDown() {
+        structuredRecordAssembler.shutdown();
+    }
+
+    @Test
+    public void shouldResolveReferencesWithOneQueryPerResourceType() {
+        structuredRecordAssembler.init();
+
+        Bundle bundle = assembleWithTenPractitioners();
+
+        assertEquals(10, count(bundle, ResourceType.Practitioner));
+        assertEquals(20, count(bundle, ResourceType.PractitionerRole));
+        // the managing organization, the dispenser and one per practitioner, practitioner 1 works at the first
+        assertEquals(11, count(bundle, ResourceType.Organization));
+        assertEquals(ResourceType.AllergyIntolerance, bundle.getEntry().get(0).getResource().getResourceType());
+        assertEquals(ResourceType.MedicationStatement, bundle.getEntry().get(1).getResource().getResourceType());
+
+        verify(clinicalDataContextLoader, times(1)).load(any(), anyBoolean(), any());
+        verify(practitionerSearch, times(1)).findPractitionerDetails(anyCollection());
+        verify(organizationSearch, times(1)).findOrganizationDetails(anyCollection());
+        verify(locationSearch, times(1)).findAllLocations();
+        verifyNoMoreInteractions(practitionerSearch, organizationSearch, locationSearch);
+    }
+
+    @Test
+    public void shouldBuildTheSameBundleInParallel() {
+        structuredRecordAssembler.init();
+        List<String> serial = references(assembleWithTenPractitioners());
+
+        ReflectionTestUtils.setField(structuredRecordAssembler, "parallel", true);
+        ReflectionTestUtils.setField(structuredRecordAssembler, "threads", 2);
+        structuredRecordAssembler.init();
+
+        assertEquals(serial, references(assembleWithTenPractitioners()));
+    }
+
+    private Bundle assembleWithTenPractitioners() {
+        PatientDetails patientDetails = new PatientDetails();
+        patientDetails.setManagingOrganization("1");
+        Patient patient = new Patient();
+        patient.addGeneralPractitioner(new Reference("Practitioner/1"));
+
+        return structuredRecordAssembler.assemble(new Bundle(), patientDetails, patient, NHS, true, false, true, false, null);
+    }
+
+    private static List<String> references(Bundle bundle) {
+        return bundle.getEntry().stream()
+                .map(entry -> entry.getResource().getResourceType() + "/" + entry.getResource().getIdElement().getIdPart())
+                .collect(Collectors.toList());
+    }
+
+    private static int count(Bundle bundle, ResourceType resourceType) {
+        return (int) bundle.getEntry().stream()
+                .filter(entry -> entry.getResource().getResourceType() == resourceType)
+                .count();
+    }
+
+    private static PractitionerDetails practitioner(Long id) {
+        PractitionerDetails practitionerDetails = new PractitionerDetails();
+        practitionerDetails.setId(id);
+        practitionerDetails.setGender("female");
+        practitionerDetails.setRoleIds(Arrays.asList("R" + id + "A", "R" + id + "B"));
+        practitionerDetails.setOrganizationId(id);
+        practitionerDetails.setComCode(new ArrayList<>());
+        practitionerDetails.setComDisplay(new ArrayList<>());
+        practitionerDetails.setLastUpdated(LAST_UPDATED);
+        return practitionerDetails;
+    }
+
+    private static OrganizationDetails organization(Long id) {
+        OrganizationDetails organizationDetails = new OrganizationDetails();
+        organizationDetails.setId(id);
+        organizationDetails.setOrgCode("ODS" + id);
+        organizationDetails.setOrgName("Organization " + id);
+        organizationDetails.setLastUpdated(LAST_UPDATED);
+        return organizationDetails;
+    }
+}
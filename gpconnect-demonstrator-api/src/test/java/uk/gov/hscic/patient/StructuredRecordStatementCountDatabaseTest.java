@@ -0,0 +1,245 @@
+package uk.gov.hscic.patient;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.EntityManagerFactory;
+import com.mysql.jdbc.Driver;
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.gov.hscic.common.cache.ReferenceDataCache;
+import uk.gov.hscic.common.helpers.CodeableConceptBuilder;
+import uk.gov.hscic.medication.request.MedicationRequestEntityToDetailTransformer;
+import uk.gov.hscic.medication.request.MedicationRequestRepository;
+import uk.gov.hscic.medication.requests.MedicationRequestResourceProvider;
+import uk.gov.hscic.medication.statement.MedicationStatementEntityToDetailTransformer;
+import uk.gov.hscic.medication.statement.MedicationStatementRepository;
+import uk.gov.hscic.medication.statement.MedicationStatementResourceProvider;
+import uk.gov.hscic.medications.MedicationEntityToDetailTransformer;
+import uk.gov.hscic.medications.MedicationRepository;
+import uk.gov.hscic.medications.MedicationResourceProvider;
+import uk.gov.hscic.medications.MedicationSearch;
+import uk.gov.hscic.medications.PopulateMedicationBundle;
+import uk.gov.hscic.model.patient.PatientDetails;
+import uk.gov.hscic.patient.details.PatientRepository;
+import uk.gov.hscic.patient.structuredAllergyIntolerance.StructuredAllergyRepository;
+import uk.gov.hscic.patient.structuredAllergyIntolerance.StructuredAllergySearch;
+import uk.gov.hscic.translations.TranslationRepository;
+
+/**
+ * Counts the JDBC statements the clinical data and medication section of a
+ * structured record prepare against MySQL, which must not grow with the
+ * number of medications, so a collection going back to a select per entity
+ * fails here. Needs a schema created from config/sql/create_tables.sql, run
+ * with -Ddatasource.host, -Ddatasource.port, -Ddatasource.username and
+ * -Ddatasource.password (and -Ddatasource.schema if not gpconnect), skipped
+ * otherwise. Only the rows it inserts are touched.
+ */
+public class StructuredRecordStatementCountDatabaseTest {
+    private static final Long FEW_MEDICATIONS_PATIENT = -1L;
+    private static final Long MANY_MEDICATIONS_PATIENT = -2L;
+    private static final int MANY = 10;
+
+    private AnnotationConfigApplicationContext context;
+    private ClinicalDataContextLoader clinicalDataContextLoader;
+    private PopulateMedicationBundle populateMedicationBundle;
+    private TransactionTemplate readOnlyTransaction;
+    private JdbcTemplate jdbcTemplate;
+    private Statistics statistics;
+    private List<Long> medicationIds = new ArrayList<>();
+    private Date date;
+
+    @Before
+    public void setUp() {
+        Assume.assumeNotNull(System.getProperty("datasource.host"));
+
+        context = new AnnotationConfigApplicationContext(DatabaseConfig.class);
+        clinicalDataContextLoader = context.getBean(ClinicalDataContextLoader.class);
+        populateMedicationBundle = context.getBean(PopulateMedicationBundle.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+
+        readOnlyTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnlyTransaction.setReadOnly(true);
+
+        date = new Date((System.currentTimeMillis() / 1000) * 1000);
+        insertMedications(FEW_MEDICATIONS_PATIENT, 1);
+        insertMedications(MANY_MEDICATIONS_PATIENT, MANY);
+    }
+
+    @After
+    public void tearDown() {
+        if (context != null) {
+            for (Long patientId : new Long[] { FEW_MEDICATIONS_PATIENT, MANY_MEDICATIONS_PATIENT }) {
+                jdbcTemplate.update("DELETE FROM medication_statements WHERE patientId = ?", patientId);
+                jdbcTemplate.update("DELETE FROM medication_requests WHERE patientId = ?", patientId);
+            }
+            for (Long medicationId : medicationIds) {
+                jdbcTemplate.update("DELETE FROM medications WHERE id = ?", medicationId);
+            }
+            context.close();
+        }
+    }
+
+    @Test
+    public void shouldReadTheMedicationsInTheSameStatementsWhateverTheirNumber() {
+        statistics.clear();
+        Bundle fewMedications = medications(FEW_MEDICATIONS_PATIENT);
+        long fewMedicationsStatements = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        Bundle manyMedications = medications(MANY_MEDICATIONS_PATIENT);
+        long manyMedicationsStatements = statistics.getPrepareStatementCount();
+
+        assertEquals(1, count(fewMedications, ResourceType.MedicationStatement));
+        assertEquals(MANY, count(manyMedications, ResourceType.MedicationStatement));
+        assertEquals(MANY, count(manyMedications, ResourceType.Medication));
+        // a plan and an issue for each statement
+        assertEquals(2 * MANY, count(manyMedications, ResourceType.MedicationRequest));
+
+        // statements with their reason codes, reason references and notes, warning
+        // codes, allergies, medications, then plans and issues each with their
+        // based on references, reason codes, reason references and notes
+        assertEquals(17, fewMedicationsStatements);
+        assertEquals(fewMedicationsStatements, manyMedicationsStatements);
+    }
+
+    private Bundle medications(Long patientId) {
+        PatientDetails patientDetails = new PatientDetails();
+        patientDetails.setId(patientId.toString());
+        patientDetails.setNhsNumber("000000000" + -patientId);
+
+        // as StructuredRecordAssembler, the medication section in a transaction of its own
+        ClinicalDataContext clinicalData = clinicalDataContextLoader.load(patientDetails, true, null);
+        return readOnlyTransaction.execute(status -> populateMedicationBundle.addMedicationBundleEntries(new Bundle(),
+                patientDetails, true, new HashSet<>(), new HashSet<>(), clinicalData));
+    }
+
+    private void insertMedications(Long patientId, int number) {
+        for (int i = 0; i < number; i++) {
+            Map<String, Object> medication = new HashMap<>();
+            medication.put("text", "StructuredRecordStatementCountDatabaseTest");
+            medication.put("lastUpdated", date);
+            Long medicationId = insert("medications", medication);
+            medicationIds.add(medicationId);
+
+            String groupIdentifier = "StructuredRecordStatementCountDatabaseTest" + patientId + "-" + i;
+            Long planId = insert("medication_requests", medicationRequest(patientId, medicationId, groupIdentifier, "plan"));
+            insert("medication_requests", medicationRequest(patientId, medicationId, groupIdentifier, "order"));
+
+            Map<String, Object> statement = new HashMap<>();
+            statement.put("medicationRequestId", planId.toString());
+            statement.put("statusCode", "active");
+            statement.put("medicationId", medicationId);
+            statement.put("dateAsserted", date);
+            statement.put("lastIssueDate", date);
+            statement.put("patientId", patientId);
+            statement.put("guid", groupIdentifier);
+            insert("medication_statements", statement);
+        }
+    }
+
+    private Map<String, Object> medicationRequest(Long patientId, Long medicationId, String groupIdentifier, String intentCode) {
+        Map<String, Object> medicationRequest = new HashMap<>();
+        medicationRequest.put("groupIdentifier", groupIdentifier);
+        medicationRequest.put("statusCode", "active");
+        medicationRequest.put("intentCode", intentCode);
+        medicationRequest.put("medicationId", medicationId);
+        medicationRequest.put("patientId", patientId);
+        medicationRequest.put("authoredOn", date);
+        medicationRequest.put("authorisingPractitionerId", 1L);
+        medicationRequest.put("dispenseRequestStartDate", date);
+        medicationRequest.put("dispenseQuantityText", "28 tablets");
+        medicationRequest.put("expectedSupplyDuration", "28");
+        medicationRequest.put("dispenseRequestOrganizationId", 1L);
+        medicationRequest.put("numberOfRepeatPrescriptionsAllowed", 6);
+        medicationRequest.put("numberOfRepeatPrescriptionsIssued", 1);
+        medicationRequest.put("prescriptionTypeCode", "repeat");
+        medicationRequest.put("prescriptionTypeDisplay", "Repeat");
+        medicationRequest.put("lastUpdated", date);
+        medicationRequest.put("guid", groupIdentifier + intentCode);
+        return medicationRequest;
+    }
+
+    private Long insert(String table, Map<String, Object> row) {
+        return new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName(table)
+                .usingColumns(row.keySet().toArray(new String[0]))
+                .usingGeneratedKeyColumns("id")
+                .executeAndReturnKey(row)
+                .longValue();
+    }
+
+    private static long count(Bundle bundle, ResourceType resourceType) {
+        return bundle.getEntry().stream()
+                .filter(entry -> entry.getResource() != null && entry.getResource().getResourceType() == resourceType)
+                .count();
+    }
+
+    @Configuration
+    @EnableTransactionManagement
+    @EnableJpaRepositories(basePackageClasses = {MedicationStatementRepository.class, MedicationRequestRepository.class,
+        MedicationRepository.class, StructuredAllergyRepository.class, PatientRepository.class, TranslationRepository.class})
+    @Import({ClinicalDataContextLoader.class, MedicationStatementEntityToDetailTransformer.class, StructuredAllergySearch.class,
+        PopulateMedicationBundle.class, MedicationStatementResourceProvider.class, MedicationRequestResourceProvider.class,
+        MedicationRequestEntityToDetailTransformer.class, MedicationResourceProvider.class, MedicationSearch.class,
+        MedicationEntityToDetailTransformer.class, ReferenceDataCache.class, CodeableConceptBuilder.class})
+    static class DatabaseConfig {
+
+        @Bean(destroyMethod = "close")
+        public DataSource dataSource() {
+            DataSource dataSource = new DataSource();
+            dataSource.setDriverClassName(Driver.class.getName());
+            dataSource.setUrl("jdbc:mysql://" + System.getProperty("datasource.host") + ":" + System.getProperty("datasource.port", "3306")
+                    + "/" + System.getProperty("datasource.schema", "gpconnect"));
+            dataSource.setUsername(System.getProperty("datasource.username"));
+            dataSource.setPassword(System.getProperty("datasource.password"));
+            return dataSource;
+        }
+
+        @Bean
+        public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+            return new JdbcTemplate(dataSource);
+        }
+
+        @Bean
+        public EntityManagerFactory entityManagerFactory(DataSource dataSource) {
+            LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+            factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            factory.setPackagesToScan("uk.gov.hscic");
+            factory.setDataSource(dataSource);
+            factory.getJpaPropertyMap().put("hibernate.generate_statistics", "true");
+            factory.afterPropertiesSet();
+            return factory.getObject();
+        }
+
+        @Bean
+        public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+            return new JpaTransactionManager(entityManagerFactory);
+        }
+    }
+}
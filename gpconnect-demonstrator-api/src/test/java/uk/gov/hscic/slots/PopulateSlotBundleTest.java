@@ -0,0 +1,260 @@
+package uk.gov.hscic.slots;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.IdType;
+import org.hl7.fhir.dstu3.model.Location;
+import org.hl7.fhir.dstu3.model.OperationOutcome;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.Practitioner;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.gov.hscic.appointment.schedule.ScheduleSearch;
+import uk.gov.hscic.appointment.slot.SlotSearch;
+import uk.gov.hscic.appointments.ScheduleResourceProvider;
+import uk.gov.hscic.common.cache.ReferenceDataCache;
+import uk.gov.hscic.common.cache.ResourceTemplateCache;
+import uk.gov.hscic.location.LocationResourceProvider;
+import uk.gov.hscic.location.LocationSearch;
+import uk.gov.hscic.model.appointment.ScheduleDetail;
+import uk.gov.hscic.model.appointment.SlotDetail;
+import uk.gov.hscic.model.location.LocationDetails;
+import uk.gov.hscic.model.organization.OrganizationDetails;
+import uk.gov.hscic.model.practitioner.PractitionerDetails;
+import uk.gov.hscic.organization.OrganizationResourceProvider;
+import uk.gov.hscic.organization.OrganizationSearch;
+import uk.gov.hscic.practitioner.PractitionerResourceProvider;
+import uk.gov.hscic.practitioner.PractitionerSearch;
+
+public class PopulateSlotBundleTest {
+    private static final String OUR_ODS_CODE = "A20047";
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final Date START = new Date(1_500_000_000_000L);
+    private static final Date END = new Date(START.getTime() + 24 * HOUR);
+
+    private ScheduleSearch scheduleSearch;
+    private SlotSearch slotSearch;
+    private PractitionerSearch practitionerSearch;
+    private OrganizationSearch organizationSearch;
+    private ReferenceDataCache referenceDataCache;
+    private ResourceTemplateCache resourceTemplateCache;
+    private PopulateSlotBundle populateSlotBundle;
+
+    @Before
+    public void setUp() {
+        scheduleSearch = mock(ScheduleSearch.class);
+        slotSearch = mock(SlotSearch.class);
+        practitionerSearch = mock(PractitionerSearch.class);
+        organizationSearch = mock(OrganizationSearch.class);
+
+        LocationSearch locationSearch = mock(LocationSearch.class);
+        when(locationSearch.findAllLocations()).thenReturn(Arrays.asList(location(1L), location(2L)));
+
+        LocationResourceProvider locationResourceProvider = mock(LocationResourceProvider.class);
+        when(locationResourceProvider.locationDetailsToLocation(any(LocationDetails.class)))
+                .thenAnswer(invocation -> {
+                    Location location = new Location();
+                    location.setId(new IdType("Location", ((LocationDetails) invocation.getArgument(0)).getId()));
+                    return location;
+                });
+
+        OrganizationDetails ourOrganization = new OrganizationDetails();
+        ourOrganization.setId(1L);
+        ourOrganization.setOrgCode(OUR_ODS_CODE);
+        when(organizationSearch.findOrganizationDetailsByOrgODSCode(OUR_ODS_CODE)).thenReturn(Collections.singletonList(ourOrganization));
+        when(organizationSearch.findOrganizationDetailsByOrgODSCode("")).thenReturn(Collections.emptyList());
+
+        OrganizationResourceProvider organizationResourceProvider = mock(OrganizationResourceProvider.class);
+        Organization organization = new Organization();
+        organization.setId(new IdType("Organization", 1L));
+        when(organizationResourceProvider.convertOrganizationDetailsToOrganization(ourOrganization)).thenReturn(organization);
+
+        ScheduleResourceProvider scheduleResourceProvider = new ScheduleResourceProvider();
+        ReflectionTestUtils.setField(scheduleResourceProvider, "scheduleSearch", scheduleSearch);
+
+        referenceDataCache = new ReferenceDataCache();
+        resourceTemplateCache = new ResourceTemplateCache();
+        ReflectionTestUtils.setField(resourceTemplateCache, "enabled", true);
+        ReflectionTestUtils.setField(resourceTemplateCache, "cacheSize", 100);
+        ReflectionTestUtils.setField(resourceTemplateCache, "referenceDataCache", referenceDataCache);
+        resourceTemplateCache.init();
+
+        PractitionerResourceProvider practitionerResourceProvider = new PractitionerResourceProvider();
+        ReflectionTestUtils.setField(practitionerResourceProvider, "practitionerSearch", practitionerSearch);
+        ReflectionTestUtils.setField(practitionerResourceProvider, "resourceTemplateCache", resourceTemplateCache);
+
+        populateSlotBundle = new PopulateSlotBundle();
+        ReflectionTestUtils.setField(populateSlotBundle, "locationSearch", locationSearch);
+        ReflectionTestUtils.setField(populateSlotBundle, "locationResourceProvider", locationResourceProvider);
+        ReflectionTestUtils.setField(populateSlotBundle, "organizationSearch", organizationSearch);
+        ReflectionTestUtils.setField(populateSlotBundle, "organizationResourceProvider", organizationResourceProvider);
+        ReflectionTestUtils.setField(populateSlotBundle, "scheduleResourceProvider", scheduleResourceProvider);
+        ReflectionTestUtils.setField(populateSlotBundle, "slotResourceProvider", new SlotResourceProvider());
+        ReflectionTestUtils.setField(populateSlotBundle, "practitionerResourceProvider", practitionerResourceProvider);
+        ReflectionTestUtils.setField(populateSlotBundle, "slotSearch", slotSearch);
+    }
+
+    @Test
+    public void shouldIssueOneQueryPerResourceTypeRegardlessOfScheduleCount() {
+        givenTenSchedules();
+
+        Bundle bundle = new Bundle();
+        populateSlotBundle.populateBundle(bundle, new OperationOutcome(), START, END, true, true, true, "", "");
+
+        assertEquals(30, count(bundle, ResourceType.Slot));
+        assertEquals(10, count(bundle, ResourceType.Schedule));
+        assertEquals(3, count(bundle, ResourceType.Practitioner));
+        assertEquals(2, count(bundle, ResourceType.Location));
+        assertEquals(1, count(bundle, ResourceType.Organization));
+
+        verify(scheduleSearch, times(1)).findSchedulesForLocationIds(anyCollection(), eq(START), eq(END));
+        verify(slotSearch, times(1)).findSlotsForScheduleIds(anyCollection(), eq(START), eq(END));
+        verify(practitionerSearch, times(1)).findPractitionerDetails(anyCollection());
+        verify(organizationSearch, times(2)).findOrganizationDetailsByOrgODSCode(any());
+        verifyNoMoreInteractions(scheduleSearch, slotSearch, practitionerSearch, organizationSearch);
+    }
+
+    @Test
+    public void shouldBuildEachPractitionerOnceAcrossSlotSearches() {
+        givenTenSchedules();
+
+        Bundle first = new Bundle();
+        populateSlotBundle.populateBundle(first, new OperationOutcome(), START, END, true, true, true, "", "");
+        Bundle second = new Bundle();
+        populateSlotBundle.populateBundle(second, new OperationOutcome(), START, END, true, true, true, "", "");
+
+        assertEquals(3, resourceTemplateCache.getCacheStats().missCount());
+        assertEquals(3, resourceTemplateCache.getCacheStats().hitCount());
+
+        Practitioner built = (Practitioner) resource(first, ResourceType.Practitioner);
+        Practitioner copied = (Practitioner) resource(second, ResourceType.Practitioner);
+        assertNotSame(built, copied);
+        assertTrue(built.equalsDeep(copied));
+
+        referenceDataCache.evictAll();
+        populateSlotBundle.populateBundle(new Bundle(), new OperationOutcome(), START, END, true, true, true, "", "");
+
+        assertEquals(6, resourceTemplateCache.getCacheStats().missCount());
+    }
+
+    private void givenTenSchedules() {
+        List<ScheduleDetail> schedules = new ArrayList<>();
+        Map<Long, List<SlotDetail>> slots = new HashMap<>();
+        long slotId = 1;
+        for (long scheduleId = 1; scheduleId <= 10; scheduleId++) {
+            schedules.add(schedule(scheduleId, scheduleId % 2 + 1, scheduleId % 3 + 1));
+            List<SlotDetail> scheduleSlots = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                scheduleSlots.add(slot(slotId++, scheduleId, i % 2 == 0 ? "FREE" : "BUSY"));
+            }
+            slots.put(scheduleId, scheduleSlots);
+        }
+
+        when(scheduleSearch.findSchedulesForLocationIds(anyCollection(), eq(START), eq(END))).thenReturn(schedules);
+        when(slotSearch.findSlotsForScheduleIds(anyCollection(), eq(START), eq(END))).thenReturn(slots);
+        when(practitionerSearch.findPractitionerDetails(anyCollection()))
+                .thenReturn(Arrays.asList(practitioner(1L), practitioner(2L), practitioner(3L)));
+    }
+
+    @Test
+    public void shouldFilterSlotsByBookingOrganization() {
+        SlotDetail untargeted = slot(1L, 1L, "FREE");
+        SlotDetail forUs = slot(2L, 1L, "FREE");
+        forUs.setOrganizationIds(Collections.singletonList(1L));
+        SlotDetail forUrgentCare = slot(3L, 1L, "FREE");
+        forUrgentCare.setOrganizationTypes(Collections.singletonList("urgent-care"));
+
+        when(scheduleSearch.findSchedulesForLocationIds(anyCollection(), eq(START), eq(END)))
+                .thenReturn(Collections.singletonList(schedule(1L, 1L, 1L)));
+        when(slotSearch.findSlotsForScheduleIds(anyCollection(), eq(START), eq(END)))
+                .thenReturn(Collections.singletonMap(1L, Arrays.asList(untargeted, forUs, forUrgentCare)));
+        when(practitionerSearch.findPractitionerDetails(anyCollection())).thenReturn(Collections.singletonList(practitioner(1L)));
+
+        assertEquals(1, slotCount("", ""));
+        assertEquals(2, slotCount(OUR_ODS_CODE, ""));
+        assertEquals(2, slotCount("", "urgent-care"));
+        assertEquals(3, slotCount(OUR_ODS_CODE, "urgent-care"));
+    }
+
+    private int slotCount(String bookingOdsCode, String bookingOrgType) {
+        Bundle bundle = new Bundle();
+        populateSlotBundle.populateBundle(bundle, new OperationOutcome(), START, END, false, false, false, bookingOdsCode, bookingOrgType);
+        return count(bundle, ResourceType.Slot);
+    }
+
+    private static int count(Bundle bundle, ResourceType resourceType) {
+        return (int) bundle.getEntry().stream()
+                .filter(entry -> entry.getResource().getResourceType() == resourceType)
+                .count();
+    }
+
+    private static Object resource(Bundle bundle, ResourceType resourceType) {
+        return bundle.getEntry().stream()
+                .filter(entry -> entry.getResource().getResourceType() == resourceType)
+                .findFirst()
+                .get()
+                .getResource();
+    }
+
+    private static LocationDetails location(Long id) {
+        LocationDetails locationDetails = new LocationDetails();
+        locationDetails.setId(id);
+        locationDetails.setOrgOdsCode(OUR_ODS_CODE);
+        return locationDetails;
+    }
+
+    private static ScheduleDetail schedule(Long id, Long locationId, Long practitionerId) {
+        ScheduleDetail scheduleDetail = new ScheduleDetail();
+        scheduleDetail.setId(id);
+        scheduleDetail.setLocationId(locationId);
+        scheduleDetail.setPractitionerId(practitionerId);
+        scheduleDetail.setStartDateTime(START);
+        scheduleDetail.setEndDateTime(END);
+        scheduleDetail.setLastUpdated(START);
+        return scheduleDetail;
+    }
+
+    private static SlotDetail slot(Long id, Long scheduleId, String freeBusyType) {
+        SlotDetail slotDetail = new SlotDetail();
+        slotDetail.setId(id);
+        slotDetail.setScheduleReference(scheduleId);
+        slotDetail.setFreeBusyType(freeBusyType);
+        slotDetail.setStartDateTime(new Date(START.getTime() + id * HOUR / 6));
+        slotDetail.setEndDateTime(new Date(START.getTime() + (id + 1) * HOUR / 6));
+        slotDetail.setLastUpdated(START);
+        slotDetail.setGpConnectBookable(true);
+        slotDetail.setOrganizationIds(Collections.emptyList());
+        slotDetail.setOrganizationTypes(Collections.emptyList());
+        return slotDetail;
+    }
+
+    private static PractitionerDetails practitioner(Long id) {
+        PractitionerDetails practitionerDetails = new PractitionerDetails();
+        practitionerDetails.setId(id);
+        practitionerDetails.setGender("female");
+        practitionerDetails.setRoleIds(Collections.emptyList());
+        practitionerDetails.setComCode(Collections.emptyList());
+        practitionerDetails.setComDisplay(Collections.emptyList());
+        practitionerDetails.setLastUpdated(START);
+        return practitionerDetails;
+    }
+}